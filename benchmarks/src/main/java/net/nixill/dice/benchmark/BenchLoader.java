@@ -0,0 +1,78 @@
+package net.nixill.dice.benchmark;
+
+import java.util.HashMap;
+
+import net.nixill.dice.exception.NoSuchFunctionException;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCNumber;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.FunctionLoader;
+import net.nixill.dice.parsing.ExpressionSplitter;
+
+/**
+ * A {@link FunctionLoader} holding the same functions as the test loader,
+ * so that the test corpus can be evaluated by the benchmarks.
+ */
+public class BenchLoader extends FunctionLoader {
+  private HashMap<String, DCEntity> functions = new HashMap<>();
+  private HashMap<String, DCValue>  results   = new HashMap<>();
+  
+  /**
+   * Creates a loader with <code>level</code>, <code>_last</code> and
+   * <code>_ans</code> defined.
+   */
+  public BenchLoader() {
+    functions.put("level", ExpressionSplitter.parse("({1,5}^2+{1,5})/2"));
+    functions.put("_last", new DCNumber(0));
+    functions.put("_ans", new DCNumber(0));
+  }
+  
+  private DCEntity find(String name) {
+    DCEntity ent = functions.get(name);
+    if (ent == null) {
+      throw new NoSuchFunctionException(
+          "There's no function named " + name + ".");
+    }
+    return ent;
+  }
+  
+  @Override
+  public DCEntity load(String name) {
+    return find(name);
+  }
+  
+  @Override
+  public DCEntity loadEnv(String name) {
+    return find("_" + name);
+  }
+  
+  @Override
+  public DCEntity loadGlobal(String name) {
+    return find("$" + name);
+  }
+  
+  @Override
+  public DCEntity lastResult(String name) {
+    return results.get(name);
+  }
+  
+  @Override
+  public void save(String name, DCEntity ent) {
+    functions.put(name, ent);
+  }
+  
+  @Override
+  public void saveEnv(String name, DCEntity ent) {
+    functions.put("_" + name, ent);
+  }
+  
+  @Override
+  public void saveGlobal(String name, DCEntity ent) {
+    functions.put("$" + name, ent);
+  }
+  
+  @Override
+  public void saveResult(String name, DCValue result) {
+    results.put(name, result);
+  }
+}
@@ -0,0 +1,30 @@
+package net.nixill.dice.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so that every result
+ * comes with its allocation rate next to its ops/s.
+ * <p>
+ * All of the usual JMH command line options are accepted.
+ */
+public class BenchmarkMain {
+  public static void main(String[] args)
+      throws RunnerException, CommandLineOptionException {
+    CommandLineOptions cmd = new CommandLineOptions(args);
+    ChainedOptionsBuilder opts = new OptionsBuilder().parent(cmd)
+        .addProfiler(GCProfiler.class);
+    
+    if (cmd.getIncludes().isEmpty()) {
+      opts.include(BenchmarkMain.class.getPackage().getName() + ".*");
+    }
+    
+    new Runner(opts.build()).run();
+  }
+}
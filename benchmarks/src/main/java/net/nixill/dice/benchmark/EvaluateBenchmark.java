@@ -0,0 +1,85 @@
+package net.nixill.dice.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.Randomizer;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.Functions;
+import net.nixill.dice.parsing.ExpressionSplitter;
+
+/**
+ * Measures {@link DCEntity#getValue()} on already-parsed trees.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluateBenchmark {
+  @Param({ "tests", "pool1000", "sumPool1000", "chain500", "diceChain200",
+      "list1000", "nestedLevel" })
+  public String expression;
+  
+  /**
+   * Whether history is recorded at all; see
+   * {@link FunctionHistory#setRecording(boolean)}.
+   */
+  @Param({ "true", "false" })
+  public boolean history;
+  
+  private ArrayList<DCEntity> entities;
+  
+  @Setup
+  public void setup() {
+    Functions.setLoader(new BenchLoader());
+    Randomizer.setSeed(0x5eed);
+    FunctionHistory.setRecording(history);
+    
+    entities = new ArrayList<>();
+    for (String line : ExpressionCorpus.get(expression)) {
+      entities.add(ExpressionSplitter.parse(line));
+    }
+  }
+  
+  /**
+   * Evaluates every tree in the group. The (thread-local) history is
+   * cleared afterwards, as a caller would between two rolls; otherwise it
+   * would grow for the whole run.
+   */
+  @Benchmark
+  public void getValue(Blackhole bh) {
+    for (DCEntity ent : entities) {
+      bh.consume(ent.getValue());
+    }
+    FunctionHistory.clear();
+  }
+  
+  /**
+   * Evaluates every tree in the group and then reads the history, which
+   * is when its text is rendered.
+   */
+  @Benchmark
+  public void getValueAndHistory(Blackhole bh) {
+    for (DCEntity ent : entities) {
+      bh.consume(ent.getValue());
+    }
+    bh.consume(FunctionHistory.getList());
+    FunctionHistory.clear();
+  }
+}
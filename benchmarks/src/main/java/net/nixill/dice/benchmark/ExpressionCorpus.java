@@ -0,0 +1,121 @@
+package net.nixill.dice.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The expressions used by the benchmarks, grouped by name so that they can
+ * be selected with a JMH <code>@Param</code>.
+ * <p>
+ * Every benchmark runs a whole group per operation, so the score of a
+ * group is "how many times per second can this group be handled".
+ */
+public final class ExpressionCorpus {
+  private ExpressionCorpus() {
+  }
+  
+  /**
+   * Returns the group of expressions with a given name.
+   * <ul>
+   * <li><code>tests</code> - every line in <code>AppTest.tests()</code>,
+   * in order.</li>
+   * <li><code>pool1000</code> - a single large pool,
+   * <code>1000d6</code>.</li>
+   * <li><code>sumPool1000</code> - the sum of that pool,
+   * <code>$1000d6</code>.</li>
+   * <li><code>chain500</code> - a chain of 500 numbers joined by
+   * <code>+</code>.</li>
+   * <li><code>diceChain200</code> - a chain of 200 <code>d6</code>s
+   * joined by <code>+</code>.</li>
+   * <li><code>list1000</code> - a list literal with 1000 numbers.</li>
+   * <li><code>nestedLevel</code> - calls to the <code>level</code>
+   * function nested five deep.</li>
+   * </ul>
+   * 
+   * @param name
+   *   The name of the group.
+   * @return The expressions in the group.
+   * @throws IllegalArgumentException
+   *   If there's no group with that name.
+   */
+  public static List<String> get(String name) {
+    switch (name) {
+      case "tests":
+        return tests();
+      case "pool1000":
+        return Arrays.asList("1000d6");
+      case "sumPool1000":
+        return Arrays.asList("$1000d6");
+      case "chain500":
+        return Arrays.asList(chain("1", 500, "+"));
+      case "diceChain200":
+        return Arrays.asList(chain("d6", 200, "+"));
+      case "list1000":
+        return Arrays.asList("[" + chain("1", 1000, ",") + "]");
+      case "nestedLevel":
+        return Arrays.asList(nested("level", 5, "3"));
+      default:
+        throw new IllegalArgumentException(
+            "There's no expression group named " + name + ".");
+    }
+  }
+  
+  private static List<String> tests() {
+    ArrayList<String> out = new ArrayList<>();
+    
+    // v0.1
+    out.add("3");
+    out.add("4+2");
+    out.add("3/-2");
+    out.add("4!/3");
+    out.add("2*(-1+5)");
+    out.add("2^5");
+    out.add("2+[1,2,3]");
+    out.add("[1,(1+1),(1-1)]");
+    out.add("{level}");
+    out.add("{level,5}");
+    out.add("{_last}+3");
+    out.add("{level,10}");
+    out.add("{_ans}+2");
+    
+    // v0.3
+    out.add("\"Hello!\"");
+    out.add("[1, 2, 3]?");
+    out.add("$[1, 2, 3]");
+    out.add("#[1, 2, 3]");
+    out.add("\"Hello\" + [32] + \"World\"");
+    out.add("\"Hello\" + 32 + \"World\"");
+    out.add("[\"red\", \"green\", \"blue\"]?s1");
+    out.add("1 + 2");
+    out.add("1 + [3]");
+    out.add("1 + \"4\"");
+    out.add("[2] + [5]");
+    out.add("[50] + \"6\"");
+    
+    // v0.4
+    out.add("2d5");
+    out.add("d20");
+    out.add("d1");
+    out.add("6u>=5");
+    out.add("6u<=5+{_u}");
+    
+    return out;
+  }
+  
+  private static String chain(String item, int count, String separator) {
+    StringBuilder out = new StringBuilder(item);
+    for (int i = 1; i < count; i++) {
+      out.append(separator).append(item);
+    }
+    return out.toString();
+  }
+  
+  private static String nested(String name, int depth, String innermost) {
+    String out = innermost;
+    for (int i = 0; i < depth; i++) {
+      out = "{" + name + "," + out + "}";
+    }
+    return out;
+  }
+}
@@ -0,0 +1,71 @@
+package net.nixill.dice.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.nixill.dice.parsing.ExpressionParser;
+import net.nixill.dice.parsing.ExpressionPiece;
+import net.nixill.dice.parsing.ExpressionSplitter;
+
+/**
+ * Measures {@link ExpressionParser#parseLine(ArrayList)} - turning pieces
+ * into a tree - and the full {@link ExpressionSplitter#parse(String)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+  @Param({ "tests", "pool1000", "sumPool1000", "chain500", "diceChain200",
+      "list1000", "nestedLevel" })
+  public String expression;
+  
+  private List<String>                          lines;
+  private ArrayList<ArrayList<ExpressionPiece>> pieces;
+  
+  @Setup
+  public void setup() {
+    lines = ExpressionCorpus.get(expression);
+    pieces = new ArrayList<>();
+    for (String line : lines) {
+      pieces.add(ExpressionSplitter.split(line));
+    }
+  }
+  
+  /**
+   * Only the tree building. The parser consumes the list it's given, so
+   * each call gets a fresh (shallow) copy of the pieces.
+   */
+  @Benchmark
+  public void parseLine(Blackhole bh) {
+    for (ArrayList<ExpressionPiece> list : pieces) {
+      bh.consume(ExpressionParser.parseLine(new ArrayList<>(list)));
+    }
+  }
+  
+  /**
+   * Splitting and tree building together, as done for every user input.
+   */
+  @Benchmark
+  public void parse(Blackhole bh) {
+    for (String line : lines) {
+      bh.consume(ExpressionSplitter.parse(line));
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package net.nixill.dice.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.objects.Randomizer;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.Functions;
+import net.nixill.dice.parsing.ExpressionSplitter;
+
+/**
+ * Measures {@link DCEntity#toCode()} and {@link DCEntity#toString()}, on
+ * both parsed trees and their evaluated values.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+  @Param({ "tests", "pool1000", "sumPool1000", "chain500", "diceChain200",
+      "list1000", "nestedLevel" })
+  public String expression;
+  
+  private ArrayList<DCEntity> entities;
+  private ArrayList<DCValue>  values;
+  
+  @Setup
+  public void setup() {
+    Functions.setLoader(new BenchLoader());
+    Randomizer.setSeed(0x5eed);
+    
+    entities = new ArrayList<>();
+    values = new ArrayList<>();
+    for (String line : ExpressionCorpus.get(expression)) {
+      DCEntity ent = ExpressionSplitter.parse(line);
+      entities.add(ent);
+      values.add(ent.getValue());
+    }
+    FunctionHistory.clear();
+  }
+  
+  @Benchmark
+  public void expressionToCode(Blackhole bh) {
+    for (DCEntity ent : entities) {
+      bh.consume(ent.toCode());
+    }
+  }
+  
+  @Benchmark
+  public void expressionToString(Blackhole bh) {
+    for (DCEntity ent : entities) {
+      bh.consume(ent.toString());
+    }
+  }
+  
+  @Benchmark
+  public void valueToCode(Blackhole bh) {
+    for (DCValue val : values) {
+      bh.consume(val.toCode());
+    }
+  }
+  
+  @Benchmark
+  public void valueToString(Blackhole bh) {
+    for (DCValue val : values) {
+      bh.consume(val.toString());
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package net.nixill.dice.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.nixill.dice.parsing.ExpressionSplitter;
+
+/**
+ * Measures {@link ExpressionSplitter#split(String)} - turning text into
+ * pieces.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SplitBenchmark {
+  @Param({ "tests", "pool1000", "sumPool1000", "chain500", "diceChain200",
+      "list1000", "nestedLevel" })
+  public String expression;
+  
+  private List<String> lines;
+  
+  @Setup
+  public void setup() {
+    lines = ExpressionCorpus.get(expression);
+  }
+  
+  @Benchmark
+  public void split(Blackhole bh) {
+    for (String line : lines) {
+      bh.consume(ExpressionSplitter.split(line));
+    }
+  }
+}
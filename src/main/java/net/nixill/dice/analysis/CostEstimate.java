@@ -0,0 +1,100 @@
+package net.nixill.dice.analysis;
+
+import net.nixill.dice.evaluation.Governor;
+
+/**
+ * How much evaluating an expression is expected to cost at most, as
+ * worked out by a {@link CostEstimator}.
+ * <p>
+ * The counts are those a {@link Governor} keeps: steps (operators run and
+ * functions called), dice rolled, and list items made. Characters in the
+ * strings made are counted as well. If the estimate is
+ * {@link #isCertain() certain}, each count is an upper bound; otherwise
+ * some part of the expression couldn't be bounded, like a dice count that
+ * isn't known ahead of time or a function that calls itself, and was
+ * guessed at.
+ */
+public class CostEstimate {
+  private final long    steps;
+  private final long    dice;
+  private final long    items;
+  private final long    chars;
+  private final boolean certain;
+  
+  CostEstimate(long steps, long dice, long items, long chars,
+      boolean certain) {
+    this.steps = steps;
+    this.dice = dice;
+    this.items = items;
+    this.chars = chars;
+    this.certain = certain;
+  }
+  
+  /**
+   * Returns the most operators and function calls the evaluation runs.
+   * 
+   * @return The number of steps.
+   */
+  public long getSteps() {
+    return steps;
+  }
+  
+  /**
+   * Returns the most dice the evaluation rolls.
+   * 
+   * @return The number of dice.
+   */
+  public long getDice() {
+    return dice;
+  }
+  
+  /**
+   * Returns the most list items the evaluation makes, in all its lists put
+   * together.
+   * 
+   * @return The number of items.
+   */
+  public long getItems() {
+    return items;
+  }
+  
+  /**
+   * Returns the most characters the evaluation puts into new strings.
+   * 
+   * @return The number of characters.
+   */
+  public long getChars() {
+    return chars;
+  }
+  
+  /**
+   * Returns whether the counts are upper bounds, rather than guesses.
+   * 
+   * @return <code>true</code> iff every part of the expression could be
+   *   bounded.
+   */
+  public boolean isCertain() {
+    return certain;
+  }
+  
+  /**
+   * Returns whether the estimate is within the limits of a governor. An
+   * uncertain estimate may fit and still go over them when it's
+   * evaluated.
+   * 
+   * @param governor
+   *   The governor.
+   * @return <code>true</code> iff no count is over its limit.
+   */
+  public boolean fits(Governor governor) {
+    return steps <= governor.getMaxSteps() && dice <= governor.getMaxDice()
+        && items <= governor.getMaxItems();
+  }
+  
+  @Override
+  public String toString() {
+    return "CostEstimate [" + steps + " steps, " + dice + " dice, " + items
+        + " items, " + chars + " chars, "
+        + (certain ? "certain" : "uncertain") + "]";
+  }
+}
@@ -0,0 +1,636 @@
+package net.nixill.dice.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.nixill.dice.defaults.operations.DiceOperators;
+import net.nixill.dice.defaults.operations.ListOperators;
+import net.nixill.dice.defaults.operations.LogicOperators;
+import net.nixill.dice.defaults.operations.MathsOperators;
+import net.nixill.dice.objects.DCCodeFunction;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCString;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.Functions;
+import net.nixill.dice.operations.Operator;
+
+/**
+ * Works out a {@link CostEstimate} of a parsed expression without
+ * evaluating it, so that expensive expressions can be told apart from
+ * cheap ones before they're run.
+ * <p>
+ * Along with the costs, the estimator keeps track of the range each part's
+ * value could be in, and how long a list or string it could be. Dice
+ * counts are taken from the range of their left operand, so
+ * <code>500d6</code> rolls at most 500 dice and <code>(d6)d6</code> at
+ * most 6. Functions are followed into what they're saved as, with their
+ * parameters, as when they're called; only the item that <code>s</code>
+ * would select from a list written out in the expression is counted, the
+ * most expensive one.
+ * <p>
+ * The estimate is uncertain if any part of the expression can't be
+ * bounded: an unknown dice count (counted as one die), a function that
+ * calls itself or doesn't exist (counted as one step), an operator the
+ * estimator doesn't know, or an already evaluated or compiled node. Each
+ * entity is visited at most once per time it'd be evaluated, and the
+ * estimator gives up (uncertainly) after {@link #MAX_NODES} of those, so
+ * it's cheap enough to run before every evaluation. It doesn't recurse, so
+ * deeply nested expressions can be estimated on any thread.
+ */
+public class CostEstimator {
+  /**
+   * How deeply functions may call each other before the estimator stops
+   * following them.
+   */
+  public static final int MAX_DEPTH = 50;
+  
+  /**
+   * How many entities the estimator visits before it gives up on the
+   * rest.
+   */
+  public static final int MAX_NODES = 100000;
+  
+  /**
+   * How many characters a single value takes up when it's made into a
+   * string, at most.
+   */
+  private static final long SINGLE_CHARS = 26;
+  
+  private CostEstimator() {
+  }
+  
+  /**
+   * Estimates the cost of evaluating an expression.
+   * 
+   * @param ent
+   *   The root of the parsed expression.
+   * @return The estimate.
+   */
+  public static CostEstimate estimate(DCEntity ent) {
+    return estimateOf(new Run().run(ent));
+  }
+  
+  /**
+   * Estimates the cost of evaluating an expression, and of evaluating
+   * each part of it where it is in the expression. A part that's
+   * evaluated in more than one place, like the body of a function that's
+   * called more than once, gets the highest of each of its costs.
+   * 
+   * @param ent
+   *   The root of the parsed expression.
+   * @return The estimates, by part, compared by identity. Parts that
+   *   weren't reached before the estimator gave up are left out.
+   */
+  public static Map<DCEntity, CostEstimate> estimateParts(DCEntity ent) {
+    Run run = new Run();
+    run.parts = new IdentityHashMap<>();
+    run.run(ent);
+    return run.parts;
+  }
+  
+  private static CostEstimate estimateOf(Cost cost) {
+    return new CostEstimate(cost.steps, cost.dice, cost.items, cost.chars,
+        cost.certain);
+  }
+  
+  /**
+   * What's known about one part of an expression: what it costs, and the
+   * range and size of its value.
+   */
+  private static class Cost {
+    long    steps;
+    long    dice;
+    long    items;
+    long    chars;
+    boolean certain = true;
+    
+    /**
+     * The most items the value has if it's a list, or 1.
+     */
+    long    size    = 1;
+    
+    /**
+     * The most characters the value has if it's a string.
+     */
+    long    length;
+    
+    /**
+     * Whether the value is certainly a list, which doesn't have to be
+     * made into one.
+     */
+    boolean list;
+    boolean string;
+    double  low     = Double.NEGATIVE_INFINITY;
+    double  high    = Double.POSITIVE_INFINITY;
+    
+    void add(Cost other) {
+      steps = sum(steps, other.steps);
+      dice = sum(dice, other.dice);
+      items = sum(items, other.items);
+      chars = sum(chars, other.chars);
+      certain &= other.certain;
+    }
+    
+    /**
+     * Sets the cost to the most expensive of it and another, for parts
+     * only one of which is evaluated.
+     */
+    void max(Cost other) {
+      steps = Math.max(steps, other.steps);
+      dice = Math.max(dice, other.dice);
+      items = Math.max(items, other.items);
+      chars = Math.max(chars, other.chars);
+      certain &= other.certain;
+      size = Math.max(size, other.size);
+      length = Math.max(length, other.length);
+      list &= other.list;
+      string |= other.string;
+      low = Math.min(low, other.low);
+      high = Math.max(high, other.high);
+    }
+    
+    void range(double low, double high) {
+      // NaN comes from infinities cancelling out, and could be anything.
+      this.low = Double.isNaN(low) ? Double.NEGATIVE_INFINITY : low;
+      this.high = Double.isNaN(high) ? Double.POSITIVE_INFINITY : high;
+    }
+    
+    /**
+     * The most characters the value has when it's made into a string.
+     */
+    long text() {
+      return string ? length : product(size, SINGLE_CHARS);
+    }
+    
+    /**
+     * The items made by making the value into a list.
+     */
+    long taken() {
+      return list ? 0 : size;
+    }
+  }
+  
+  /**
+   * The parameters of a function call, as they'd be on the
+   * {@link Functions#stackParams(ArrayList) stack} while it's evaluated.
+   */
+  private static class Context {
+    final List<DCEntity> params;
+    final String         name;
+    final Context        parent;
+    
+    Context(List<DCEntity> params, String name, Context parent) {
+      this.params = params;
+      this.name = name;
+      this.parent = parent;
+    }
+    
+    boolean calls(String name) {
+      for (Context ctx = this; ctx != null; ctx = ctx.parent) {
+        if (name.equals(ctx.name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+  
+  /**
+   * An entity whose parts are being estimated.
+   */
+  private static class Frame {
+    final DCEntity       ent;
+    final List<DCEntity> parts;
+    final Context        partContext;
+    final int            partDepth;
+    final List<Cost>     costs = new ArrayList<>();
+    
+    /**
+     * The entity a function names, or <code>null</code> if it can't be
+     * followed.
+     */
+    DCEntity             saved;
+    
+    Frame(DCEntity ent, List<DCEntity> parts, Context partContext,
+        int partDepth) {
+      this.ent = ent;
+      this.parts = parts;
+      this.partContext = partContext;
+      this.partDepth = partDepth;
+    }
+  }
+  
+  /**
+   * One estimate.
+   */
+  private static class Run {
+    private int                         nodes;
+    
+    /**
+     * Where to put the estimate of each part, if anywhere.
+     */
+    private Map<DCEntity, CostEstimate> parts;
+    
+    private Cost run(DCEntity root) {
+      ArrayList<Frame> stack = new ArrayList<>();
+      stack.add(frame(root, null, 0));
+      
+      while (true) {
+        Frame frame = stack.get(stack.size() - 1);
+        if (frame.costs.size() < frame.parts.size()) {
+          stack.add(frame(frame.parts.get(frame.costs.size()),
+              frame.partContext, frame.partDepth));
+        } else {
+          stack.remove(stack.size() - 1);
+          Cost cost = combine(frame);
+          if (parts != null && frame.ent != null) {
+            record(frame.ent, cost);
+          }
+          if (stack.isEmpty()) {
+            return cost;
+          }
+          stack.get(stack.size() - 1).costs.add(cost);
+        }
+      }
+    }
+    
+    /**
+     * Keeps the estimate of a part, before its cost is added to anything
+     * else's.
+     */
+    private void record(DCEntity ent, Cost cost) {
+      CostEstimate est = estimateOf(cost);
+      CostEstimate old = parts.get(ent);
+      if (old != null) {
+        est = new CostEstimate(Math.max(old.getSteps(), est.getSteps()),
+            Math.max(old.getDice(), est.getDice()),
+            Math.max(old.getItems(), est.getItems()),
+            Math.max(old.getChars(), est.getChars()),
+            old.isCertain() && est.isCertain());
+      }
+      parts.put(ent, est);
+    }
+    
+    private Frame frame(DCEntity ent, Context ctx, int depth) {
+      List<DCEntity> none = Collections.emptyList();
+      nodes++;
+      if (nodes > MAX_NODES) {
+        return new Frame(null, none, ctx, depth);
+      }
+      
+      if (ent instanceof DCOperation) {
+        DCOperation op = (DCOperation) ent;
+        ArrayList<DCEntity> parts = new ArrayList<>();
+        if (choosesItem(op)) {
+          // The items go first, then the selection.
+          parts.addAll(((DCListExpression) op.getLeft()).getItems());
+        } else if (op.getLeft() != null) {
+          parts.add(op.getLeft());
+        }
+        if (op.getRight() != null) {
+          parts.add(op.getRight());
+        }
+        return new Frame(ent, parts, ctx, depth);
+      } else if (ent instanceof DCListExpression) {
+        return new Frame(ent, ((DCListExpression) ent).getItems(), ctx,
+            depth);
+      } else if (ent instanceof DCFunction) {
+        return functionFrame((DCFunction) ent, ctx, depth);
+      } else {
+        return new Frame(ent, none, ctx, depth);
+      }
+    }
+    
+    private Frame functionFrame(DCFunction func, Context ctx, int depth) {
+      List<DCEntity> none = Collections.emptyList();
+      String name = func.getName().toLowerCase();
+      boolean param = Functions.isParam(name);
+      Frame frame;
+      
+      boolean recursive = !param && ctx != null && ctx.calls(name);
+      
+      if (depth >= MAX_DEPTH || recursive) {
+        frame = new Frame(func, none, ctx, depth);
+      } else {
+        DCEntity saved = resolve(func, name, param, ctx);
+        Context called = new Context(func.getParams(), name, ctx);
+        
+        if (saved instanceof DCCodeFunction) {
+          // Built-in functions evaluate their parameters themselves.
+          frame = new Frame(func, func.getParams(), called, depth + 1);
+        } else if (saved instanceof DCExpression) {
+          frame = new Frame(func, Collections.singletonList(saved), called,
+              depth + 1);
+        } else {
+          frame = new Frame(func, none, ctx, depth);
+        }
+        frame.saved = saved;
+      }
+      return frame;
+    }
+    
+    /**
+     * Works out what a function names, as {@link DCFunction#getSaved()}
+     * would while it's being evaluated.
+     */
+    private DCEntity resolve(DCFunction func, String name, boolean param,
+        Context ctx) {
+      if (param) {
+        int i;
+        try {
+          i = Integer.parseInt(name) - 1;
+        } catch (NumberFormatException ex) {
+          return null;
+        }
+        
+        if (ctx != null && ctx.params.size() > i) {
+          return ctx.params.get(i);
+        } else if (!func.getParams().isEmpty()) {
+          return func.getParams().get(0);
+        } else {
+          return null;
+        }
+      }
+      
+      try {
+        return Functions.get(name);
+      } catch (RuntimeException ex) {
+        // It'll fail again when it's evaluated.
+        return null;
+      }
+    }
+    
+    private Cost combine(Frame frame) {
+      DCEntity ent = frame.ent;
+      if (ent instanceof DCValue) {
+        return value((DCValue) ent);
+      } else if (ent instanceof DCOperation) {
+        return operation((DCOperation) ent, frame.costs);
+      } else if (ent instanceof DCListExpression) {
+        Cost cost = new Cost();
+        double low = 0;
+        double high = 0;
+        cost.size = frame.costs.size();
+        cost.items = cost.size;
+        cost.list = true;
+        for (Cost item : frame.costs) {
+          cost.add(item);
+          low += item.low;
+          high += item.high;
+        }
+        cost.range(low, high);
+        return cost;
+      } else if (ent instanceof DCFunction) {
+        return function(frame);
+      } else {
+        // Given up on, or something that's already been worked on.
+        Cost cost = new Cost();
+        cost.steps = 1;
+        cost.certain = false;
+        return cost;
+      }
+    }
+    
+    private Cost value(DCValue val) {
+      Cost cost = new Cost();
+      if (val instanceof DCString) {
+        // A string's amount is its length, and its list is its
+        // characters.
+        cost.string = true;
+        cost.length = val.getString().toString().length();
+        cost.size = cost.length;
+        cost.range(cost.length, cost.length);
+      } else if (val instanceof DCList) {
+        DCList list = (DCList) val;
+        cost.size = list.size();
+        cost.list = true;
+        if (!list.containsString()) {
+          double amount = list.getSingle().getAmount();
+          cost.range(amount, amount);
+        }
+      } else {
+        double amount = val.getSingle().getAmount();
+        cost.range(amount, amount);
+      }
+      return cost;
+    }
+    
+    private Cost function(Frame frame) {
+      Cost cost;
+      if (frame.saved instanceof DCCodeFunction) {
+        cost = new Cost();
+        for (Cost param : frame.costs) {
+          cost.add(param);
+        }
+      } else if (frame.saved instanceof DCExpression) {
+        cost = frame.costs.get(0);
+      } else if (frame.saved instanceof DCValue) {
+        cost = value((DCValue) frame.saved);
+      } else {
+        cost = new Cost();
+        cost.certain = false;
+      }
+      cost.steps = sum(cost.steps, 1);
+      return cost;
+    }
+    
+    /**
+     * Returns whether an operation evaluates just one item of a list in
+     * its left operand: "s", or "?" with both of its items.
+     */
+    private boolean choosesItem(DCOperation op) {
+      Operator oper = op.getOperator();
+      if (!(op.getLeft() instanceof DCListExpression)) {
+        return false;
+      }
+      return oper == ListOperators.SELECT
+          || (oper == LogicOperators.CONDITION
+              && ((DCListExpression) op.getLeft()).size() == 2);
+    }
+    
+    private Cost operation(DCOperation op, List<Cost> costs) {
+      Operator oper = op.getOperator();
+      Cost cost = new Cost();
+      cost.steps = 1;
+      
+      if (choosesItem(op)) {
+        Cost chosen = null;
+        for (Cost item : costs.subList(0, costs.size() - 1)) {
+          if (chosen == null) {
+            chosen = item;
+          } else {
+            chosen.max(item);
+          }
+        }
+        if (chosen != null) {
+          cost.add(chosen);
+          cost.size = chosen.size;
+          cost.length = chosen.length;
+          cost.list = chosen.list;
+          cost.string = chosen.string;
+          cost.range(chosen.low, chosen.high);
+        }
+        cost.add(costs.get(costs.size() - 1));
+        return cost;
+      }
+      
+      for (Cost part : costs) {
+        cost.add(part);
+      }
+      Cost left = (op.getLeft() == null) ? null : costs.get(0);
+      Cost right = (op.getRight() == null) ? null
+          : costs.get(costs.size() - 1);
+      
+      if (oper == DiceOperators.DICE) {
+        long count = diceCount(left, cost);
+        double sides = Math.max(1, Math.floor(right.high));
+        cost.dice = sum(cost.dice, count);
+        cost.items = sum(cost.items, count);
+        cost.size = count;
+        cost.list = true;
+        cost.range(
+            (Math.floor(right.low) >= 2) ? Math.max(1, Math.floor(left.low))
+                : 0,
+            count * sides);
+      } else if (oper == DiceOperators.ONE_DIE) {
+        cost.dice = sum(cost.dice, 1);
+        cost.range((Math.floor(right.low) >= 2) ? 1 : 0,
+            Math.max(1, Math.floor(right.high)));
+      } else if (DiceOperators.ROLL_UNTIL.contains(oper)) {
+        // It gives up after 50 dice.
+        cost.dice = sum(cost.dice, 50);
+        cost.items = sum(cost.items, 50);
+        cost.size = 50;
+        cost.list = true;
+        cost.range(0, 50 * Math.max(1, Math.floor(left.high)));
+      } else if (oper == ListOperators.JOIN
+          || oper == ListOperators.NEG_JOIN) {
+        boolean negative = (oper == ListOperators.NEG_JOIN);
+        long made = sum(left.taken(), right.taken());
+        if (negative) {
+          // The right is made negative first.
+          made = sum(made, sum(right.size, right.taken()));
+        }
+        cost.size = sum(left.size, right.size);
+        cost.items = sum(cost.items, sum(cost.size, made));
+        cost.list = left.list || right.list;
+        if (left.string || right.string) {
+          cost.string = true;
+          cost.length = sum(left.text(), right.text());
+          cost.chars = sum(cost.chars, cost.length);
+          cost.size = cost.length;
+          cost.range(0, cost.length);
+        } else if (negative) {
+          cost.range(left.low - right.high, left.high - right.low);
+        } else {
+          cost.range(left.low + right.low, left.high + right.high);
+        }
+      } else if (oper == ListOperators.NEGATIVE) {
+        cost.size = right.size;
+        cost.items = sum(cost.items, sum(right.size, right.taken()));
+        cost.list = right.list;
+        cost.range(-right.high, -right.low);
+      } else if (oper == ListOperators.SUM) {
+        cost.range(right.low, right.high);
+      } else if (oper == ListOperators.SIZE) {
+        cost.items = sum(cost.items, right.taken());
+        cost.range(0, right.size);
+      } else if (oper == ListOperators.SHUFFLE) {
+        cost.size = left.size;
+        cost.items = sum(cost.items, sum(left.size, left.taken()));
+        cost.list = true;
+        cost.range(left.low, left.high);
+      } else if (oper == ListOperators.SELECT) {
+        // An item of a list that's already been evaluated.
+        cost.items = sum(cost.items, left.taken());
+        cost.size = left.size;
+      } else if (oper == ListOperators.REPEAT) {
+        // The body's been counted once, and is evaluated up to the limit.
+        long count = repeatCount(left);
+        long more = Math.max(0, count - 1);
+        cost.steps = sum(cost.steps, product(right.steps, more));
+        cost.dice = sum(cost.dice, product(right.dice, more));
+        cost.items = sum(cost.items, product(right.items, more));
+        cost.chars = sum(cost.chars, product(right.chars, more));
+        cost.items = sum(cost.items, count);
+        cost.size = count;
+        cost.list = true;
+        cost.range(Math.min(0, count * right.low),
+            Math.max(0, count * right.high));
+      } else if (oper == MathsOperators.TIMES) {
+        double[] corners = { left.low * right.low, left.low * right.high,
+            left.high * right.low, left.high * right.high };
+        double low = corners[0];
+        double high = corners[0];
+        for (double corner : corners) {
+          low = Math.min(low, corner);
+          high = Math.max(high, corner);
+        }
+        cost.range(low, high);
+      } else if (oper == MathsOperators.DUO_DIVIDE) {
+        cost.size = 2;
+        cost.items = sum(cost.items, 2);
+        cost.list = true;
+      } else if (oper == MathsOperators.DIVIDE
+          || oper == MathsOperators.POWER
+          || oper == MathsOperators.FACTORIAL
+          || oper == MathsOperators.INT_DIVIDE
+          || oper == MathsOperators.MODULO) {
+        // A number, but anything could be.
+      } else if (LogicOperators.COMPARE.contains(oper)) {
+        cost.range(0, 1);
+      } else {
+        cost.size = Math.max((left == null) ? 1 : left.size,
+            (right == null) ? 1 : right.size);
+        cost.certain = false;
+      }
+      return cost;
+    }
+    
+    /**
+     * The most dice rolled by "d" with a left operand.
+     */
+    private long diceCount(Cost count, Cost cost) {
+      double high = Math.floor(count.high);
+      if (high == Double.POSITIVE_INFINITY || Double.isNaN(high)) {
+        cost.certain = false;
+        return 1;
+      }
+      // Counts are rounded down to ints, and fewer than one fails.
+      return (long) Math.max(1, Math.min(high, Integer.MAX_VALUE));
+    }
+    
+    /**
+     * The most times "x" evaluates its body. More than the limit fails
+     * before anything is evaluated.
+     */
+    private long repeatCount(Cost count) {
+      double high = Math.floor(count.high);
+      if (Double.isNaN(high)) {
+        return ListOperators.getMaxRepeats();
+      }
+      return (long) Math.max(0,
+          Math.min(high, ListOperators.getMaxRepeats()));
+    }
+  }
+  
+  private static long sum(long a, long b) {
+    long sum = a + b;
+    return (sum < 0) ? Long.MAX_VALUE : sum;
+  }
+  
+  private static long product(long a, long b) {
+    if (a != 0 && b > Long.MAX_VALUE / a) {
+      return Long.MAX_VALUE;
+    }
+    return a * b;
+  }
+}
@@ -0,0 +1,418 @@
+package net.nixill.dice.analysis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.nixill.dice.exception.DiceCalcException;
+import net.nixill.dice.operations.ComparisonOperators.Comparison;
+
+/**
+ * An exact probability distribution over whole numbers.
+ * <p>
+ * The probabilities are stored densely: one array slot for every whole
+ * number between the lowest and highest possible values. That makes
+ * combining distributions a matter of array arithmetic, which is what
+ * allows questions like "what are the odds of rolling 15 or more on
+ * 2d20" to be answered exactly and quickly.
+ * <p>
+ * Distributions are immutable.
+ */
+public class Distribution {
+  /**
+   * The largest number of slots a distribution may have. Anything that
+   * would need more is rejected rather than exhausting memory.
+   */
+  public static final int MAX_SIZE = 1 << 22;
+  
+  private final long     offset;
+  private final double[] probs;
+  
+  /**
+   * Creates a distribution from an array of probabilities.
+   * 
+   * @param offset
+   *   The value that the first slot of the array represents.
+   * @param probs
+   *   The probability of each value, starting from <code>offset</code>.
+   *   Zeroes at either end are trimmed off.
+   */
+  Distribution(long offset, double[] probs) {
+    int start = 0;
+    int end = probs.length;
+    while (start < end - 1 && probs[start] == 0) {
+      start++;
+    }
+    while (end - 1 > start && probs[end - 1] == 0) {
+      end--;
+    }
+    
+    if (start != 0 || end != probs.length) {
+      double[] trimmed = new double[end - start];
+      System.arraycopy(probs, start, trimmed, 0, trimmed.length);
+      probs = trimmed;
+    }
+    
+    this.offset = offset + start;
+    this.probs = probs;
+  }
+  
+  /**
+   * Returns a distribution that is always the same value.
+   * 
+   * @param value
+   *   The value.
+   * @return The distribution.
+   */
+  public static Distribution constant(long value) {
+    return new Distribution(value, new double[] { 1 });
+  }
+  
+  /**
+   * Returns a distribution in which each whole number from
+   * <code>low</code> to <code>high</code> (inclusive) is equally likely.
+   * A die with <code>n</code> sides is <code>uniform(1, n)</code>.
+   * 
+   * @param low
+   *   The lowest value.
+   * @param high
+   *   The highest value.
+   * @return The distribution.
+   */
+  public static Distribution uniform(long low, long high) {
+    double[] probs = new double[checkSize(high - low + 1)];
+    double each = 1.0 / probs.length;
+    for (int i = 0; i < probs.length; i++) {
+      probs[i] = each;
+    }
+    return new Distribution(low, probs);
+  }
+  
+  /**
+   * Returns the distribution of rolling <code>count</code> dice with
+   * <code>sides</code> sides each and adding them up.
+   * <p>
+   * This uses a running sum over the previous distribution for each die,
+   * so each extra die only costs one pass over the array.
+   * 
+   * @param count
+   *   The number of dice, which must not be negative.
+   * @param sides
+   *   The number of sides on each die, which must be at least one.
+   * @return The distribution.
+   */
+  public static Distribution dice(int count, int sides) {
+    checkSize((long) count * (sides - 1) + 1);
+    
+    // Index i is the value (count + i); the array grows by (sides - 1)
+    // slots for each die.
+    double[] cur = new double[] { 1 };
+    for (int n = 0; n < count; n++) {
+      cur = addDie(cur, sides);
+    }
+    
+    return new Distribution(count, cur);
+  }
+  
+  /**
+   * Adds one die to the probabilities of a sum of dice, as
+   * {@link #dice(int, int)} does for each die.
+   * 
+   * @param cur
+   *   The probabilities of the sum, starting from the lowest.
+   * @param sides
+   *   The number of sides on the die.
+   * @return The probabilities of the sum with the die added, starting
+   *   from one more than before.
+   */
+  static double[] addDie(double[] cur, int sides) {
+    double[] next = new double[cur.length + sides - 1];
+    double window = 0;
+    for (int i = 0; i < next.length; i++) {
+      if (i < cur.length) {
+        window += cur[i];
+      }
+      if (i - sides >= 0) {
+        window -= cur[i - sides];
+      }
+      next[i] = window / sides;
+    }
+    return next;
+  }
+  
+  /**
+   * Returns a mixture of distributions: first one of the distributions is
+   * picked according to the weights, then a value is picked from it.
+   * 
+   * @param dists
+   *   The distributions to mix.
+   * @param weights
+   *   The chance of picking each distribution, which should add up to
+   *   one.
+   * @return The mixture.
+   */
+  public static Distribution mixture(List<Distribution> dists,
+      List<Double> weights) {
+    long low = Long.MAX_VALUE;
+    long high = Long.MIN_VALUE;
+    for (Distribution dist : dists) {
+      low = Math.min(low, dist.getMinimum());
+      high = Math.max(high, dist.getMaximum());
+    }
+    
+    double[] out = new double[checkSize(high - low + 1)];
+    for (int i = 0; i < dists.size(); i++) {
+      Distribution dist = dists.get(i);
+      double weight = weights.get(i);
+      int start = (int) (dist.offset - low);
+      for (int j = 0; j < dist.probs.length; j++) {
+        out[start + j] += dist.probs[j] * weight;
+      }
+    }
+    
+    return new Distribution(low, out);
+  }
+  
+  /**
+   * Returns the distribution of the sum of a value from this distribution
+   * and an independent value from another.
+   * 
+   * @param other
+   *   The other distribution.
+   * @return The distribution of the sum.
+   */
+  public Distribution plus(Distribution other) {
+    double[] out = new double[checkSize(
+        (long) probs.length + other.probs.length - 1)];
+    
+    for (int i = 0; i < probs.length; i++) {
+      double prob = probs[i];
+      if (prob == 0) {
+        continue;
+      }
+      for (int j = 0; j < other.probs.length; j++) {
+        out[i + j] += prob * other.probs[j];
+      }
+    }
+    
+    return new Distribution(offset + other.offset, out);
+  }
+  
+  /**
+   * Returns the distribution of the negative of a value from this
+   * distribution.
+   * 
+   * @return The negated distribution.
+   */
+  public Distribution negate() {
+    double[] out = new double[probs.length];
+    for (int i = 0; i < probs.length; i++) {
+      out[probs.length - 1 - i] = probs[i];
+    }
+    return new Distribution(-getMaximum(), out);
+  }
+  
+  /**
+   * Returns the distribution of the product of a value from this
+   * distribution and an independent value from another.
+   * 
+   * @param other
+   *   The other distribution.
+   * @return The distribution of the product.
+   */
+  public Distribution times(Distribution other) {
+    long[] corners = { getMinimum() * other.getMinimum(),
+        getMinimum() * other.getMaximum(),
+        getMaximum() * other.getMinimum(),
+        getMaximum() * other.getMaximum() };
+    long low = Long.MAX_VALUE;
+    long high = Long.MIN_VALUE;
+    for (long corner : corners) {
+      low = Math.min(low, corner);
+      high = Math.max(high, corner);
+    }
+    
+    double[] out = new double[checkSize(high - low + 1)];
+    for (int i = 0; i < probs.length; i++) {
+      double prob = probs[i];
+      if (prob == 0) {
+        continue;
+      }
+      long left = offset + i;
+      for (int j = 0; j < other.probs.length; j++) {
+        out[(int) (left * (other.offset + j) - low)] += prob
+            * other.probs[j];
+      }
+    }
+    
+    return new Distribution(low, out);
+  }
+  
+  /**
+   * Returns the lowest value with a chance of happening.
+   * 
+   * @return The minimum.
+   */
+  public long getMinimum() {
+    return offset;
+  }
+  
+  /**
+   * Returns the highest value with a chance of happening.
+   * 
+   * @return The maximum.
+   */
+  public long getMaximum() {
+    return offset + probs.length - 1;
+  }
+  
+  /**
+   * Returns whether this distribution only ever has one value.
+   * 
+   * @return <code>true</code> iff the minimum and maximum are the same.
+   */
+  public boolean isConstant() {
+    return probs.length == 1;
+  }
+  
+  /**
+   * Returns the chance of getting exactly the given value.
+   * 
+   * @param value
+   *   The value.
+   * @return The chance, between 0 and 1.
+   */
+  public double probability(double value) {
+    if (value != Math.floor(value) || value < getMinimum()
+        || value > getMaximum()) {
+      return 0;
+    }
+    return probs[(int) (value - offset)];
+  }
+  
+  /**
+   * Returns the chance that a value satisfies a comparison against a
+   * constant. For example, the chance of rolling 15 or more is
+   * <code>probability(Comparison.NOT_LESS, 15)</code>.
+   * 
+   * @param comp
+   *   The comparison.
+   * @param value
+   *   The constant on the right of the comparison.
+   * @return The chance, between 0 and 1.
+   */
+  public double probability(Comparison comp, double value) {
+    double out = 0;
+    for (int i = 0; i < probs.length; i++) {
+      if (probs[i] != 0 && comp.compares(offset + i, value)) {
+        out += probs[i];
+      }
+    }
+    return Math.min(1, out);
+  }
+  
+  /**
+   * Returns the average (expected) value.
+   * 
+   * @return The mean.
+   */
+  public double mean() {
+    double out = 0;
+    for (int i = 0; i < probs.length; i++) {
+      out += probs[i] * i;
+    }
+    return out + offset;
+  }
+  
+  /**
+   * Returns the variance: the average squared distance from the mean.
+   * 
+   * @return The variance.
+   */
+  public double variance() {
+    double mean = mean() - offset;
+    double out = 0;
+    for (int i = 0; i < probs.length; i++) {
+      out += probs[i] * (i - mean) * (i - mean);
+    }
+    return out;
+  }
+  
+  /**
+   * Returns the standard deviation, which is the square root of the
+   * {@link #variance()}.
+   * 
+   * @return The standard deviation.
+   */
+  public double standardDeviation() {
+    return Math.sqrt(variance());
+  }
+  
+  /**
+   * Returns the lowest value that is at least as high as the given
+   * fraction of all results. For example, <code>quantile(0.5)</code> is
+   * the median.
+   * 
+   * @param fraction
+   *   The fraction, between 0 and 1.
+   * @return The value at that point.
+   */
+  public long quantile(double fraction) {
+    if (fraction < 0 || fraction > 1) {
+      throw new IllegalArgumentException(
+          "A quantile must be between 0 and 1.");
+    }
+    
+    double total = 0;
+    for (int i = 0; i < probs.length; i++) {
+      total += probs[i];
+      // A little leeway, as the probabilities won't add up exactly.
+      if (total >= fraction - 1e-12 && probs[i] != 0) {
+        return offset + i;
+      }
+    }
+    return getMaximum();
+  }
+  
+  /**
+   * Returns the value at a percentile; identical to
+   * <code>quantile(percent / 100)</code>.
+   * 
+   * @param percent
+   *   The percentile, between 0 and 100.
+   * @return The value at that percentile.
+   */
+  public long percentile(double percent) {
+    return quantile(percent / 100);
+  }
+  
+  /**
+   * Returns every possible value with its chance, in increasing order.
+   * 
+   * @return A map from values to chances.
+   */
+  public Map<Long, Double> asMap() {
+    TreeMap<Long, Double> out = new TreeMap<>();
+    for (int i = 0; i < probs.length; i++) {
+      if (probs[i] != 0) {
+        out.put(offset + i, probs[i]);
+      }
+    }
+    return Collections.unmodifiableMap(out);
+  }
+  
+  @Override
+  public String toString() {
+    return "Distribution [" + getMinimum() + ".." + getMaximum()
+        + ", mean " + mean() + "]";
+  }
+  
+  static int checkSize(long size) {
+    if (size > MAX_SIZE) {
+      throw new DiceCalcException(new UnsupportedOperationException(
+          "That distribution has too many possible values to work out."));
+    }
+    return (int) size;
+  }
+}
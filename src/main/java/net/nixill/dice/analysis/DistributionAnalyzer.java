@@ -0,0 +1,324 @@
+package net.nixill.dice.analysis;
+
+import java.util.ArrayList;
+
+import net.nixill.dice.defaults.operations.DiceOperators;
+import net.nixill.dice.defaults.operations.ListOperators;
+import net.nixill.dice.defaults.operations.MathsOperators;
+import net.nixill.dice.exception.DiceCalcException;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCSingle;
+import net.nixill.dice.objects.DCString;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.Functions;
+import net.nixill.dice.operations.Operator;
+
+/**
+ * Works out the exact {@link Distribution} of an expression's result,
+ * without rolling any dice.
+ * <p>
+ * The result is the distribution of the expression's
+ * {@link DCValue#getSingle() single} value, i.e. the sum of a list. The
+ * following can be analyzed:
+ * <ul>
+ * <li>Numbers and lists of numbers.</li>
+ * <li>The binary and prefix <code>d</code> operators, including dice
+ * counts and sides that are themselves random.</li>
+ * <li>The binary <code>+</code>, <code>-</code> and <code>*</code>
+ * operators, and the prefix <code>-</code> operator.</li>
+ * <li>The <code>$</code>, <code>#</code> and <code>?</code> list
+ * operators, and the <code>s</code> operator on a list written out in
+ * the expression.</li>
+ * <li>Functions and variables, by analyzing what they're saved as.</li>
+ * </ul>
+ * Every value is assumed to be independent of the others; this is true
+ * of every expression made only from the above.
+ * <p>
+ * Anything else (strings, decimals, other operators) makes the analysis
+ * throw a {@link DiceCalcException} caused by an
+ * {@link UnsupportedOperationException}. An expression that could fail
+ * when rolled, like <code>(d3-2)d6</code>, throws the same exception that
+ * rolling it could.
+ */
+public class DistributionAnalyzer {
+  /**
+   * How deeply functions may call each other before the analysis gives
+   * up. Recursive functions would otherwise never finish.
+   */
+  public static final int MAX_DEPTH = 50;
+  
+  /**
+   * How many slots, in total, the analysis may fill while rolling dice
+   * whose count or sides are random, such as <code>(4d6)d(4d6)</code>.
+   * Each possible number of dice is rolled with each possible number of
+   * sides, so larger ones would take too long to finish.
+   */
+  public static final long MAX_WORK = 1L << 27;
+  
+  private DistributionAnalyzer() {
+  }
+  
+  /**
+   * Works out the distribution of an expression's result.
+   * 
+   * @param ent
+   *   The root of the parsed expression.
+   * @return The distribution of its result.
+   * @throws DiceCalcException
+   *   If the expression can't be analyzed, or could fail when rolled.
+   */
+  public static Distribution analyze(DCEntity ent) {
+    return analyze(ent, 0).sum;
+  }
+  
+  /**
+   * What's known about one part of an expression: the distribution of its
+   * sum, the distribution of its length, and whether it's a list at all
+   * (a single value has a length of one, but isn't joined like a list).
+   */
+  private static class Result {
+    final Distribution sum;
+    final Distribution size;
+    final boolean      list;
+    
+    Result(Distribution sum, Distribution size, boolean list) {
+      this.sum = sum;
+      this.size = size;
+      this.list = list;
+    }
+    
+    static Result single(Distribution sum) {
+      return new Result(sum, Distribution.constant(1), false);
+    }
+  }
+  
+  private static Result analyze(DCEntity ent, int depth) {
+    if (ent instanceof DCOperation) {
+      return analyzeOperation((DCOperation) ent, depth);
+    } else if (ent instanceof DCListExpression) {
+      Distribution sum = Distribution.constant(0);
+      for (DCEntity item : ((DCListExpression) ent).getItems()) {
+        sum = sum.plus(analyze(item, depth).sum);
+      }
+      return new Result(sum,
+          Distribution.constant(((DCListExpression) ent).size()), true);
+    } else if (ent instanceof DCFunction) {
+      return analyzeFunction((DCFunction) ent, depth);
+    } else if (ent instanceof DCString) {
+      throw unsupported("Strings don't have a distribution.");
+    } else if (ent instanceof DCList) {
+      DCList list = (DCList) ent;
+      if (list.containsString()) {
+        throw unsupported("Strings don't have a distribution.");
+      }
+      return new Result(constant(list.getSingle()),
+          Distribution.constant(list.size()), true);
+    } else if (ent instanceof DCSingle) {
+      return Result.single(constant((DCSingle) ent));
+    } else {
+      throw unsupported("Can't analyze " + ent.toCode() + ".");
+    }
+  }
+  
+  private static Result analyzeOperation(DCOperation op, int depth) {
+    Operator oper = op.getOperator();
+    
+    if (oper == DiceOperators.DICE) {
+      Distribution count = analyze(op.getLeft(), depth).sum;
+      Distribution sides = analyze(op.getRight(), depth).sum;
+      return new Result(dice(count, sides), count, true);
+    } else if (oper == DiceOperators.ONE_DIE) {
+      Distribution sides = analyze(op.getRight(), depth).sum;
+      return Result.single(dice(Distribution.constant(1), sides));
+    } else if (oper == ListOperators.JOIN) {
+      return join(analyze(op.getLeft(), depth),
+          analyze(op.getRight(), depth));
+    } else if (oper == ListOperators.NEG_JOIN) {
+      return join(analyze(op.getLeft(), depth),
+          negate(analyze(op.getRight(), depth)));
+    } else if (oper == ListOperators.NEGATIVE) {
+      return negate(analyze(op.getRight(), depth));
+    } else if (oper == MathsOperators.TIMES) {
+      return Result.single(analyze(op.getLeft(), depth).sum
+          .times(analyze(op.getRight(), depth).sum));
+    } else if (oper == ListOperators.SUM) {
+      return Result.single(analyze(op.getRight(), depth).sum);
+    } else if (oper == ListOperators.SIZE) {
+      return Result.single(analyze(op.getRight(), depth).size);
+    } else if (oper == ListOperators.SHUFFLE) {
+      // Shuffling changes neither the sum nor the length.
+      Result res = analyze(op.getLeft(), depth);
+      return new Result(res.sum, res.size, true);
+    } else if (oper == ListOperators.SELECT
+        && op.getLeft() instanceof DCListExpression) {
+      return select((DCListExpression) op.getLeft(),
+          analyze(op.getRight(), depth).sum, depth);
+    } else {
+      throw unsupported(
+          "Can't analyze the " + oper.getSymbol() + " operator.");
+    }
+  }
+  
+  private static Result analyzeFunction(DCFunction func, int depth) {
+    if (depth >= MAX_DEPTH) {
+      throw unsupported("Functions are nested too deeply to analyze.");
+    }
+    
+    DCEntity ent = func.getSaved();
+    
+    if (ent instanceof DCExpression) {
+      // Parameters are passed the same way as when rolling, so that
+      // {1}, {2}, etc. inside the function find them.
+      Functions.stackParams(new ArrayList<>(func.getParams()));
+      try {
+        return analyze(ent, depth + 1);
+      } finally {
+        Functions.unstackParams();
+      }
+    } else {
+      return analyze(ent, depth + 1);
+    }
+  }
+  
+  private static Distribution dice(Distribution count,
+      Distribution sides) {
+    if (count.getMinimum() < 1) {
+      throw new DiceCalcException(new IllegalArgumentException(
+          "You must roll at least one die."));
+    }
+    if (sides.getMinimum() < 1) {
+      throw new DiceCalcException(new IllegalArgumentException(
+          "Dice must have at least one side."));
+    }
+    if (sides.probability(1) != 0) {
+      throw unsupported("Can't analyze one-sided (decimal) dice.");
+    }
+    
+    int maxCount = checkInt(count.getMaximum());
+    int maxSides = checkInt(sides.getMaximum());
+    if (count.isConstant() && sides.isConstant()) {
+      return Distribution.dice(maxCount, maxSides);
+    }
+    
+    // Every number of dice up to the most is rolled once for each number
+    // of sides, and rolling c dice with s sides fills c * (s - 1) slots.
+    double work = 0;
+    for (long s = sides.getMinimum(); s <= maxSides; s++) {
+      if (sides.probability(s) != 0) {
+        work += (double) maxCount * (maxCount + 1) / 2 * (s - 1);
+      }
+    }
+    if (work > MAX_WORK) {
+      throw unsupported("There are too many dice, or too many sides, to "
+          + "analyze.");
+    }
+    
+    long low = count.getMinimum();
+    double[] out = new double[Distribution
+        .checkSize((long) maxCount * maxSides - low + 1)];
+    
+    for (int s = (int) sides.getMinimum(); s <= maxSides; s++) {
+      double sideChance = sides.probability(s);
+      if (sideChance == 0) {
+        continue;
+      }
+      
+      // The sum of c dice, which starts from c, gets one more die at a
+      // time and is added to the output for each c that can be rolled.
+      double[] sum = new double[] { 1 };
+      for (int c = 1; c <= maxCount; c++) {
+        sum = Distribution.addDie(sum, s);
+        double chance = sideChance * count.probability(c);
+        if (chance == 0) {
+          continue;
+        }
+        
+        int start = (int) (c - low);
+        for (int i = 0; i < sum.length; i++) {
+          out[start + i] += sum[i] * chance;
+        }
+      }
+    }
+    
+    return new Distribution(low, out);
+  }
+  
+  private static Result join(Result left, Result right) {
+    if (left.list || right.list) {
+      return new Result(left.sum.plus(right.sum),
+          left.size.plus(right.size), true);
+    } else {
+      return Result.single(left.sum.plus(right.sum));
+    }
+  }
+  
+  private static Result negate(Result res) {
+    return new Result(res.sum.negate(), res.size, res.list);
+  }
+  
+  private static Result select(DCListExpression list, Distribution index,
+      int depth) {
+    if (list.size() == 0) {
+      throw unsupported("Can't select from an empty list.");
+    }
+    
+    // Each item is only analyzed once, however many indices select it.
+    ArrayList<Distribution> items = new ArrayList<>();
+    double[] chances = new double[list.size()];
+    
+    for (long i = index.getMinimum(); i <= index.getMaximum(); i++) {
+      double chance = index.probability(i);
+      if (chance != 0) {
+        int selection = (int) Math.min(Math.max(0, i - 1),
+            list.size() - 1);
+        chances[selection] += chance;
+      }
+    }
+    
+    ArrayList<Distribution> sizes = new ArrayList<>();
+    ArrayList<Double> weights = new ArrayList<>();
+    Boolean isList = null;
+    for (int i = 0; i < chances.length; i++) {
+      if (chances[i] != 0) {
+        Result item = analyze(list.get(i), depth);
+        if (isList != null && isList != item.list) {
+          throw unsupported("Can't analyze selecting between lists and "
+              + "single values.");
+        }
+        isList = item.list;
+        items.add(item.sum);
+        sizes.add(item.size);
+        weights.add(chances[i]);
+      }
+    }
+    
+    return new Result(Distribution.mixture(items, weights),
+        Distribution.mixture(sizes, weights), isList);
+  }
+  
+  private static Distribution constant(DCSingle single) {
+    double amount = single.getAmount();
+    if (amount != Math.floor(amount) || Double.isInfinite(amount)) {
+      throw unsupported("Can't analyze decimals.");
+    }
+    return Distribution.constant((long) amount);
+  }
+  
+  private static int checkInt(long value) {
+    if (value > Distribution.MAX_SIZE) {
+      throw unsupported("There are too many dice, or too many sides, to "
+          + "analyze.");
+    }
+    return (int) value;
+  }
+  
+  private static DiceCalcException unsupported(String message) {
+    return new DiceCalcException(
+        new UnsupportedOperationException(message));
+  }
+}
@@ -0,0 +1,195 @@
+package net.nixill.dice.analysis;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.ComparisonOperators.Comparison;
+
+/**
+ * The results of running an expression many times with a
+ * {@link Simulator}: a histogram of the values it produced, and a few
+ * statistics about them.
+ * <p>
+ * The value of each trial is its {@link DCValue#getSingle() single}
+ * value, i.e. the sum of a list. Trials that threw an exception
+ * are counted as {@link #getErrors() errors} and are left out of
+ * everything else.
+ */
+public class SimulationResult {
+  private final TreeMap<Double, Long> counts;
+  private final long                  trials;
+  private final long                  errors;
+  private final double                sum;
+  private final double                sumSquares;
+  
+  SimulationResult(TreeMap<Double, Long> counts, long trials, long errors,
+      double sum, double sumSquares) {
+    this.counts = counts;
+    this.trials = trials;
+    this.errors = errors;
+    this.sum = sum;
+    this.sumSquares = sumSquares;
+  }
+  
+  /**
+   * Returns the number of trials that were run, including those that
+   * threw exceptions.
+   * 
+   * @return The number of trials.
+   */
+  public long getTrials() {
+    return trials;
+  }
+  
+  /**
+   * Returns the number of trials that threw an exception.
+   * 
+   * @return The number of errors.
+   */
+  public long getErrors() {
+    return errors;
+  }
+  
+  /**
+   * Returns the number of trials that produced a value.
+   * 
+   * @return The number of successful trials.
+   */
+  public long getSuccesses() {
+    return trials - errors;
+  }
+  
+  /**
+   * Returns how many times each value came up, in increasing order of
+   * value.
+   * 
+   * @return The histogram.
+   */
+  public SortedMap<Double, Long> getCounts() {
+    return Collections.unmodifiableSortedMap(counts);
+  }
+  
+  /**
+   * Returns how many times a value came up.
+   * 
+   * @param value
+   *   The value.
+   * @return The number of trials that produced it.
+   */
+  public long getCount(double value) {
+    return counts.getOrDefault(value, 0L);
+  }
+  
+  /**
+   * Returns the fraction of successful trials that produced exactly the
+   * given value.
+   * 
+   * @param value
+   *   The value.
+   * @return The fraction, between 0 and 1.
+   */
+  public double probability(double value) {
+    return fraction(getCount(value));
+  }
+  
+  /**
+   * Returns the fraction of successful trials whose value satisfied a
+   * comparison against a constant.
+   * 
+   * @param comp
+   *   The comparison.
+   * @param value
+   *   The constant on the right of the comparison.
+   * @return The fraction, between 0 and 1.
+   */
+  public double probability(Comparison comp, double value) {
+    long matched = 0;
+    for (Map.Entry<Double, Long> entry : counts.entrySet()) {
+      if (comp.compares(entry.getKey(), value)) {
+        matched += entry.getValue();
+      }
+    }
+    return fraction(matched);
+  }
+  
+  /**
+   * Returns the average value of the successful trials.
+   * 
+   * @return The mean.
+   */
+  public double mean() {
+    return sum / getSuccesses();
+  }
+  
+  /**
+   * Returns the variance of the values of the successful trials.
+   * 
+   * @return The variance.
+   */
+  public double variance() {
+    double mean = mean();
+    return Math.max(0, sumSquares / getSuccesses() - mean * mean);
+  }
+  
+  /**
+   * Returns the standard deviation, which is the square root of the
+   * {@link #variance()}.
+   * 
+   * @return The standard deviation.
+   */
+  public double standardDeviation() {
+    return Math.sqrt(variance());
+  }
+  
+  /**
+   * Returns the lowest value that at least the given fraction of
+   * successful trials were at or below.
+   * 
+   * @param fraction
+   *   The fraction, between 0 and 1.
+   * @return The value at that point, or <code>NaN</code> if no trial
+   *   succeeded.
+   */
+  public double quantile(double fraction) {
+    if (fraction < 0 || fraction > 1) {
+      throw new IllegalArgumentException(
+          "A quantile must be between 0 and 1.");
+    }
+    
+    double target = fraction * getSuccesses();
+    long total = 0;
+    for (Map.Entry<Double, Long> entry : counts.entrySet()) {
+      total += entry.getValue();
+      if (total >= target) {
+        return entry.getKey();
+      }
+    }
+    return Double.NaN;
+  }
+  
+  /**
+   * Returns the value at a percentile; identical to
+   * <code>quantile(percent / 100)</code>.
+   * 
+   * @param percent
+   *   The percentile, between 0 and 100.
+   * @return The value at that percentile.
+   */
+  public double percentile(double percent) {
+    return quantile(percent / 100);
+  }
+  
+  @Override
+  public String toString() {
+    return "SimulationResult [" + trials + " trials, " + errors
+        + " errors, mean " + mean() + "]";
+  }
+  
+  private double fraction(long count) {
+    long successes = getSuccesses();
+    return successes == 0 ? 0 : (double) count / successes;
+  }
+}
@@ -0,0 +1,221 @@
+package net.nixill.dice.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.Randomizer;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.Functions;
+
+/**
+ * Runs an expression many times over and collects the results into a
+ * {@link SimulationResult}. This is the way to get odds for expressions
+ * that the {@link DistributionAnalyzer} can't handle, like ones using
+ * <code>u</code>.
+ * <p>
+ * The trials are split into fixed-size chunks that run in parallel on a
+ * {@link ForkJoinPool}. Each chunk has its own {@link Random}, seeded from
+ * the simulation's seed and the chunk's number, and keeps its own
+ * histogram; histograms are only merged once chunks are finished, so
+ * workers never wait on each other. Because the chunks don't depend on how
+ * many threads there are, the same seed always gives the same result.
+ * <p>
+ * History isn't {@link FunctionHistory#setRecording(boolean) recorded}
+ * while the trials run. Expressions that save variables (like
+ * <code>u</code> saving <code>{_u}</code>) do so through the
+ * {@link net.nixill.dice.operations.FunctionLoader FunctionLoader} from
+ * several threads at once, which must be able to handle that.
+ */
+public class Simulator {
+  /**
+   * The number of trials in each chunk of work.
+   */
+  public static final int CHUNK_SIZE = 4096;
+  
+  private Simulator() {
+  }
+  
+  /**
+   * Runs an expression a number of times with a random seed, on the
+   * common {@link ForkJoinPool}.
+   * 
+   * @param ent
+   *   The expression to run.
+   * @param trials
+   *   The number of times to run it.
+   * @return The results.
+   */
+  public static SimulationResult simulate(DCEntity ent, long trials) {
+    return simulate(ent, trials, new Random().nextLong());
+  }
+  
+  /**
+   * Runs an expression a number of times with a fixed seed, on the common
+   * {@link ForkJoinPool}.
+   * 
+   * @param ent
+   *   The expression to run.
+   * @param trials
+   *   The number of times to run it.
+   * @param seed
+   *   The seed; the same seed always gives the same results.
+   * @return The results.
+   */
+  public static SimulationResult simulate(DCEntity ent, long trials,
+      long seed) {
+    return simulate(ent, trials, seed, ForkJoinPool.commonPool());
+  }
+  
+  /**
+   * Runs an expression a number of times with a fixed seed, on a given
+   * {@link ForkJoinPool}.
+   * 
+   * @param ent
+   *   The expression to run.
+   * @param trials
+   *   The number of times to run it.
+   * @param seed
+   *   The seed; the same seed always gives the same results.
+   * @param pool
+   *   The pool to run the trials on.
+   * @return The results.
+   */
+  public static SimulationResult simulate(DCEntity ent, long trials,
+      long seed, ForkJoinPool pool) {
+    if (trials < 1) {
+      throw new IllegalArgumentException(
+          "A simulation needs at least one trial.");
+    }
+    
+    long chunks = (trials + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    Tally tally = pool.invoke(new Chunks(ent, trials, seed, 0, chunks));
+    
+    TreeMap<Double, Long> counts = new TreeMap<>();
+    for (Map.Entry<Double, long[]> entry : tally.counts.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue()[0]);
+    }
+    
+    return new SimulationResult(counts, trials, tally.errors, tally.sum,
+        tally.sumSquares);
+  }
+  
+  /**
+   * Spreads the seed over all 64 bits, so that neighbouring chunks get
+   * unrelated streams (SplitMix64's finalizer).
+   */
+  private static long mix(long seed, long chunk) {
+    long z = seed + (chunk + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+  
+  /**
+   * The results of some number of chunks.
+   */
+  private static class Tally {
+    HashMap<Double, long[]> counts = new HashMap<>();
+    long                    errors;
+    double                  sum;
+    double                  sumSquares;
+    
+    void add(double value) {
+      // Adding zero turns -0.0 into 0.0, so they're counted together.
+      value += 0.0;
+      long[] count = counts.get(value);
+      if (count == null) {
+        counts.put(value, new long[] { 1 });
+      } else {
+        count[0]++;
+      }
+      sum += value;
+      sumSquares += value * value;
+    }
+    
+    Tally merge(Tally other) {
+      // Merge the smaller histogram into the larger one.
+      if (other.counts.size() > counts.size()) {
+        return other.merge(this);
+      }
+      
+      for (Map.Entry<Double, long[]> entry : other.counts.entrySet()) {
+        long[] count = counts.get(entry.getKey());
+        if (count == null) {
+          counts.put(entry.getKey(), entry.getValue());
+        } else {
+          count[0] += entry.getValue()[0];
+        }
+      }
+      errors += other.errors;
+      sum += other.sum;
+      sumSquares += other.sumSquares;
+      return this;
+    }
+  }
+  
+  /**
+   * A range of chunks, which is split in half until it's a single chunk.
+   */
+  private static class Chunks extends RecursiveTask<Tally> {
+    private static final long serialVersionUID = 1L;
+    
+    private final DCEntity ent;
+    private final long     trials;
+    private final long     seed;
+    private final long     from;
+    private final long     to;
+    
+    Chunks(DCEntity ent, long trials, long seed, long from, long to) {
+      this.ent = ent;
+      this.trials = trials;
+      this.seed = seed;
+      this.from = from;
+      this.to = to;
+    }
+    
+    @Override
+    protected Tally compute() {
+      if (to - from > 1) {
+        long mid = (from + to) >>> 1;
+        Chunks left = new Chunks(ent, trials, seed, from, mid);
+        left.fork();
+        Tally right = new Chunks(ent, trials, seed, mid, to).compute();
+        return left.join().merge(right);
+      }
+      
+      long start = from * CHUNK_SIZE;
+      long end = Math.min(trials, start + CHUNK_SIZE);
+      Tally tally = new Tally();
+      
+      // The thread may be the caller's, or in the middle of something
+      // else, so leave its random and history as they were.
+      Random oldRandom = Randomizer.get();
+      boolean oldRecording = FunctionHistory.setRecording(false);
+      Randomizer.set(new Random(mix(seed, from)));
+      
+      // A trial that fails inside a function leaves its parameters on
+      // the stack, so they're removed before the next one.
+      int depth = Functions.getParamsDepth();
+      try {
+        for (long i = start; i < end; i++) {
+          try {
+            tally.add(ent.evaluateDouble());
+          } catch (RuntimeException ex) {
+            Functions.unstackParams(depth);
+            tally.errors++;
+          }
+        }
+      } finally {
+        Randomizer.set(oldRandom);
+        FunctionHistory.setRecording(oldRecording);
+      }
+      
+      return tally;
+    }
+  }
+}
@@ -6,12 +6,14 @@ import net.nixill.NixMath;
 import net.nixill.dice.exception.DiceCalcException;
 import net.nixill.dice.objects.DCDie;
 import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCNumericList;
 import net.nixill.dice.objects.DCValue;
 import net.nixill.dice.operations.BinaryOperator;
 import net.nixill.dice.operations.ComparisonOperators;
 import net.nixill.dice.operations.ComparisonOperators.Comparison;
 import net.nixill.dice.operations.PrefixOperator;
 import net.nixill.dice.operations.Functions;
+import net.nixill.dice.operations.Operator.OperandOrder;
 
 /**
  * Implementation of the default operators for rolling dice.
@@ -31,24 +33,34 @@ public class DiceOperators {
         double sides = Math
             .floor(right.getValue().getSingle().getAmount());
         
-        if (count < 1) {
-          throw new DiceCalcException(new IllegalArgumentException(
-              "You must roll at least one die."));
-        }
-        
-        if (sides < 1) {
-          throw new DiceCalcException(new IllegalArgumentException(
-              "Dice must have at least one side."));
-        }
-        
-        ArrayList<DCValue> out = new ArrayList<>();
-        for (int i = 0; i < count; i++) {
-          out.add(new DCDie(sides));
-        }
+        checkDice(count, sides);
         
-        return new DCList(out);
+        return DCNumericList.roll((int) count, sides);
       });
   
+  /**
+   * Checks that the (already rounded down) operands of {@link #DICE} can
+   * be rolled.
+   * 
+   * @param count
+   *   The number of dice.
+   * @param sides
+   *   The number of sides on each die.
+   * @throws DiceCalcException
+   *   If there are no dice, or the dice have no sides.
+   */
+  public static void checkDice(double count, double sides) {
+    if (count < 1) {
+      throw new DiceCalcException(new IllegalArgumentException(
+          "You must roll at least one die."));
+    }
+    
+    if (sides < 1) {
+      throw new DiceCalcException(new IllegalArgumentException(
+          "Dice must have at least one side."));
+    }
+  }
+  
   /**
    * The prefix "d" operator, which rolls a single die.
    * <ul>
@@ -175,4 +187,33 @@ public class DiceOperators {
         
         return new DCList(out);
       });
+  
+  // Rolled dice can be added up as they're rolled, without keeping them.
+  static {
+    DICE.setDoubleFunction((left, right) -> {
+      double count = Math.floor(left.evaluateDouble());
+      double sides = Math.floor(right.evaluateDouble());
+      
+      checkDice(count, sides);
+      
+      return DCNumericList.rollSum((int) count, sides);
+    });
+    
+    ONE_DIE.setDoubleFunction((ent) -> {
+      double sides = Math.floor(ent.evaluateDouble());
+      
+      if (sides < 1) {
+        throw new DiceCalcException(new IllegalArgumentException(
+            "Dice must have at least one side."));
+      }
+      
+      return DCNumericList.rollSum(1, sides);
+    });
+  }
+  
+  static {
+    DICE.setOperandOrder(OperandOrder.LEFT_FIRST);
+    ONE_DIE.setOperandOrder(OperandOrder.LEFT_FIRST);
+    ROLL_UNTIL.setOperandOrder(OperandOrder.LEFT_FIRST);
+  }
 }
\ No newline at end of file
@@ -3,16 +3,20 @@ package net.nixill.dice.defaults.operations;
 import java.util.ArrayList;
 import java.util.Random;
 
+import net.nixill.dice.exception.DiceCalcException;
+import net.nixill.dice.exception.EvaluationLimitException;
 import net.nixill.dice.objects.DCCoin;
 import net.nixill.dice.objects.DCEntity;
 import net.nixill.dice.objects.DCList;
 import net.nixill.dice.objects.DCListExpression;
 import net.nixill.dice.objects.DCNumber;
+import net.nixill.dice.objects.DCNumericList;
 import net.nixill.dice.objects.DCSingle;
 import net.nixill.dice.objects.DCString;
 import net.nixill.dice.objects.DCValue;
 import net.nixill.dice.objects.Randomizer;
 import net.nixill.dice.operations.BinaryOperator;
+import net.nixill.dice.operations.Operator.OperandOrder;
 import net.nixill.dice.operations.PostfixOperator;
 import net.nixill.dice.operations.PrefixOperator;
 
@@ -42,6 +46,11 @@ public class ListOperators {
       return new DCString(
           left.getString().toString() + right.getString().toString());
     } else if (left instanceof DCList || right instanceof DCList) {
+      if (DCNumericList.isNumeric(left)
+          && DCNumericList.isNumeric(right)) {
+        return DCNumericList.join(left, right);
+      }
+      
       ArrayList<DCValue> out = left.getList().getItems();
       out.addAll(right.getList().getItems());
       return new DCList(out);
@@ -68,6 +77,8 @@ public class ListOperators {
     
     if (val instanceof DCSingle) {
       return new DCNumber(-val.getSingle().getAmount());
+    } else if (val instanceof DCNumericList) {
+      return ((DCNumericList) val).negate();
     }
     
     ArrayList<DCValue> in = val.getList().getItems();
@@ -120,7 +131,7 @@ public class ListOperators {
         if (val instanceof DCSingle) {
           return new DCNumber(1);
         } else {
-          return new DCNumber(val.getList().getItems().size());
+          return new DCNumber(val.getList().size());
         }
       });
   
@@ -182,26 +193,141 @@ public class ListOperators {
   public static final BinaryOperator<DCValue> SELECT = new BinaryOperator<DCValue>(
       "s", Priorities.LIST, 2, (left, right) -> {
         DCValue val = right.getValue();
-        int selection = 0;
         
-        if (val instanceof DCCoin) {
-          if (((DCCoin) val).isHeads()) {
-            selection = 1;
-          }
+        DCEntity item = selectItem(left, val);
+        if (item != null) {
+          return item.getValue();
         } else {
-          selection = (int) Math.floor(val.getSingle().getAmount()) - 1;
+          DCList list = left.getValue().getList();
+          int selection = Math.min(selection(val), list.size() - 1);
+          return list.get(selection);
         }
+      });
+  
+  /**
+   * Chooses the item {@link #SELECT} evaluates from an unevaluated list,
+   * without evaluating anything.
+   * 
+   * @param left
+   *   The left operand of the selection.
+   * @param val
+   *   The value of the right operand of the selection.
+   * @return The selected item, or <code>null</code> if <code>left</code>
+   *   isn't a {@link DCListExpression}, and has to be evaluated first.
+   */
+  public static DCEntity selectItem(DCEntity left, DCValue val) {
+    if (left instanceof DCListExpression) {
+      DCListExpression exp = (DCListExpression) left;
+      return exp.get(Math.min(selection(val), exp.size() - 1));
+    } else {
+      return null;
+    }
+  }
+  
+  private static int selection(DCValue val) {
+    int selection = 0;
+    
+    if (val instanceof DCCoin) {
+      if (((DCCoin) val).isHeads()) {
+        selection = 1;
+      }
+    } else {
+      selection = (int) Math.floor(val.getSingle().getAmount()) - 1;
+    }
+    
+    return Math.max(0, selection);
+  }
+  
+  /**
+   * The most times {@link #REPEAT} evaluates its body if it hasn't been
+   * set, which is 1,000.
+   */
+  public static final int DEFAULT_MAX_REPEATS = 1000;
+  
+  private static volatile int maxRepeats = DEFAULT_MAX_REPEATS;
+  
+  /**
+   * The binary "x" operator, which evaluates an expression a number of
+   * times, and lists the results.
+   * <p>
+   * The expression is only read once, so <code>6x(4d6)</code> rolls the
+   * same as <code>[4d6,4d6,4d6,4d6,4d6,4d6]</code>.
+   * <ul>
+   * <li><code>left</code> operand - number: How many times to evaluate the
+   * expression, which is rounded down.</li>
+   * <li><code>right</code> operand - expression: The expression to
+   * evaluate.</li>
+   * <li>return - list: The value of each evaluation, in order.</li>
+   * </ul>
+   */
+  public static final BinaryOperator<DCList> REPEAT = new BinaryOperator<>(
+      "x", Priorities.REPEAT, 2, (left, right) -> {
+        double amount = Math.floor(left.getValue().getSingle().getAmount());
+        int max = maxRepeats;
         
-        selection = Math.max(0, selection);
+        if (amount < 0) {
+          throw new DiceCalcException(new IllegalArgumentException(
+              "Can't repeat an expression a negative number of times."));
+        } else if (amount > max) {
+          throw new EvaluationLimitException(
+              "Can't repeat an expression more than " + max + " times.");
+        }
         
-        if (left instanceof DCListExpression) {
-          DCListExpression exp = (DCListExpression) left;
-          selection = Math.min(selection, exp.size() - 1);
-          return exp.get(selection).getValue();
-        } else {
-          DCList list = left.getValue().getList();
-          selection = Math.min(selection, list.size() - 1);
-          return list.get(selection);
+        int count = (int) amount;
+        ArrayList<DCValue> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          out.add(right.getValue());
         }
+        
+        return new DCList(out);
       });
-}
+  
+  /**
+   * Returns the most times {@link #REPEAT} can evaluate its body.
+   * 
+   * @return The limit.
+   */
+  public static int getMaxRepeats() {
+    return maxRepeats;
+  }
+  
+  /**
+   * Sets the most times {@link #REPEAT} can evaluate its body. Asking for
+   * more stops the evaluation with an {@link EvaluationLimitException}.
+   * 
+   * @param repeats
+   *   The limit.
+   */
+  public static void setMaxRepeats(int repeats) {
+    maxRepeats = Math.max(0, repeats);
+  }
+  
+  static {
+    SUM.setDoubleFunction(DCEntity::evaluateDouble);
+  }
+  
+  // Shuffling is the only one of these that's random.
+  static {
+    JOIN.setPure(true);
+    NEGATIVE.setPure(true);
+    NEG_JOIN.setPure(true);
+    SIZE.setPure(true);
+    SUM.setPure(true);
+    SELECT.setPure(true);
+    REPEAT.setPure(true);
+  }
+  
+  // "s" only evaluates the selected item of an unevaluated list, after
+  // evaluating the selection. "x" has no order, since it evaluates its
+  // body more than once.
+  static {
+    JOIN.setOperandOrder(OperandOrder.LEFT_FIRST);
+    NEGATIVE.setOperandOrder(OperandOrder.LEFT_FIRST);
+    NEG_JOIN.setOperandOrder(OperandOrder.RIGHT_FIRST);
+    SIZE.setOperandOrder(OperandOrder.LEFT_FIRST);
+    SUM.setOperandOrder(OperandOrder.LEFT_FIRST);
+    SHUFFLE.setOperandOrder(OperandOrder.LEFT_FIRST);
+    SELECT.setOperandOrder(OperandOrder.RIGHT_FIRST);
+    SELECT.setChoiceFunction(ListOperators::selectItem);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+package net.nixill.dice.defaults.operations;
+
+import java.util.ArrayList;
+
+import net.nixill.dice.objects.DCCoin;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.BinaryOperator;
+import net.nixill.dice.operations.ComparisonOperators;
+import net.nixill.dice.operations.Operator.OperandOrder;
+
+/**
+ * Implementation of the default operators for comparing values and
+ * choosing between them.
+ */
+public class LogicOperators {
+  /**
+   * The set of comparison-based "c" operators, which compare two numbers.
+   * <ul>
+   * <li>left operand - number: The number to compare.</li>
+   * <li>right operand - number: The number to compare it to.</li>
+   * <li>Returns - coin: Heads (worth 1) if the comparison holds, or Tails
+   * if it doesn't.</li>
+   * </ul>
+   */
+  public static final ComparisonOperators<DCCoin> COMPARE = new ComparisonOperators<>(
+      "c", Priorities.COMPARE, 2, (left, comp, right) -> {
+        double lAmt = left.getValue().getSingle().getAmount();
+        double rAmt = right.getValue().getSingle().getAmount();
+        
+        return new DCCoin(1, comp.compares(lAmt, rAmt));
+      });
+  
+  /**
+   * The binary "?" operator, which evaluates one of two items of a list,
+   * depending on a condition.
+   * <p>
+   * Only the chosen item is evaluated, so it can be used to end a
+   * recursive function without building a list to select from. The
+   * condition holds if it's Heads, or any other value whose amount isn't
+   * 0; it's usually a "c" comparison. A condition that starts with a
+   * prefix operator should be put in brackets, since a "?" right after a
+   * value is read as the postfix one if it can be.
+   * <ul>
+   * <li><code>left</code> operand - expression list: The item to evaluate
+   * if the condition holds, and optionally the item to evaluate if it
+   * doesn't.</li>
+   * <li><code>right</code> operand - value: The condition.</li>
+   * <li>return - expression: The chosen item, or an empty list if the
+   * condition doesn't hold and there's no second item.</li>
+   * </ul>
+   */
+  public static final BinaryOperator<DCValue> CONDITION = new BinaryOperator<DCValue>(
+      "?", Priorities.CONDITION, 2, (left, right) -> {
+        boolean holds = holds(right.getValue());
+        
+        DCEntity item = chooseItem(left, holds);
+        if (item != null) {
+          return item.getValue();
+        }
+        
+        DCList list = left.getValue().getList();
+        int index = holds ? 0 : 1;
+        if (index < list.size()) {
+          return list.get(index);
+        } else {
+          return new DCList(new ArrayList<>());
+        }
+      });
+  
+  /**
+   * Returns whether a condition of {@link #CONDITION "?"} holds.
+   * 
+   * @param val
+   *   The value of the condition.
+   * @return <code>true</code> iff it's Heads, or it isn't a coin and its
+   *   amount isn't 0.
+   */
+  public static boolean holds(DCValue val) {
+    if (val instanceof DCCoin) {
+      return ((DCCoin) val).isHeads();
+    }
+    return val.getSingle().getAmount() != 0;
+  }
+  
+  /**
+   * Chooses the item {@link #CONDITION} evaluates from an unevaluated
+   * list, without evaluating anything.
+   * 
+   * @param left
+   *   The left operand of the condition.
+   * @param val
+   *   The value of the right operand of the condition.
+   * @return The chosen item, an empty list if there isn't one, or
+   *   <code>null</code> if <code>left</code> isn't a
+   *   {@link DCListExpression}, and has to be evaluated first.
+   */
+  public static DCEntity chooseItem(DCEntity left, DCValue val) {
+    return chooseItem(left, holds(val));
+  }
+  
+  private static DCEntity chooseItem(DCEntity left, boolean holds) {
+    if (left instanceof DCListExpression) {
+      DCListExpression exp = (DCListExpression) left;
+      int index = holds ? 0 : 1;
+      if (index < exp.size()) {
+        return exp.get(index);
+      } else {
+        return new DCListExpression(new ArrayList<>());
+      }
+    }
+    return null;
+  }
+  
+  static {
+    COMPARE.setPure(true);
+    CONDITION.setPure(true);
+  }
+  
+  // "?" only evaluates the chosen item of an unevaluated list, after
+  // evaluating the condition.
+  static {
+    COMPARE.setOperandOrder(OperandOrder.LEFT_FIRST);
+    CONDITION.setOperandOrder(OperandOrder.RIGHT_FIRST);
+    CONDITION.setChoiceFunction(LogicOperators::chooseItem);
+  }
+}
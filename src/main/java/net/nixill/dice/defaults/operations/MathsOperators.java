@@ -6,6 +6,7 @@ import net.nixill.dice.objects.DCList;
 import net.nixill.dice.objects.DCNumber;
 import net.nixill.dice.objects.DCValue;
 import net.nixill.dice.operations.BinaryOperator;
+import net.nixill.dice.operations.Operator.OperandOrder;
 import net.nixill.dice.operations.PostfixOperator;
 
 /**
@@ -147,4 +148,40 @@ public class MathsOperators {
         
         return new DCList(out);
       });
+  
+  // The amounts of these operators' results can be worked out without
+  // creating any values.
+  static {
+    TIMES.setDoubleFunction(
+        (left, right) -> left.evaluateDouble() * right.evaluateDouble());
+    DIVIDE.setDoubleFunction(
+        (left, right) -> left.evaluateDouble() / right.evaluateDouble());
+    POWER.setDoubleFunction((left, right) -> Math
+        .pow(left.evaluateDouble(), right.evaluateDouble()));
+    FACTORIAL.setDoubleFunction((num) -> factorial(num.evaluateDouble()));
+    INT_DIVIDE.setDoubleFunction((left, right) -> Math
+        .floor(left.evaluateDouble() / right.evaluateDouble()));
+    MODULO.setDoubleFunction(
+        (left, right) -> left.evaluateDouble() % right.evaluateDouble());
+  }
+  
+  static {
+    TIMES.setPure(true);
+    DIVIDE.setPure(true);
+    POWER.setPure(true);
+    FACTORIAL.setPure(true);
+    INT_DIVIDE.setPure(true);
+    MODULO.setPure(true);
+    DUO_DIVIDE.setPure(true);
+  }
+  
+  static {
+    TIMES.setOperandOrder(OperandOrder.LEFT_FIRST);
+    DIVIDE.setOperandOrder(OperandOrder.LEFT_FIRST);
+    POWER.setOperandOrder(OperandOrder.LEFT_FIRST);
+    FACTORIAL.setOperandOrder(OperandOrder.LEFT_FIRST);
+    INT_DIVIDE.setOperandOrder(OperandOrder.LEFT_FIRST);
+    MODULO.setOperandOrder(OperandOrder.LEFT_FIRST);
+    DUO_DIVIDE.setOperandOrder(OperandOrder.LEFT_FIRST);
+  }
 }
\ No newline at end of file
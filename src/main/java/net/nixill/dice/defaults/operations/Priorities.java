@@ -23,11 +23,26 @@ public final class Priorities {
    */
   public static final int DICE = JOIN + 50;
   
+  /**
+   * The priority of "x", which is 45.
+   */
+  public static final int REPEAT = DICE - 5;
+  
   /**
    * The priority of prefix "#" and "$", which is -5.
    */
   public static final int LIST = JOIN - 5;
   
+  /**
+   * The priority of the "c" comparisons, which is -2.
+   */
+  public static final int COMPARE = JOIN - 2;
+  
+  /**
+   * The priority of binary "?", which is -10.
+   */
+  public static final int CONDITION = JOIN - 10;
+  
   /**
    * The priority of unary "-", which is 5.
    */
@@ -0,0 +1,258 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.Operator;
+
+/**
+ * Works out the constant parts of a parsed {@link DCEntity} tree ahead of
+ * time.
+ * <p>
+ * An operation is constant if its operator is {@link Operator#isPure()
+ * pure} and its operands are constant too: literal values, lists of
+ * constants, and other constant operations. Function calls never are,
+ * since what they do can change, but their parameters are folded.
+ * Each constant operation is evaluated once, here, and replaced by a node
+ * that returns the result.
+ * <p>
+ * A folded tree renders the same as the original with
+ * {@link DCEntity#toCode()}, {@link DCEntity#toString(int)} and
+ * {@link DCEntity#printTree(int)}, and gives the same values. While
+ * {@link FunctionHistory} is recording, a folded operation also adds the
+ * same history entries as the original, in the same order, so only
+ * evaluations with recording switched off skip the work entirely.
+ * Operations that fail are left alone, so that they fail when they're
+ * evaluated, as before.
+ */
+public class ConstantFolder {
+  private ConstantFolder() {
+  }
+  
+  /**
+   * Folds a tree.
+   * 
+   * @param ent
+   *   The root of the tree to fold.
+   * @return The root of the folded tree, which may be the same as the
+   *   original if nothing could be folded.
+   */
+  public static DCEntity fold(DCEntity ent) {
+    // Working out the constants mustn't show up in the history.
+    boolean old = FunctionHistory.setRecording(false);
+    try {
+      return foldEntity(ent);
+    } finally {
+      FunctionHistory.setRecording(old);
+    }
+  }
+  
+  /**
+   * Returns whether an entity of a folded tree is constant.
+   * 
+   * @param ent
+   *   The entity.
+   * @return true iff it always has the same value.
+   */
+  public static boolean isConstant(DCEntity ent) {
+    if (ent instanceof DCValue || ent instanceof ConstantNode) {
+      return true;
+    } else if (ent instanceof DCListExpression) {
+      for (DCEntity item : ((DCListExpression) ent).getItems()) {
+        if (!isConstant(item)) {
+          return false;
+        }
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+  
+  private static DCEntity foldEntity(DCEntity ent) {
+    if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      Operator oper = op.getOperator();
+      DCEntity left = foldEntity(op.getLeft());
+      DCEntity right = foldEntity(op.getRight());
+      
+      if (oper.isPure() && (left == null || isConstant(left))
+          && (right == null || isConstant(right))) {
+        DCEntity folded = evaluate(op, left, right);
+        if (folded != null) {
+          return folded;
+        }
+      }
+      
+      if (left == op.getLeft() && right == op.getRight()) {
+        return op;
+      }
+      return new DCOperation(left, oper, right);
+    } else if (ent instanceof DCListExpression) {
+      // Lists stay lists, so that operators which look into unevaluated
+      // lists (like "s") still can.
+      List<DCEntity> items = ((DCListExpression) ent).getItems();
+      if (foldAll(items)) {
+        return new DCListExpression(items);
+      }
+      return ent;
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      List<DCEntity> params = new ArrayList<>(func.getParams());
+      if (foldAll(params)) {
+        return new DCFunction(func.getName(), params);
+      }
+      return ent;
+    } else {
+      return ent;
+    }
+  }
+  
+  /**
+   * Folds each entity of a list in place.
+   * 
+   * @return Whether any of them changed.
+   */
+  private static boolean foldAll(List<DCEntity> ents) {
+    boolean changed = false;
+    for (int i = 0; i < ents.size(); i++) {
+      DCEntity folded = foldEntity(ents.get(i));
+      if (folded != ents.get(i)) {
+        ents.set(i, folded);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+  
+  /**
+   * Evaluates a constant operation.
+   * 
+   * @return The folded operation, or <code>null</code> if it failed.
+   */
+  private static ConstantNode evaluate(DCOperation source, DCEntity left,
+      DCEntity right) {
+    ArrayList<DCEntity> evaluated = new ArrayList<>();
+    DCOperation op = new DCOperation(probe(left, evaluated),
+        source.getOperator(), probe(right, evaluated));
+    
+    try {
+      return new ConstantNode(source, op.getValue(), evaluated);
+    } catch (RuntimeException ex) {
+      return null;
+    }
+  }
+  
+  /**
+   * Wraps the folded operations in an operand so that it's noted when
+   * they're evaluated. Lists are copied rather than wrapped, so that
+   * operators can still look into them.
+   */
+  private static DCEntity probe(DCEntity ent, List<DCEntity> evaluated) {
+    if (ent instanceof ConstantNode) {
+      return new Probe(ent, evaluated);
+    } else if (ent instanceof DCListExpression) {
+      ArrayList<DCEntity> items = new ArrayList<>();
+      for (DCEntity item : ((DCListExpression) ent).getItems()) {
+        items.add(probe(item, evaluated));
+      }
+      return new DCListExpression(items);
+    } else {
+      return ent;
+    }
+  }
+  
+  /**
+   * A folded operation.
+   */
+  private static class ConstantNode extends DCExpression {
+    private final DCOperation    source;
+    private final DCValue        value;
+    private final int            level;
+    private final List<DCEntity> evaluated;
+    private String               code;
+    
+    /**
+     * @param evaluated
+     *   The folded operations within this one, in the order the original
+     *   evaluated them.
+     */
+    private ConstantNode(DCOperation source, DCValue value,
+        List<DCEntity> evaluated) {
+      this.source = source;
+      this.value = value;
+      this.level = source.getOperator().getLevel();
+      this.evaluated = evaluated;
+    }
+    
+    @Override
+    public DCValue getValue() {
+      if (FunctionHistory.isRecording()) {
+        for (DCEntity ent : evaluated) {
+          ent.getValue();
+        }
+        DCOperation.recordHistory(this, level, value);
+      }
+      return value;
+    }
+    
+    @Override
+    public String toString(int level) {
+      return source.toString(level);
+    }
+    
+    @Override
+    public String toCode() {
+      if (code == null) {
+        code = source.toCode();
+      }
+      return code;
+    }
+    
+    @Override
+    public void printTree(int level) {
+      source.printTree(level);
+    }
+  }
+  
+  /**
+   * Notes when a folded operation is evaluated while folding another.
+   */
+  private static class Probe extends DCExpression {
+    private final DCEntity       target;
+    private final List<DCEntity> evaluated;
+    
+    private Probe(DCEntity target, List<DCEntity> evaluated) {
+      this.target = target;
+      this.evaluated = evaluated;
+    }
+    
+    @Override
+    public DCValue getValue() {
+      evaluated.add(target);
+      return target.getValue();
+    }
+    
+    @Override
+    public String toString(int level) {
+      return target.toString(level);
+    }
+    
+    @Override
+    public String toCode() {
+      return target.toCode();
+    }
+    
+    @Override
+    public void printTree(int level) {
+      target.printTree(level);
+    }
+  }
+}
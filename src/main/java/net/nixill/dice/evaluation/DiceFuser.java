@@ -0,0 +1,241 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.nixill.dice.defaults.operations.DiceOperators;
+import net.nixill.dice.defaults.operations.ListOperators;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCNumber;
+import net.nixill.dice.objects.DCNumericList;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.Operator;
+
+/**
+ * Replaces common operations on rolled dice with nodes that do both steps
+ * at once.
+ * <p>
+ * These shapes are recognized, where <code>NdS</code> is the binary
+ * {@link DiceOperators#DICE "d"} operator:
+ * <ul>
+ * <li><code>$NdS</code>, which adds the dice up as they're rolled,
+ * without keeping them.</li>
+ * <li><code>#NdS</code>, which rolls the dice without keeping them.</li>
+ * <li><code>-NdS</code>, which makes the dice negative as they're
+ * rolled.</li>
+ * <li><code>NdS+K</code>, where <code>K</code> is a literal number, which
+ * rolls the dice straight into a list with room for <code>K</code>.</li>
+ * </ul>
+ * <p>
+ * A fused node rolls the same dice, in the same order, and gives the same
+ * value as the operations it replaces, and renders the same. The
+ * intermediate list of dice is part of the history, though, so while
+ * {@link FunctionHistory} is recording, a fused node evaluates the
+ * original operations instead.
+ * <p>
+ * This works on parsed (or {@link ConstantFolder folded}) trees, and
+ * should be done before {@link ExpressionCompiler compiling} them.
+ */
+public class DiceFuser {
+  private DiceFuser() {
+  }
+  
+  /**
+   * Fuses the operations in a tree.
+   * 
+   * @param ent
+   *   The root of the tree.
+   * @return The root of the fused tree, which may be the same as the
+   *   original if nothing was fused.
+   */
+  public static DCEntity fuse(DCEntity ent) {
+    if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      Operator oper = op.getOperator();
+      DCEntity left = fuse(op.getLeft());
+      DCEntity right = fuse(op.getRight());
+      
+      if (left != op.getLeft() || right != op.getRight()) {
+        op = new DCOperation(left, oper, right);
+      }
+      
+      if (oper == ListOperators.SUM && isDice(right)) {
+        return new SumNode(op);
+      } else if (oper == ListOperators.SIZE && isDice(right)) {
+        return new SizeNode(op);
+      } else if (oper == ListOperators.NEGATIVE && isDice(right)) {
+        return new NegativeNode(op);
+      } else if (oper == ListOperators.JOIN && isDice(left)
+          && right instanceof DCNumber) {
+        return new JoinNode(op);
+      }
+      
+      return op;
+    } else if (ent instanceof DCListExpression) {
+      List<DCEntity> items = ((DCListExpression) ent).getItems();
+      if (fuseAll(items)) {
+        return new DCListExpression(items);
+      }
+      return ent;
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      List<DCEntity> params = new ArrayList<>(func.getParams());
+      if (fuseAll(params)) {
+        return new DCFunction(func.getName(), params);
+      }
+      return ent;
+    } else {
+      return ent;
+    }
+  }
+  
+  /**
+   * Fuses each entity of a list in place.
+   * 
+   * @return Whether any of them changed.
+   */
+  private static boolean fuseAll(List<DCEntity> ents) {
+    boolean changed = false;
+    for (int i = 0; i < ents.size(); i++) {
+      DCEntity fused = fuse(ents.get(i));
+      if (fused != ents.get(i)) {
+        ents.set(i, fused);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+  
+  private static boolean isDice(DCEntity ent) {
+    return ent instanceof DCOperation
+        && ((DCOperation) ent).getOperator() == DiceOperators.DICE;
+  }
+  
+  /**
+   * The common parts of fused nodes: the dice operation, rendering as
+   * the original operation, and falling back to it while history is
+   * being recorded.
+   */
+  private static abstract class FusedNode extends DCExpression {
+    protected final DCOperation source;
+    private final DCEntity      count;
+    private final DCEntity      sides;
+    private String              code;
+    
+    protected FusedNode(DCOperation source, DCOperation dice) {
+      this.source = source;
+      this.count = dice.getLeft();
+      this.sides = dice.getRight();
+    }
+    
+    @Override
+    public DCValue getValue() {
+      if (FunctionHistory.isRecording()) {
+        return source.getValue();
+      }
+      
+      double count = Math
+          .floor(this.count.getValue().getSingle().getAmount());
+      double sides = Math
+          .floor(this.sides.getValue().getSingle().getAmount());
+      
+      DiceOperators.checkDice(count, sides);
+      
+      return roll((int) count, sides);
+    }
+    
+    /**
+     * Rolls the dice and does the rest of the operation.
+     * 
+     * @param count
+     *   The number of dice, which is at least 1.
+     * @param sides
+     *   The number of sides, which is at least 1.
+     * @return The value of the operation.
+     */
+    protected abstract DCValue roll(int count, double sides);
+    
+    @Override
+    public String toString(int level) {
+      return source.toString(level);
+    }
+    
+    @Override
+    public String toCode() {
+      if (code == null) {
+        code = source.toCode();
+      }
+      return code;
+    }
+    
+    @Override
+    public void printTree(int level) {
+      source.printTree(level);
+    }
+  }
+  
+  /**
+   * <code>$NdS</code>.
+   */
+  private static class SumNode extends FusedNode {
+    private SumNode(DCOperation source) {
+      super(source, (DCOperation) source.getRight());
+    }
+    
+    @Override
+    protected DCValue roll(int count, double sides) {
+      return new DCNumber(DCNumericList.rollSum(count, sides));
+    }
+  }
+  
+  /**
+   * <code>#NdS</code>.
+   */
+  private static class SizeNode extends FusedNode {
+    private SizeNode(DCOperation source) {
+      super(source, (DCOperation) source.getRight());
+    }
+    
+    @Override
+    protected DCValue roll(int count, double sides) {
+      DCNumericList.rollSum(count, sides);
+      return new DCNumber(count);
+    }
+  }
+  
+  /**
+   * <code>-NdS</code>.
+   */
+  private static class NegativeNode extends FusedNode {
+    private NegativeNode(DCOperation source) {
+      super(source, (DCOperation) source.getRight());
+    }
+    
+    @Override
+    protected DCValue roll(int count, double sides) {
+      return DCNumericList.rollNegative(count, sides);
+    }
+  }
+  
+  /**
+   * <code>NdS+K</code>.
+   */
+  private static class JoinNode extends FusedNode {
+    private final DCNumber number;
+    
+    private JoinNode(DCOperation source) {
+      super(source, (DCOperation) source.getLeft());
+      this.number = (DCNumber) source.getRight();
+    }
+    
+    @Override
+    protected DCValue roll(int count, double sides) {
+      return DCNumericList.rollJoin(count, sides, number);
+    }
+  }
+}
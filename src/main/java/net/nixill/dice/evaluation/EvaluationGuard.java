@@ -0,0 +1,40 @@
+package net.nixill.dice.evaluation;
+
+import java.util.function.Supplier;
+
+import net.nixill.dice.exception.EvaluationLimitException;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.Functions;
+
+/**
+ * Runs an evaluation so that running out of the thread's stack is
+ * reported as an {@link EvaluationLimitException}, and any function
+ * parameters left on the stack by a failed evaluation are removed.
+ */
+final class EvaluationGuard {
+  private EvaluationGuard() {
+  }
+  
+  /**
+   * Runs an evaluation.
+   * 
+   * @param evaluation
+   *   The evaluation.
+   * @return Its value.
+   * @throws EvaluationLimitException
+   *   If it ran out of stack.
+   */
+  static DCValue evaluate(Supplier<DCValue> evaluation) {
+    int depth = Functions.getParamsDepth();
+    try {
+      return evaluation.get();
+    } catch (StackOverflowError err) {
+      Functions.unstackParams(depth);
+      throw new EvaluationLimitException(
+          "The expression is too deeply nested to evaluate.");
+    } catch (RuntimeException ex) {
+      Functions.unstackParams(depth);
+      throw ex;
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package net.nixill.dice.evaluation;
+
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCValue;
+
+/**
+ * A way of working out the value of a {@link DCEntity} tree.
+ * <p>
+ * Every evaluator gives the same value as {@link DCEntity#getValue()},
+ * rolling the same dice in the same order and adding the same history.
+ * They differ in how they get there: the {@link RecursiveEvaluator} just
+ * calls <code>getValue()</code>, and the {@link IterativeEvaluator} keeps
+ * its own stack, so that deep trees and deeply recursive functions don't
+ * use up the thread's.
+ */
+public interface Evaluator {
+  /**
+   * Evaluates an entity.
+   * 
+   * @param ent
+   *   The entity to evaluate.
+   * @return Its value.
+   * @throws net.nixill.dice.exception.EvaluationLimitException
+   *   If the evaluation went too deep.
+   */
+  public DCValue evaluate(DCEntity ent);
+}
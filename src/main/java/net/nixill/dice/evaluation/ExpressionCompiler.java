@@ -0,0 +1,182 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.BinaryOperator;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.Operator;
+import net.nixill.dice.operations.PostfixOperator;
+import net.nixill.dice.operations.PrefixOperator;
+import net.nixill.dice.operations.UnaryOperator;
+
+/**
+ * Turns a parsed {@link DCEntity} tree into a tree of evaluators that can
+ * be run over and over.
+ * <p>
+ * Every {@link DCOperation} is replaced by a node specialized for its
+ * kind of operator, with the {@link Operator} itself resolved once, here,
+ * instead of being looked up by type on every evaluation. Lists and
+ * function calls keep their own classes, but with compiled children.
+ * <p>
+ * A compiled tree evaluates exactly like the original one: the operators
+ * are run in the same order, so given the same
+ * {@link net.nixill.dice.objects.Randomizer Randomizer} seed, it produces
+ * the same values and the same history. It also renders the same with
+ * {@link DCEntity#toCode()}, {@link DCEntity#toString(int)} and
+ * {@link DCEntity#printTree(int)}. Compiled operations also support
+ * {@link DCEntity#evaluateDouble()} in the same way as the original
+ * ones.
+ */
+public class ExpressionCompiler {
+  private ExpressionCompiler() {
+  }
+  
+  /**
+   * Compiles a tree.
+   * 
+   * @param ent
+   *   The root of the tree to compile.
+   * @return The root of the compiled tree.
+   */
+  public static DCEntity compile(DCEntity ent) {
+    if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      Operator oper = op.getOperator();
+      
+      if (oper instanceof BinaryOperator) {
+        return new BinaryNode(op, (BinaryOperator<?>) oper,
+            compile(op.getLeft()), compile(op.getRight()));
+      } else if (oper instanceof PrefixOperator) {
+        return new UnaryNode(op, (UnaryOperator<?>) oper,
+            compile(op.getRight()));
+      } else if (oper instanceof PostfixOperator) {
+        return new UnaryNode(op, (UnaryOperator<?>) oper,
+            compile(op.getLeft()));
+      } else {
+        return ent;
+      }
+    } else if (ent instanceof DCListExpression) {
+      // Lists stay lists, so that operators which look into unevaluated
+      // lists (like "s") still can.
+      ArrayList<DCEntity> items = new ArrayList<>();
+      for (DCEntity item : ((DCListExpression) ent).getItems()) {
+        items.add(compile(item));
+      }
+      return new DCListExpression(items);
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      ArrayList<DCEntity> params = new ArrayList<>();
+      for (DCEntity param : func.getParams()) {
+        params.add(compile(param));
+      }
+      return new DCFunction(func.getName(), params);
+    } else {
+      return ent;
+    }
+  }
+  
+  /**
+   * The common parts of compiled operations: rendering as the original
+   * operation, and recording history like it.
+   */
+  private static abstract class OperationNode extends DCExpression {
+    protected final DCOperation source;
+    private final int           level;
+    private String              code;
+    
+    protected OperationNode(DCOperation source) {
+      this.source = source;
+      this.level = source.getOperator().getLevel();
+    }
+    
+    protected DCValue record(DCValue val) {
+      DCOperation.recordHistory(this, level, val);
+      return val;
+    }
+    
+    @Override
+    public String toString(int level) {
+      return source.toString(level);
+    }
+    
+    @Override
+    public String toCode() {
+      // The code of an operation never changes, so it only needs to be
+      // worked out once.
+      if (code == null) {
+        code = source.toCode();
+      }
+      return code;
+    }
+    
+    @Override
+    public void printTree(int level) {
+      source.printTree(level);
+    }
+  }
+  
+  /**
+   * A compiled operation with a {@link BinaryOperator}.
+   */
+  private static class BinaryNode extends OperationNode {
+    private final BinaryOperator<?> oper;
+    private final DCEntity          left;
+    private final DCEntity          right;
+    
+    private BinaryNode(DCOperation source, BinaryOperator<?> oper,
+        DCEntity left, DCEntity right) {
+      super(source);
+      this.oper = oper;
+      this.left = left;
+      this.right = right;
+    }
+    
+    @Override
+    public DCValue getValue() {
+      return record(oper.run(left, right));
+    }
+    
+    @Override
+    public double evaluateDouble() {
+      if (FunctionHistory.isRecording()) {
+        return super.evaluateDouble();
+      }
+      return oper.runDouble(left, right);
+    }
+  }
+  
+  /**
+   * A compiled operation with a {@link PrefixOperator} or
+   * {@link PostfixOperator}.
+   */
+  private static class UnaryNode extends OperationNode {
+    private final UnaryOperator<?> oper;
+    private final DCEntity         operand;
+    
+    private UnaryNode(DCOperation source, UnaryOperator<?> oper,
+        DCEntity operand) {
+      super(source);
+      this.oper = oper;
+      this.operand = operand;
+    }
+    
+    @Override
+    public DCValue getValue() {
+      return record(oper.run(operand));
+    }
+    
+    @Override
+    public double evaluateDouble() {
+      if (FunctionHistory.isRecording()) {
+        return super.evaluateDouble();
+      }
+      return oper.runDouble(operand);
+    }
+  }
+}
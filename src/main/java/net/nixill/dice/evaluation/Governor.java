@@ -0,0 +1,283 @@
+package net.nixill.dice.evaluation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.nixill.dice.exception.EvaluationLimitException;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCValue;
+
+/**
+ * An {@link Evaluator} that limits how much work an evaluation may do, so
+ * that an expression like <code>99999999d99999</code>, or a function that
+ * calls itself forever, can't take over a thread or fill the heap.
+ * <p>
+ * Four things are counted during each evaluation, each with its own
+ * limit:
+ * <ul>
+ * <li>steps: operators run and functions called;</li>
+ * <li>dice rolled;</li>
+ * <li>list items made; and</li>
+ * <li>the time taken.</li>
+ * </ul>
+ * Dice and list items are counted before they're made, so an evaluation
+ * that would go over the limit stops before it takes the memory. Going
+ * over any limit, or the thread being interrupted, stops the evaluation
+ * with an {@link EvaluationLimitException}. The thread's interrupted
+ * status is left as it was.
+ * <p>
+ * The counts are kept per thread while the governor is evaluating, and
+ * {@link #step()}, {@link #roll(long)} and {@link #allocate(long)} do
+ * nothing on threads where no governor is. An evaluator that hands work
+ * to other threads should take the {@link Budget} along with
+ * {@link #getBudget()} and {@link #setBudget(Budget)}, as
+ * {@link ParallelEvaluator} does.
+ */
+public class Governor implements Evaluator {
+  /**
+   * The limit that isn't one.
+   */
+  public static final long UNLIMITED = Long.MAX_VALUE;
+  
+  private static final ThreadLocal<Budget> budgets = new ThreadLocal<>();
+  
+  private final Evaluator evaluator;
+  private final long      maxSteps;
+  private final long      maxDice;
+  private final long      maxItems;
+  private final long      maxMillis;
+  
+  /**
+   * Creates a Governor.
+   * 
+   * @param evaluator
+   *   The evaluator that does the evaluating.
+   * @param maxSteps
+   *   The most operators and function calls an evaluation may run.
+   * @param maxDice
+   *   The most dice an evaluation may roll.
+   * @param maxItems
+   *   The most list items an evaluation may make, in all its lists put
+   *   together.
+   * @param maxMillis
+   *   The longest an evaluation may take, in milliseconds.
+   */
+  public Governor(Evaluator evaluator, long maxSteps, long maxDice,
+      long maxItems, long maxMillis) {
+    this.evaluator = evaluator;
+    this.maxSteps = maxSteps;
+    this.maxDice = maxDice;
+    this.maxItems = maxItems;
+    this.maxMillis = maxMillis;
+  }
+  
+  /**
+   * Returns the most operators and function calls an evaluation may run.
+   * 
+   * @return The step limit.
+   */
+  public long getMaxSteps() {
+    return maxSteps;
+  }
+  
+  /**
+   * Returns the most dice an evaluation may roll.
+   * 
+   * @return The dice limit.
+   */
+  public long getMaxDice() {
+    return maxDice;
+  }
+  
+  /**
+   * Returns the most list items an evaluation may make.
+   * 
+   * @return The item limit.
+   */
+  public long getMaxItems() {
+    return maxItems;
+  }
+  
+  /**
+   * Returns the longest an evaluation may take, in milliseconds.
+   * 
+   * @return The time limit.
+   */
+  public long getMaxMillis() {
+    return maxMillis;
+  }
+  
+  @Override
+  public DCValue evaluate(DCEntity ent) {
+    Budget old = setBudget(new Budget(this));
+    try {
+      return evaluator.evaluate(ent);
+    } finally {
+      setBudget(old);
+    }
+  }
+  
+  /**
+   * Returns the budget of the evaluation on this thread.
+   * 
+   * @return The budget, or <code>null</code> if no governor is
+   *   evaluating.
+   */
+  public static Budget getBudget() {
+    return budgets.get();
+  }
+  
+  /**
+   * Sets the budget that this thread counts against.
+   * 
+   * @param budget
+   *   The budget, or <code>null</code> to stop counting.
+   * @return The budget it had before.
+   */
+  public static Budget setBudget(Budget budget) {
+    Budget old = budgets.get();
+    if (budget == null) {
+      budgets.remove();
+    } else {
+      budgets.set(budget);
+    }
+    return old;
+  }
+  
+  /**
+   * Counts a step: an operator being run or a function being called.
+   * 
+   * @throws EvaluationLimitException
+   *   If that's too many steps, the evaluation is out of time, or the
+   *   thread was interrupted.
+   */
+  public static void step() {
+    Budget budget = budgets.get();
+    if (budget != null) {
+      budget.step();
+    }
+  }
+  
+  /**
+   * Counts dice that are about to be rolled.
+   * 
+   * @param count
+   *   The number of dice.
+   * @throws EvaluationLimitException
+   *   If that's too many dice, the evaluation is out of time, or the
+   *   thread was interrupted.
+   */
+  public static void roll(long count) {
+    Budget budget = budgets.get();
+    if (budget != null) {
+      budget.roll(count);
+    }
+  }
+  
+  /**
+   * Counts list items that are about to be made.
+   * 
+   * @param count
+   *   The number of items.
+   * @throws EvaluationLimitException
+   *   If that's too many items, the evaluation is out of time, or the
+   *   thread was interrupted.
+   */
+  public static void allocate(long count) {
+    Budget budget = budgets.get();
+    if (budget != null) {
+      budget.allocate(count);
+    }
+  }
+  
+  /**
+   * What one evaluation has used so far. It can be counted against from
+   * several threads at once.
+   */
+  public static class Budget {
+    private final Governor   governor;
+    private final Thread     owner;
+    private final long       start;
+    private final long       maxNanos;
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong dice  = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    
+    private Budget(Governor governor) {
+      this.governor = governor;
+      this.owner = Thread.currentThread();
+      this.start = System.nanoTime();
+      this.maxNanos = TimeUnit.MILLISECONDS.toNanos(governor.maxMillis);
+    }
+    
+    /**
+     * Returns the number of steps counted so far.
+     * 
+     * @return The steps.
+     */
+    public long getSteps() {
+      return steps.get();
+    }
+    
+    /**
+     * Returns the number of dice counted so far.
+     * 
+     * @return The dice.
+     */
+    public long getDice() {
+      return dice.get();
+    }
+    
+    /**
+     * Returns the number of list items counted so far.
+     * 
+     * @return The items.
+     */
+    public long getItems() {
+      return items.get();
+    }
+    
+    private void step() {
+      long count = steps.incrementAndGet();
+      if (count > governor.maxSteps) {
+        throw new EvaluationLimitException("The expression took more than "
+            + governor.maxSteps + " steps.");
+      }
+      // Reading the clock costs more than a step, so don't every time.
+      check((count & 63) == 0);
+    }
+    
+    private void roll(long count) {
+      if (dice.addAndGet(count) > governor.maxDice) {
+        throw new EvaluationLimitException(
+            "The expression rolled more than " + governor.maxDice
+                + " dice.");
+      }
+      check(true);
+    }
+    
+    private void allocate(long count) {
+      if (items.addAndGet(count) > governor.maxItems) {
+        throw new EvaluationLimitException(
+            "The expression made more than " + governor.maxItems
+                + " list items.");
+      }
+      check(false);
+    }
+    
+    private void check(boolean clock) {
+      // The owner is waiting on any other threads that count against
+      // this budget, so its interruption counts too.
+      if (owner.isInterrupted() || Thread.currentThread().isInterrupted()) {
+        throw new EvaluationLimitException(
+            "The evaluation was interrupted.");
+      }
+      
+      if (clock && governor.maxMillis != UNLIMITED
+          && System.nanoTime() - start > maxNanos) {
+        throw new EvaluationLimitException("The expression took more than "
+            + governor.maxMillis + " milliseconds.");
+      }
+    }
+  }
+}
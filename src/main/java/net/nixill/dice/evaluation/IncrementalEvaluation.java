@@ -0,0 +1,335 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.nixill.dice.defaults.operations.DiceOperators;
+import net.nixill.dice.exception.DiceCalcException;
+import net.nixill.dice.objects.DCDie;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.Operator;
+
+/**
+ * An evaluated expression that remembers the value of each part, so that
+ * a part can be rerolled without rolling the rest again.
+ * <p>
+ * The expression is evaluated through a copy of its tree whose nodes keep
+ * their values, and behave and render exactly like the originals.
+ * {@link #reroll(DCEntity)} evaluates one node again, usually a
+ * {@link DiceOperators#DICE d} operation, and then the nodes it's in, on
+ * the way up to the root; everything else keeps the value it had.
+ * {@link #reroll(DCEntity, int)} rerolls a single die of a node's value
+ * the same way.
+ * <p>
+ * Operations, lists and function calls each keep a value. A function call
+ * is kept as a whole, since its parameters may be evaluated any number of
+ * times inside the function. So is an operation whose operator has no
+ * {@link Operator#getOperandOrder() operand order}, like "x", which
+ * evaluates its body once per repeat. The parts of the expression that
+ * weren't evaluated (like the items <code>s</code> didn't select) are
+ * kept as a whole until they are. Only what's evaluated again is added
+ * to the {@link net.nixill.dice.operations.FunctionHistory
+ * FunctionHistory}.
+ */
+public class IncrementalEvaluation {
+  private final Map<DCEntity, Kept> copies = new IdentityHashMap<>();
+  private final DCEntity            root;
+  
+  /**
+   * Evaluates an expression.
+   * 
+   * @param ent
+   *   The root of the expression.
+   */
+  public IncrementalEvaluation(DCEntity ent) {
+    root = copy(ent);
+    root.getValue();
+  }
+  
+  /**
+   * Returns the value of the expression.
+   * 
+   * @return The value.
+   */
+  public DCValue getValue() {
+    return root.getValue();
+  }
+  
+  /**
+   * Returns the value that a node of the expression has now.
+   * 
+   * @param node
+   *   The node, from the original tree.
+   * @return Its value, or <code>null</code> if it wasn't evaluated.
+   * @throws DiceCalcException
+   *   If the node isn't part of the expression.
+   */
+  public DCValue getValue(DCEntity node) {
+    return kept(node).value();
+  }
+  
+  /**
+   * Evaluates a node of the expression again, along with the nodes it's
+   * in.
+   * 
+   * @param node
+   *   The node, from the original tree.
+   * @return The new value of the expression.
+   * @throws DiceCalcException
+   *   If the node isn't part of the expression.
+   */
+  public DCValue reroll(DCEntity node) {
+    Kept kept = kept(node);
+    kept.forget();
+    return root.getValue();
+  }
+  
+  /**
+   * Rerolls one die of a node's value, and evaluates the nodes it's in
+   * again.
+   * 
+   * @param node
+   *   The node, from the original tree, whose value is a list of dice.
+   * @param index
+   *   The index of the die in the list.
+   * @return The new value of the expression.
+   * @throws DiceCalcException
+   *   If the node isn't part of the expression, or that item isn't a
+   *   die.
+   */
+  public DCValue reroll(DCEntity node, int index) {
+    Kept kept = kept(node);
+    DCValue val = kept.value();
+    if (!(val instanceof DCList) || index < 0
+        || index >= ((DCList) val).size()
+        || !(((DCList) val).get(index) instanceof DCDie)) {
+      throw new DiceCalcException(new IllegalArgumentException(
+          "There's no die at that position to reroll."));
+    }
+    
+    ArrayList<DCValue> items = ((DCList) val).getItems();
+    double sides = items.get(index).getSingle().getPotential();
+    items.set(index, new DCDie(sides));
+    
+    kept.forget();
+    kept.keep(new DCList(items));
+    return root.getValue();
+  }
+  
+  private Kept kept(DCEntity node) {
+    Kept kept = copies.get(node);
+    if (kept == null) {
+      throw new DiceCalcException(new IllegalArgumentException(
+          "That isn't part of the expression."));
+    }
+    return kept;
+  }
+  
+  /**
+   * Returns the copy of a node that keeps its value. Values, and nodes
+   * that aren't operations, lists or functions, are their own copies.
+   */
+  private DCEntity copy(DCEntity ent) {
+    Kept kept;
+    List<DCEntity> parts = new ArrayList<>();
+    
+    if (ent instanceof DCOperation
+        && ((DCOperation) ent).getOperator().getOperandOrder() == null) {
+      // Its operands may be evaluated any number of times (like the body
+      // of "x"), so they aren't copied either.
+      DCOperation op = (DCOperation) ent;
+      kept = new KeptOperation(op.getLeft(), op.getOperator(),
+          op.getRight());
+    } else if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      DCEntity left = (op.getLeft() == null) ? null : copy(op.getLeft());
+      DCEntity right = (op.getRight() == null) ? null
+          : copy(op.getRight());
+      parts.add(left);
+      parts.add(right);
+      kept = new KeptOperation(left, op.getOperator(), right);
+    } else if (ent instanceof DCListExpression) {
+      for (DCEntity item : ((DCListExpression) ent).getItems()) {
+        parts.add(copy(item));
+      }
+      kept = new KeptList(parts);
+    } else if (ent instanceof DCFunction) {
+      // The parameters aren't copied; they belong to the call.
+      DCFunction func = (DCFunction) ent;
+      kept = new KeptFunction(func.getName(), func.getParams());
+    } else {
+      return ent;
+    }
+    
+    for (DCEntity part : parts) {
+      if (part instanceof Kept) {
+        ((Kept) part).setParent(kept);
+      }
+    }
+    copies.put(ent, kept);
+    return (DCEntity) kept;
+  }
+  
+  /**
+   * A copy of a node that keeps its value.
+   */
+  private interface Kept {
+    /**
+     * Returns the value the node has, or <code>null</code> if it hasn't
+     * got one.
+     */
+    DCValue value();
+    
+    /**
+     * Sets the value the node has.
+     */
+    void keep(DCValue value);
+    
+    Kept getParent();
+    
+    void setParent(Kept parent);
+    
+    /**
+     * Forgets the values of the node and the nodes it's in.
+     */
+    default void forget() {
+      for (Kept kept = this; kept != null; kept = kept.getParent()) {
+        kept.keep(null);
+      }
+    }
+  }
+  
+  private static class KeptOperation extends DCOperation implements Kept {
+    private Kept    parent;
+    private DCValue value;
+    
+    private KeptOperation(DCEntity left, Operator oper, DCEntity right) {
+      super(left, oper, right);
+    }
+    
+    @Override
+    public DCValue getValue() {
+      if (value == null) {
+        value = super.getValue();
+      }
+      return value;
+    }
+    
+    @Override
+    public double evaluateDouble() {
+      // Going through getValue() keeps the value.
+      return getValue().getSingle().getAmount();
+    }
+    
+    @Override
+    public DCValue value() {
+      return value;
+    }
+    
+    @Override
+    public void keep(DCValue value) {
+      this.value = value;
+    }
+    
+    @Override
+    public Kept getParent() {
+      return parent;
+    }
+    
+    @Override
+    public void setParent(Kept parent) {
+      this.parent = parent;
+    }
+  }
+  
+  private static class KeptList extends DCListExpression implements Kept {
+    private Kept   parent;
+    private DCList value;
+    
+    private KeptList(List<DCEntity> items) {
+      super(items);
+    }
+    
+    @Override
+    public DCList getValue() {
+      if (value == null) {
+        value = super.getValue();
+      }
+      return value;
+    }
+    
+    @Override
+    public double evaluateDouble() {
+      return getValue().getSingle().getAmount();
+    }
+    
+    @Override
+    public DCValue value() {
+      return value;
+    }
+    
+    @Override
+    public void keep(DCValue value) {
+      this.value = (value == null) ? null : value.getList();
+    }
+    
+    @Override
+    public Kept getParent() {
+      return parent;
+    }
+    
+    @Override
+    public void setParent(Kept parent) {
+      this.parent = parent;
+    }
+  }
+  
+  private static class KeptFunction extends DCFunction implements Kept {
+    private Kept    parent;
+    private DCValue value;
+    
+    private KeptFunction(String name, List<DCEntity> params) {
+      super(name, params);
+    }
+    
+    @Override
+    public DCValue getValue() {
+      if (value == null) {
+        value = super.getValue();
+      }
+      return value;
+    }
+    
+    @Override
+    public double evaluateDouble() {
+      return getValue().getSingle().getAmount();
+    }
+    
+    @Override
+    public DCValue value() {
+      return value;
+    }
+    
+    @Override
+    public void keep(DCValue value) {
+      this.value = value;
+    }
+    
+    @Override
+    public Kept getParent() {
+      return parent;
+    }
+    
+    @Override
+    public void setParent(Kept parent) {
+      this.parent = parent;
+    }
+  }
+}
@@ -0,0 +1,385 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.nixill.dice.objects.DCCodeFunction;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.Functions;
+
+/**
+ * Replaces calls to small saved functions with what they're saved as, so
+ * that evaluating them doesn't look the function up or put its
+ * parameters on the stack.
+ * <p>
+ * In the body of an inlined function, each numbered parameter
+ * (<code>{1}</code>, <code>{2}</code>, ...) is replaced by the entity
+ * passed for it, or by its default if none was. Parameters are still
+ * evaluated each time they're used, as they are in a call. Functions
+ * called by the body are inlined as well, up to {@link #MAX_DEPTH}
+ * calls deep, so a function that calls itself is inlined a few times
+ * and then called as usual.
+ * <p>
+ * A call isn't inlined if the function is built in, an environment or
+ * global variable or a last result, if what it's saved as is bigger than
+ * {@link #MAX_BODY} nodes, or if its parameters refer to the parameters
+ * of the function they're passed from (which aren't the same once the
+ * call is gone). Calls to functions that don't exist are left alone, so
+ * that they fail when they're evaluated, as before.
+ * <p>
+ * An inlined call renders the same as the original. It's worked out
+ * again when it's next evaluated after {@link Functions#getVersion()
+ * saved functions change}, and while {@link FunctionHistory} is
+ * recording, it makes the call instead, so that the history shows it.
+ */
+public class Inliner {
+  /**
+   * The most nodes a function can be saved as to be inlined.
+   */
+  public static final int MAX_BODY = 64;
+  
+  /**
+   * The most calls within calls that are inlined.
+   */
+  public static final int MAX_DEPTH = 4;
+  
+  /**
+   * The most nodes that inlining a single call can add.
+   */
+  public static final int MAX_NODES = 1024;
+  
+  private Inliner() {
+  }
+  
+  /**
+   * Inlines the calls in a tree.
+   * 
+   * @param ent
+   *   The root of the tree.
+   * @return The root of the inlined tree, which may be the same as the
+   *   original if nothing was inlined.
+   */
+  public static DCEntity inline(DCEntity ent) {
+    if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      DCEntity left = inlineOf(op.getLeft());
+      DCEntity right = inlineOf(op.getRight());
+      
+      if (left == op.getLeft() && right == op.getRight()) {
+        return op;
+      }
+      return new DCOperation(left, op.getOperator(), right);
+    } else if (ent instanceof DCListExpression) {
+      List<DCEntity> items = ((DCListExpression) ent).getItems();
+      if (inlineAll(items)) {
+        return new DCListExpression(items);
+      }
+      return ent;
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      List<DCEntity> params = new ArrayList<>(func.getParams());
+      if (inlineAll(params)) {
+        func = new DCFunction(func.getName(), params);
+      }
+      
+      if (Functions.isUserFunction(func.getName())) {
+        return new InlinedCall(func);
+      }
+      return func;
+    } else {
+      return ent;
+    }
+  }
+  
+  private static DCEntity inlineOf(DCEntity ent) {
+    return (ent == null) ? null : inline(ent);
+  }
+  
+  /**
+   * Inlines each entity of a list in place.
+   * 
+   * @return Whether any of them changed.
+   */
+  private static boolean inlineAll(List<DCEntity> ents) {
+    boolean changed = false;
+    for (int i = 0; i < ents.size(); i++) {
+      DCEntity inlined = inline(ents.get(i));
+      if (inlined != ents.get(i)) {
+        ents.set(i, inlined);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+  
+  /**
+   * Works out the tree a call is replaced by.
+   * 
+   * @param func
+   *   The call.
+   * @param depth
+   *   How many calls this one is within.
+   * @param nodes
+   *   How many nodes have been added so far, in a one-item array.
+   * @return The tree, or <code>null</code> if the call can't be inlined.
+   */
+  private static DCEntity expand(DCFunction func, int depth, int[] nodes) {
+    if (depth >= MAX_DEPTH || !Functions.isUserFunction(func.getName())) {
+      return null;
+    }
+    for (DCEntity param : func.getParams()) {
+      if (Functions.refersToParams(param)) {
+        return null;
+      }
+    }
+    
+    DCEntity body;
+    try {
+      body = Functions.get(func.getName());
+    } catch (RuntimeException ex) {
+      return null;
+    }
+    
+    if (body instanceof DCValue) {
+      // Values are returned as they are, without the parameters.
+      return body;
+    } else if (body == null || body instanceof DCCodeFunction) {
+      return null;
+    }
+    
+    int size = size(body);
+    if (size > MAX_BODY || nodes[0] + size > MAX_NODES) {
+      return null;
+    }
+    nodes[0] += size;
+    
+    try {
+      return substitute(body, func.getParams(), depth, nodes);
+    } catch (CantInline ex) {
+      return null;
+    }
+  }
+  
+  /**
+   * Copies the body of a function, with its parameters replaced and the
+   * calls within it inlined.
+   * 
+   * @throws CantInline
+   *   If a parameter can't be replaced.
+   */
+  private static DCEntity substitute(DCEntity ent, List<DCEntity> params,
+      int depth, int[] nodes) {
+    if (ent == null || ent instanceof DCValue) {
+      return ent;
+    } else if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      DCEntity left = substitute(op.getLeft(), params, depth, nodes);
+      DCEntity right = substitute(op.getRight(), params, depth, nodes);
+      return new DCOperation(left, op.getOperator(), right);
+    } else if (ent instanceof DCListExpression) {
+      ArrayList<DCEntity> items = new ArrayList<>();
+      for (DCEntity item : ((DCListExpression) ent).getItems()) {
+        items.add(substitute(item, params, depth, nodes));
+      }
+      return new DCListExpression(items);
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      if (Functions.isParam(func.getName())) {
+        return param(func, params);
+      }
+      
+      // The parameters of calls within the body are evaluated with those
+      // calls' own parameters, so they're left alone.
+      DCEntity inlined = expand(func, depth + 1, nodes);
+      if (inlined == null) {
+        return func;
+      }
+      return new InlinedCall(func, inlined);
+    } else {
+      throw new CantInline();
+    }
+  }
+  
+  /**
+   * Returns what a numbered parameter in the body of a function is
+   * replaced by.
+   */
+  private static DCEntity param(DCFunction ref, List<DCEntity> params) {
+    int index;
+    try {
+      index = Integer.parseInt(ref.getName()) - 1;
+    } catch (NumberFormatException ex) {
+      throw new CantInline();
+    }
+    
+    if (index < 0) {
+      throw new CantInline();
+    } else if (index < params.size()) {
+      return new Param(ref, params.get(index));
+    } else if (!ref.getParams().isEmpty()
+        && !Functions.refersToParams(ref.getParams().get(0))) {
+      // The default, which is evaluated the same way.
+      return new Param(ref, ref.getParams().get(0));
+    } else {
+      throw new CantInline();
+    }
+  }
+  
+  /**
+   * Counts the nodes of a tree, stopping once there are more than
+   * {@link #MAX_BODY}.
+   */
+  private static int size(DCEntity root) {
+    int size = 0;
+    ArrayList<DCEntity> stack = new ArrayList<>();
+    stack.add(root);
+    
+    while (!stack.isEmpty() && size <= MAX_BODY) {
+      DCEntity ent = stack.remove(stack.size() - 1);
+      if (ent == null) {
+        continue;
+      }
+      size++;
+      
+      if (ent instanceof DCOperation) {
+        stack.add(((DCOperation) ent).getLeft());
+        stack.add(((DCOperation) ent).getRight());
+      } else if (ent instanceof DCListExpression) {
+        stack.addAll(((DCListExpression) ent).getItems());
+      } else if (ent instanceof DCFunction) {
+        stack.addAll(((DCFunction) ent).getParams());
+      }
+    }
+    return size;
+  }
+  
+  /**
+   * Thrown while substituting parameters, if one can't be.
+   */
+  private static class CantInline extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+  
+  /**
+   * A call whose function's body is evaluated in its place.
+   */
+  private static class InlinedCall extends DCExpression {
+    private final DCFunction   source;
+    private volatile Expansion expansion;
+    private String             code;
+    
+    /**
+     * A call that's worked out when it's first evaluated.
+     */
+    private InlinedCall(DCFunction source) {
+      this.source = source;
+    }
+    
+    /**
+     * A call within another one, which is worked out along with it.
+     */
+    private InlinedCall(DCFunction source, DCEntity inlined) {
+      this.source = source;
+      this.expansion = new Expansion(Functions.getVersion(), inlined);
+    }
+    
+    @Override
+    public DCValue getValue() {
+      if (FunctionHistory.isRecording()) {
+        return source.getValue();
+      }
+      
+      Expansion exp = expansion;
+      long version = Functions.getVersion();
+      if (exp == null || exp.version != version) {
+        // If the functions change while this is worked out, the version
+        // won't match next time either.
+        exp = new Expansion(version, expand(source, 0, new int[1]));
+        expansion = exp;
+      }
+      
+      if (exp.inlined == null) {
+        return source.getValue();
+      }
+      Governor.step();
+      return exp.inlined.getValue();
+    }
+    
+    @Override
+    public String toString(int level) {
+      return source.toString(level);
+    }
+    
+    @Override
+    public String toCode() {
+      if (code == null) {
+        code = source.toCode();
+      }
+      return code;
+    }
+    
+    @Override
+    public void printTree(int level) {
+      source.printTree(level);
+    }
+  }
+  
+  /**
+   * What a call is replaced by, for one version of the saved functions.
+   */
+  private static class Expansion {
+    private final long     version;
+    private final DCEntity inlined;
+    
+    /**
+     * @param inlined
+     *   The tree, or <code>null</code> if the call can't be inlined.
+     */
+    private Expansion(long version, DCEntity inlined) {
+      this.version = version;
+      this.inlined = inlined;
+    }
+  }
+  
+  /**
+   * A numbered parameter, replaced by the entity passed for it. It isn't
+   * a list expression even if the entity is, so that operators which look
+   * into those (like "s") see it as they did the parameter.
+   */
+  private static class Param extends DCExpression {
+    private final DCFunction source;
+    private final DCEntity   param;
+    
+    private Param(DCFunction source, DCEntity param) {
+      this.source = source;
+      this.param = param;
+    }
+    
+    @Override
+    public DCValue getValue() {
+      Governor.step();
+      return param.getValue();
+    }
+    
+    @Override
+    public String toString(int level) {
+      return source.toString(level);
+    }
+    
+    @Override
+    public String toCode() {
+      return source.toCode();
+    }
+    
+    @Override
+    public void printTree(int level) {
+      source.printTree(level);
+    }
+  }
+}
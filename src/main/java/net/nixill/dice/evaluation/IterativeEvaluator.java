@@ -0,0 +1,295 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.nixill.dice.exception.EvaluationLimitException;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.BinaryOperator;
+import net.nixill.dice.operations.Functions;
+import net.nixill.dice.operations.Operator;
+import net.nixill.dice.operations.Operator.OperandOrder;
+import net.nixill.dice.operations.PostfixOperator;
+import net.nixill.dice.operations.PrefixOperator;
+
+/**
+ * An {@link Evaluator} that keeps its own stack instead of recursing, so
+ * that deep trees and deeply recursive functions can be evaluated on any
+ * thread.
+ * <p>
+ * The evaluation is a list of steps still to do and a stack of the values
+ * worked out so far. Operations whose operator has an
+ * {@link Operator#getOperandOrder() operand order} have their operands
+ * evaluated as steps of their own, and then the operator is run on their
+ * values. Function calls put their parameters on the stack, evaluate the
+ * function as more steps, and take them off again. Lists are evaluated
+ * item by item. Anything else, such as an operator without an order, is
+ * evaluated with {@link DCEntity#getValue()}.
+ * <p>
+ * The depth of the evaluation is limited: each operand, list item and
+ * function body is one level deeper than what it's in. Going deeper than
+ * the limit, or running out of the thread's stack anyway, stops the
+ * evaluation with an {@link EvaluationLimitException}. Function
+ * parameters are taken off the stack whenever an evaluation stops part of
+ * the way through.
+ */
+public class IterativeEvaluator implements Evaluator {
+  /**
+   * The depth limit of an evaluator made without one, which is 100,000.
+   */
+  public static final int DEFAULT_MAX_DEPTH = 100000;
+  
+  private final int maxDepth;
+  
+  /**
+   * Creates an IterativeEvaluator with the {@link #DEFAULT_MAX_DEPTH
+   * default} depth limit.
+   */
+  public IterativeEvaluator() {
+    this(DEFAULT_MAX_DEPTH);
+  }
+  
+  /**
+   * Creates an IterativeEvaluator.
+   * 
+   * @param maxDepth
+   *   The deepest an evaluation may go.
+   */
+  public IterativeEvaluator(int maxDepth) {
+    this.maxDepth = maxDepth;
+  }
+  
+  /**
+   * Returns the deepest an evaluation may go.
+   * 
+   * @return The depth limit.
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+  
+  @Override
+  public DCValue evaluate(DCEntity ent) {
+    return EvaluationGuard.evaluate(() -> new Run(ent).finish());
+  }
+  
+  /**
+   * What a step does.
+   */
+  private static enum Kind {
+    /**
+     * Evaluates an entity.
+     */
+    EVAL,
+    /**
+     * Runs an operator on the values of its operands.
+     */
+    APPLY,
+    /**
+     * Lets a right-first operator choose, given its right value.
+     */
+    CHOOSE,
+    /**
+     * Runs a right-first operator, given its right value.
+     */
+    APPLY_LEFT,
+    /**
+     * Records the value of an operation that chose it.
+     */
+    RECORD,
+    /**
+     * Collects the values of a list's items.
+     */
+    LIST,
+    /**
+     * Takes a function's parameters off the stack.
+     */
+    UNSTACK;
+  }
+  
+  /**
+   * A step still to do.
+   */
+  private static class Step {
+    private final Kind     kind;
+    private final DCEntity ent;
+    private final DCValue  value;
+    private final int      depth;
+    
+    private Step(Kind kind, DCEntity ent, DCValue value, int depth) {
+      this.kind = kind;
+      this.ent = ent;
+      this.value = value;
+      this.depth = depth;
+    }
+  }
+  
+  /**
+   * The state of one evaluation.
+   */
+  private class Run {
+    private final ArrayList<Step>    steps  = new ArrayList<>();
+    private final ArrayList<DCValue> values = new ArrayList<>();
+    
+    private Run(DCEntity ent) {
+      push(Kind.EVAL, ent, null, 0);
+    }
+    
+    private DCValue finish() {
+      while (!steps.isEmpty()) {
+        Step step = steps.remove(steps.size() - 1);
+        switch (step.kind) {
+          case EVAL:
+            eval(step.ent, step.depth);
+            break;
+          case APPLY:
+            apply((DCOperation) step.ent);
+            break;
+          case CHOOSE:
+            choose((DCOperation) step.ent, step.depth);
+            break;
+          case APPLY_LEFT:
+            applyLeft((DCOperation) step.ent, step.value);
+            break;
+          case RECORD:
+            record((DCOperation) step.ent, values.get(values.size() - 1));
+            break;
+          case LIST:
+            list(((DCListExpression) step.ent).size());
+            break;
+          case UNSTACK:
+            Functions.unstackParams();
+            break;
+        }
+      }
+      return values.get(0);
+    }
+    
+    private void push(Kind kind, DCEntity ent, DCValue value, int depth) {
+      steps.add(new Step(kind, ent, value, depth));
+    }
+    
+    private DCValue pop() {
+      return values.remove(values.size() - 1);
+    }
+    
+    private void eval(DCEntity ent, int depth) {
+      if (depth > maxDepth) {
+        throw new EvaluationLimitException("The expression goes more than "
+            + maxDepth + " levels deep.");
+      }
+      
+      if (ent instanceof DCValue) {
+        values.add((DCValue) ent);
+      } else if (ent instanceof DCOperation) {
+        evalOperation((DCOperation) ent, depth);
+      } else if (ent instanceof DCListExpression) {
+        DCListExpression exp = (DCListExpression) ent;
+        push(Kind.LIST, exp, null, depth);
+        for (int i = exp.size() - 1; i >= 0; i--) {
+          push(Kind.EVAL, exp.get(i), null, depth + 1);
+        }
+      } else if (ent instanceof DCFunction) {
+        DCFunction func = (DCFunction) ent;
+        Governor.step();
+        DCEntity saved = func.getSaved();
+        
+        func.recordCall(saved);
+        
+        if (saved instanceof DCExpression) {
+          func.stackParams();
+          push(Kind.UNSTACK, null, null, depth);
+          push(Kind.EVAL, saved, null, depth + 1);
+        } else {
+          values.add(saved.getValue());
+        }
+      } else {
+        values.add(ent.getValue());
+      }
+    }
+    
+    private void evalOperation(DCOperation op, int depth) {
+      Operator oper = op.getOperator();
+      OperandOrder order = oper.getOperandOrder();
+      
+      if (order == null) {
+        values.add(op.getValue());
+      } else if (oper instanceof BinaryOperator) {
+        if (order == OperandOrder.LEFT_FIRST) {
+          push(Kind.APPLY, op, null, depth);
+          push(Kind.EVAL, op.getRight(), null, depth + 1);
+          push(Kind.EVAL, op.getLeft(), null, depth + 1);
+        } else {
+          push(Kind.CHOOSE, op, null, depth);
+          push(Kind.EVAL, op.getRight(), null, depth + 1);
+        }
+      } else if (oper instanceof PrefixOperator) {
+        push(Kind.APPLY, op, null, depth);
+        push(Kind.EVAL, op.getRight(), null, depth + 1);
+      } else if (oper instanceof PostfixOperator) {
+        push(Kind.APPLY, op, null, depth);
+        push(Kind.EVAL, op.getLeft(), null, depth + 1);
+      } else {
+        values.add(op.getValue());
+      }
+    }
+    
+    private void apply(DCOperation op) {
+      Operator oper = op.getOperator();
+      DCValue val;
+      
+      if (oper instanceof BinaryOperator) {
+        DCValue right = pop();
+        DCValue left = pop();
+        val = ((BinaryOperator<?>) oper).run(left, right);
+      } else if (oper instanceof PrefixOperator) {
+        val = ((PrefixOperator<?>) oper).run(pop());
+      } else {
+        val = ((PostfixOperator<?>) oper).run(pop());
+      }
+      
+      record(op, val);
+      values.add(val);
+    }
+    
+    private void choose(DCOperation op, int depth) {
+      BinaryOperator<?> oper = (BinaryOperator<?>) op.getOperator();
+      DCValue right = pop();
+      DCEntity chosen = oper.choose(op.getLeft(), right);
+      
+      if (chosen != null) {
+        push(Kind.RECORD, op, null, depth);
+        push(Kind.EVAL, chosen, null, depth + 1);
+      } else {
+        push(Kind.APPLY_LEFT, op, right, depth);
+        push(Kind.EVAL, op.getLeft(), null, depth + 1);
+      }
+    }
+    
+    private void applyLeft(DCOperation op, DCValue right) {
+      DCValue val = ((BinaryOperator<?>) op.getOperator()).run(pop(),
+          right);
+      
+      record(op, val);
+      values.add(val);
+    }
+    
+    private void record(DCOperation op, DCValue val) {
+      DCOperation.recordHistory(op, op.getOperator().getLevel(), val);
+    }
+    
+    private void list(int size) {
+      List<DCValue> items = values.subList(values.size() - size,
+          values.size());
+      DCList list = new DCList(new ArrayList<>(items));
+      items.clear();
+      values.add(list);
+    }
+  }
+}
@@ -0,0 +1,362 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.nixill.dice.analysis.CostEstimate;
+import net.nixill.dice.analysis.CostEstimator;
+import net.nixill.dice.evaluation.Governor.Budget;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.objects.Randomizer;
+import net.nixill.dice.operations.BinaryOperator;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.FunctionHistory.Segment;
+import net.nixill.dice.operations.Functions;
+import net.nixill.dice.operations.Operator;
+import net.nixill.dice.operations.Operator.OperandOrder;
+import net.nixill.dice.operations.PostfixOperator;
+import net.nixill.dice.operations.PrefixOperator;
+
+/**
+ * An {@link Evaluator} that evaluates expensive parts of a tree that don't
+ * depend on each other at the same time, on a {@link ForkJoinPool}.
+ * <p>
+ * The cost of each part is estimated by the {@link CostEstimator} before
+ * anything's evaluated, as the number of steps and dice involved,
+ * following functions into the entities they name. Parts that cost at
+ * least the threshold are expensive. When a list has two or more
+ * expensive items, or both operands of an operation with an
+ * {@link Operator#getOperandOrder() operand order} are expensive, the
+ * expensive ones are evaluated as separate tasks while the rest are
+ * evaluated in order. Their values are then put together in order, as
+ * are their histories. Anything too cheap to have two expensive parts is
+ * evaluated with {@link DCEntity#getValue()}.
+ * <p>
+ * Each task has its own {@link Random}, seeded from the evaluation's own
+ * in order, and its own copy of the function parameters. The results and
+ * the history are therefore the same for the same seed however the tasks
+ * are scheduled, but aren't the same as a sequential evaluation's; cheap
+ * expressions, which aren't split up at all, are. Expressions that save
+ * variables (like <code>u</code> saving <code>{_u}</code>) may do so from
+ * several threads at once, in any order, and the
+ * {@link net.nixill.dice.operations.FunctionLoader FunctionLoader} must
+ * be able to handle that.
+ * <p>
+ * Tasks count against the {@link Governor} budget of the evaluation that
+ * started them, if there is one.
+ */
+public class ParallelEvaluator implements Evaluator {
+  /**
+   * The cost at which parts are expensive for an evaluator made without a
+   * threshold, which is 1,000.
+   */
+  public static final long DEFAULT_THRESHOLD = 1000;
+  
+  private final ForkJoinPool pool;
+  private final long         threshold;
+  
+  /**
+   * Creates a ParallelEvaluator that uses the common {@link ForkJoinPool}
+   * and the {@link #DEFAULT_THRESHOLD default} threshold.
+   */
+  public ParallelEvaluator() {
+    this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+  }
+  
+  /**
+   * Creates a ParallelEvaluator.
+   * 
+   * @param pool
+   *   The pool to evaluate parts on.
+   * @param threshold
+   *   The estimated cost at which parts are worth evaluating separately.
+   */
+  public ParallelEvaluator(ForkJoinPool pool, long threshold) {
+    this.pool = pool;
+    this.threshold = threshold;
+  }
+  
+  @Override
+  public DCValue evaluate(DCEntity ent) {
+    return EvaluationGuard.evaluate(() -> {
+      Map<DCEntity, Long> costs = estimate(ent);
+      
+      if (costs.get(ent) < 2 * threshold) {
+        return ent.getValue();
+      }
+      
+      // The caller's random carries on where the evaluation leaves it,
+      // as it would have sequentially.
+      Task root = new Task(ent, Randomizer.get(), costs);
+      DCValue val = pool.invoke(root);
+      FunctionHistory.paste(root.history);
+      if (root.failure != null) {
+        throw root.failure;
+      }
+      return val;
+    });
+  }
+  
+  /**
+   * Evaluates an entity on the current thread, splitting it up if it's
+   * expensive enough.
+   */
+  private DCValue walk(DCEntity ent, Map<DCEntity, Long> costs) {
+    if (cost(ent, costs) < 2 * threshold) {
+      return ent.getValue();
+    } else if (ent instanceof DCListExpression) {
+      List<DCEntity> items = ((DCListExpression) ent).getItems();
+      return new DCList(evaluateAll(items, costs));
+    } else if (ent instanceof DCOperation) {
+      return walkOperation((DCOperation) ent, costs);
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      Governor.step();
+      DCEntity saved = func.getSaved();
+      
+      func.recordCall(saved);
+      
+      if (saved instanceof DCExpression) {
+        func.stackParams();
+        DCValue val = walk(saved, costs);
+        Functions.unstackParams();
+        
+        return val;
+      } else {
+        return saved.getValue();
+      }
+    } else {
+      return ent.getValue();
+    }
+  }
+  
+  private DCValue walkOperation(DCOperation op, Map<DCEntity, Long> costs) {
+    Operator oper = op.getOperator();
+    OperandOrder order = oper.getOperandOrder();
+    DCValue val;
+    
+    if (order == null) {
+      return op.getValue();
+    } else if (oper instanceof BinaryOperator) {
+      BinaryOperator<?> binary = (BinaryOperator<?>) oper;
+      DCEntity left = op.getLeft();
+      DCEntity right = op.getRight();
+      
+      if (order == OperandOrder.LEFT_FIRST) {
+        List<DCValue> vals = evaluateAll(Arrays.asList(left, right), costs);
+        val = binary.run(vals.get(0), vals.get(1));
+      } else if (!binary.hasChoiceFunction()) {
+        List<DCValue> vals = evaluateAll(Arrays.asList(right, left), costs);
+        val = binary.run(vals.get(1), vals.get(0));
+      } else {
+        DCValue rightVal = walk(right, costs);
+        DCEntity chosen = binary.choose(left, rightVal);
+        if (chosen != null) {
+          val = walk(chosen, costs);
+        } else {
+          val = binary.run(walk(left, costs), rightVal);
+        }
+      }
+    } else if (oper instanceof PrefixOperator) {
+      val = ((PrefixOperator<?>) oper).run(walk(op.getRight(), costs));
+    } else if (oper instanceof PostfixOperator) {
+      val = ((PostfixOperator<?>) oper).run(walk(op.getLeft(), costs));
+    } else {
+      return op.getValue();
+    }
+    
+    DCOperation.recordHistory(op, oper.getLevel(), val);
+    return val;
+  }
+  
+  /**
+   * Evaluates entities that don't depend on each other, in order, as
+   * separate tasks if two or more of them are expensive.
+   * 
+   * @return Their values, in order.
+   */
+  private List<DCValue> evaluateAll(List<DCEntity> ents,
+      Map<DCEntity, Long> costs) {
+    int size = ents.size();
+    ArrayList<DCValue> vals = new ArrayList<>(size);
+    
+    int expensive = 0;
+    for (DCEntity ent : ents) {
+      if (cost(ent, costs) >= threshold) {
+        expensive++;
+      }
+    }
+    
+    if (expensive < 2) {
+      for (DCEntity ent : ents) {
+        vals.add(walk(ent, costs));
+      }
+      return vals;
+    }
+    
+    // The seeds are taken in order before anything's evaluated, so the
+    // cheap entities get the same numbers afterwards whatever happens.
+    Random random = Randomizer.get();
+    Task[] tasks = new Task[size];
+    int last = -1;
+    for (int i = 0; i < size; i++) {
+      if (cost(ents.get(i), costs) >= threshold) {
+        tasks[i] = new Task(ents.get(i), new Random(random.nextLong()),
+            costs);
+        if (last >= 0) {
+          tasks[last].fork();
+        }
+        last = i;
+      }
+    }
+    
+    // The cheap entities are evaluated here, in order, until one fails.
+    DCValue[] cheap = new DCValue[size];
+    Segment[] histories = new Segment[size];
+    RuntimeException failure = null;
+    int failedAt = size;
+    for (int i = 0; i < size && failure == null; i++) {
+      if (tasks[i] == null) {
+        int mark = FunctionHistory.mark();
+        try {
+          cheap[i] = walk(ents.get(i), costs);
+        } catch (RuntimeException ex) {
+          failure = ex;
+          failedAt = i;
+        }
+        histories[i] = FunctionHistory.cut(mark);
+      }
+    }
+    
+    // The last expensive entity is evaluated here too, unless it comes
+    // after a failure.
+    if (last < failedAt) {
+      tasks[last].invoke();
+    }
+    for (int i = 0; i < last; i++) {
+      if (tasks[i] != null) {
+        tasks[i].join();
+      }
+    }
+    
+    // Everything up to the first failure goes into the history, as it
+    // would have sequentially.
+    for (int i = 0; i <= Math.min(failedAt, size - 1); i++) {
+      if (tasks[i] != null) {
+        FunctionHistory.paste(tasks[i].history);
+        if (tasks[i].failure != null) {
+          throw tasks[i].failure;
+        }
+        vals.add(tasks[i].getRawResult());
+      } else if (histories[i] != null) {
+        FunctionHistory.paste(histories[i]);
+        vals.add(cheap[i]);
+      }
+    }
+    
+    if (failure != null) {
+      throw failure;
+    }
+    return vals;
+  }
+  
+  /**
+   * Returns the estimated cost of an entity, which has usually been
+   * worked out before the evaluation started.
+   */
+  private static long cost(DCEntity ent, Map<DCEntity, Long> costs) {
+    Long cost = costs.get(ent);
+    if (cost == null) {
+      // Functions may name something else by now, or the estimator gave
+      // up before it got here. The estimate is kept separately, so that
+      // the shared estimates don't depend on which task got there first.
+      cost = estimate(ent).get(ent);
+    }
+    return (cost == null) ? 1 : cost;
+  }
+  
+  /**
+   * Estimates the costs of an entity and everything in it with the
+   * {@link CostEstimator}, so that parts are weighed the same way as the
+   * whole expression is before it's evaluated. A part's cost is the steps
+   * and dice it takes.
+   */
+  private static Map<DCEntity, Long> estimate(DCEntity root) {
+    Map<DCEntity, Long> costs = new IdentityHashMap<>();
+    for (Map.Entry<DCEntity, CostEstimate> part : CostEstimator
+        .estimateParts(root).entrySet()) {
+      CostEstimate est = part.getValue();
+      costs.put(part.getKey(), add(est.getSteps(), est.getDice()));
+    }
+    return costs;
+  }
+  
+  private static long add(long a, long b) {
+    long sum = a + b;
+    return (sum < 0) ? Long.MAX_VALUE : sum;
+  }
+  
+  /**
+   * An expensive entity, evaluated with its own random, a copy of the
+   * function parameters, and a history of its own.
+   */
+  private class Task extends RecursiveTask<DCValue> {
+    private static final long serialVersionUID = 1L;
+    
+    private final DCEntity                       ent;
+    private final Random                         random;
+    private final Map<DCEntity, Long>            costs;
+    private final ArrayList<ArrayList<DCEntity>> params;
+    private final boolean                        recording;
+    private final Budget                         budget;
+    private Segment                              history;
+    private RuntimeException                     failure;
+    
+    private Task(DCEntity ent, Random random, Map<DCEntity, Long> costs) {
+      this.ent = ent;
+      this.random = random;
+      this.costs = costs;
+      this.params = Functions.getParamsStack();
+      this.recording = FunctionHistory.isRecording();
+      this.budget = Governor.getBudget();
+    }
+    
+    @Override
+    protected DCValue compute() {
+      // The thread may be in the middle of something else, so leave its
+      // state as it was.
+      Random oldRandom = Randomizer.get();
+      ArrayList<ArrayList<DCEntity>> oldParams = Functions
+          .setParamsStack(new ArrayList<>(params));
+      boolean oldRecording = FunctionHistory.setRecording(recording);
+      Budget oldBudget = Governor.setBudget(budget);
+      int mark = FunctionHistory.mark();
+      Randomizer.set(random);
+      
+      try {
+        return EvaluationGuard.evaluate(() -> walk(ent, costs));
+      } catch (RuntimeException ex) {
+        failure = ex;
+      } finally {
+        history = FunctionHistory.cut(mark);
+        Randomizer.set(oldRandom);
+        Functions.setParamsStack(oldParams);
+        FunctionHistory.setRecording(oldRecording);
+        Governor.setBudget(oldBudget);
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.nixill.dice.exception.DiceCalcException;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.Functions;
+import net.nixill.dice.parsing.ExpressionSplitter;
+
+/**
+ * An expression that's parsed once, and then evaluated any number of
+ * times with different values for its placeholders.
+ * <p>
+ * Placeholders are written like function calls. Numbered ones
+ * (<code>{1}</code>, <code>{2}</code>, ...) are the values passed to
+ * {@link #evaluate(DCValue...)}, in order, exactly as the parameters of a
+ * saved function are: the values are put on the
+ * {@link Functions#stackParams(ArrayList) stack} while the expression is
+ * evaluated, and a placeholder with no value uses its default, as in
+ * <code>{1,3}</code>. Named ones are declared when the expression is
+ * prepared, and are numbered in the order they're declared, so in
+ * <code>new PreparedExpression("{n}d20+{m}", "n", "m")</code>,
+ * <code>{n}</code> is <code>{1}</code> and <code>{m}</code> is
+ * <code>{2}</code>.
+ * <p>
+ * A placeholder can't be used in the parameters of a function call
+ * (including another placeholder's default), since those are evaluated
+ * with the call's own parameters on the stack. Evaluating doesn't read or
+ * change the saved functions for the placeholders, so a prepared
+ * expression can be shared between threads.
+ */
+public class PreparedExpression {
+  private final String       text;
+  private final List<String> names;
+  private final DCEntity     root;
+  
+  /**
+   * Parses an expression.
+   * 
+   * @param text
+   *   The expression.
+   * @param names
+   *   The names of its named placeholders, which are numbered in this
+   *   order. They can't be numbers, or names that start with "!", "_",
+   *   "$" or "^".
+   * @throws DiceCalcException
+   *   If a name can't be used, or a placeholder is used in the parameters
+   *   of a function call.
+   */
+  public PreparedExpression(String text, String... names) {
+    ArrayList<String> lower = new ArrayList<>();
+    for (String name : names) {
+      String low = name.toLowerCase();
+      if (!Functions.isUserFunction(low)) {
+        throw new DiceCalcException(new IllegalArgumentException(
+            "`" + name + "` can't be the name of a placeholder."));
+      } else if (lower.contains(low)) {
+        throw new DiceCalcException(new IllegalArgumentException(
+            "The placeholder `" + name + "` is named more than once."));
+      }
+      lower.add(low);
+    }
+    
+    this.text = text;
+    this.names = Collections.unmodifiableList(lower);
+    this.root = number(ExpressionSplitter.parse(text));
+  }
+  
+  /**
+   * Returns the text the expression was parsed from.
+   * 
+   * @return The text.
+   */
+  public String getText() {
+    return text;
+  }
+  
+  /**
+   * Returns the names of the named placeholders, in lowercase, in the
+   * order they're numbered.
+   * 
+   * @return The names.
+   */
+  public List<String> getNames() {
+    return names;
+  }
+  
+  /**
+   * Returns the parsed expression, with the named placeholders replaced
+   * by numbered ones.
+   * 
+   * @return The root of the expression.
+   */
+  public DCEntity getEntity() {
+    return root;
+  }
+  
+  /**
+   * Evaluates the expression.
+   * 
+   * @param values
+   *   The values of the placeholders, in order.
+   * @return The value of the expression.
+   */
+  public DCValue evaluate(DCValue... values) {
+    return evaluate(new RecursiveEvaluator(), Arrays.asList(values));
+  }
+  
+  /**
+   * Evaluates the expression, with the named placeholders given by name.
+   * 
+   * @param values
+   *   The value of each named placeholder.
+   * @return The value of the expression.
+   * @throws DiceCalcException
+   *   If a named placeholder isn't given a value, or a name isn't one of
+   *   them.
+   */
+  public DCValue evaluate(Map<String, ? extends DCValue> values) {
+    return evaluate(new RecursiveEvaluator(), byName(values));
+  }
+  
+  /**
+   * Evaluates the expression with a given evaluator, such as a
+   * {@link Governor}.
+   * 
+   * @param eval
+   *   The evaluator.
+   * @param values
+   *   The values of the placeholders, in order.
+   * @return The value of the expression.
+   */
+  public DCValue evaluate(Evaluator eval, List<? extends DCValue> values) {
+    int depth = Functions.getParamsDepth();
+    Functions.stackParams(new ArrayList<DCEntity>(values));
+    try {
+      return eval.evaluate(root);
+    } finally {
+      Functions.unstackParams(depth);
+    }
+  }
+  
+  /**
+   * Puts values given by name in the order of the placeholders.
+   */
+  private List<DCValue> byName(Map<String, ? extends DCValue> values) {
+    DCValue[] ordered = new DCValue[names.size()];
+    for (Map.Entry<String, ? extends DCValue> entry : values.entrySet()) {
+      int index = names.indexOf(entry.getKey().toLowerCase());
+      if (index < 0) {
+        throw new DiceCalcException(new IllegalArgumentException(
+            "There's no placeholder named `" + entry.getKey() + "`."));
+      }
+      ordered[index] = entry.getValue();
+    }
+    
+    for (int i = 0; i < ordered.length; i++) {
+      if (ordered[i] == null) {
+        throw new DiceCalcException(new IllegalArgumentException(
+            "The placeholder `" + names.get(i) + "` has no value."));
+      }
+    }
+    return Arrays.asList(ordered);
+  }
+  
+  /**
+   * Replaces named placeholders in a tree with numbered ones, and checks
+   * that none are in the parameters of a call.
+   */
+  private DCEntity number(DCEntity ent) {
+    if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      DCEntity left = (op.getLeft() == null) ? null : number(op.getLeft());
+      DCEntity right = (op.getRight() == null) ? null
+          : number(op.getRight());
+      
+      if (left == op.getLeft() && right == op.getRight()) {
+        return op;
+      }
+      return new DCOperation(left, op.getOperator(), right);
+    } else if (ent instanceof DCListExpression) {
+      List<DCEntity> items = ((DCListExpression) ent).getItems();
+      return numberAll(items) ? new DCListExpression(items) : ent;
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      List<DCEntity> params = new ArrayList<>(func.getParams());
+      boolean changed = numberAll(params);
+      for (DCEntity param : params) {
+        if (Functions.refersToParams(param)) {
+          throw new DiceCalcException(new IllegalArgumentException(
+              "A placeholder can't be used in the parameters of `"
+                  + func.getName() + "`."));
+        }
+      }
+      
+      int index = names.indexOf(func.getName().toLowerCase());
+      if (index >= 0) {
+        return new DCFunction(Integer.toString(index + 1), params);
+      }
+      return changed ? new DCFunction(func.getName(), params) : func;
+    } else {
+      return ent;
+    }
+  }
+  
+  /**
+   * Numbers the placeholders in each entity of a list in place.
+   * 
+   * @return Whether any of them changed.
+   */
+  private boolean numberAll(List<DCEntity> ents) {
+    boolean changed = false;
+    for (int i = 0; i < ents.size(); i++) {
+      DCEntity numbered = number(ents.get(i));
+      if (numbered != ents.get(i)) {
+        ents.set(i, numbered);
+        changed = true;
+      }
+    }
+    return changed;
+  }
+}
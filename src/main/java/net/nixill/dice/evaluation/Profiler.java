@@ -0,0 +1,441 @@
+package net.nixill.dice.evaluation;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.nixill.dice.evaluation.Governor.Budget;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.Functions;
+
+/**
+ * An {@link Evaluator} that measures where the time goes, per node.
+ * <p>
+ * For every operation, function call and list in the expressions it
+ * evaluates, and in the saved functions they call, the profiler counts how
+ * many times the node was evaluated, how long it took including and
+ * excluding the nodes within it, and how many dice and list items it made
+ * itself (as a {@link Governor} counts them). The figures add up over
+ * every evaluation until {@link #reset()}, and can be read for a node with
+ * {@link #getStats(DCEntity)} or for everything with {@link #render()},
+ * which looks like {@link DCEntity#printTree(int) printTree} with the
+ * figures added.
+ * <p>
+ * The expression is evaluated through a copy of its tree made of nodes
+ * that measure themselves, and which behave and render exactly like the
+ * originals; saved functions are copied the first time they're called.
+ * Nothing is measured outside a profiler, so evaluating any other way
+ * costs nothing extra. The evaluation recurses like
+ * {@link RecursiveEvaluator}, and a profiler must only be used by one
+ * thread at a time.
+ */
+public class Profiler implements Evaluator {
+  private final Map<DCEntity, DCEntity> copies = new IdentityHashMap<>();
+  private final Map<DCEntity, Stats>    stats  = new IdentityHashMap<>();
+  private final List<DCEntity>          roots  = new ArrayList<>();
+  private final List<String>            names  = new ArrayList<>();
+  private final List<DCEntity>          bodies = new ArrayList<>();
+  private final ArrayList<Frame>        frames = new ArrayList<>();
+  private Budget                        budget;
+  
+  @Override
+  public DCValue evaluate(DCEntity ent) {
+    if (!roots.contains(ent)) {
+      roots.add(ent);
+    }
+    DCEntity copy = copy(ent);
+    
+    Budget outer = Governor.getBudget();
+    if (outer != null) {
+      // Count against the budget that's already there, so its limits
+      // still apply.
+      return run(copy, outer);
+    }
+    
+    long none = Governor.UNLIMITED;
+    return new Governor(copied -> run(copied, Governor.getBudget()), none,
+        none, none, none).evaluate(copy);
+  }
+  
+  private DCValue run(DCEntity copy, Budget budget) {
+    this.budget = budget;
+    try {
+      return EvaluationGuard.evaluate(copy::getValue);
+    } finally {
+      frames.clear();
+      this.budget = null;
+    }
+  }
+  
+  /**
+   * Returns the figures for a node of an expression or saved function
+   * that was evaluated.
+   * 
+   * @param node
+   *   The node, from the original tree.
+   * @return Its figures, or <code>null</code> if it hasn't been evaluated
+   *   by this profiler.
+   */
+  public Stats getStats(DCEntity node) {
+    return stats.get(node);
+  }
+  
+  /**
+   * Forgets everything that's been measured.
+   */
+  public void reset() {
+    copies.clear();
+    stats.clear();
+    roots.clear();
+    names.clear();
+    bodies.clear();
+  }
+  
+  /**
+   * Renders every expression that was evaluated, followed by every saved
+   * function that was called, as a tree with the figures of each node.
+   * 
+   * @return The rendered trees.
+   */
+  public String render() {
+    StringBuilder out = new StringBuilder();
+    for (DCEntity root : roots) {
+      render(out, root, 0);
+    }
+    for (int i = 0; i < bodies.size(); i++) {
+      out.append("Saved function \"").append(names.get(i))
+          .append("\":\n");
+      render(out, bodies.get(i), 1);
+    }
+    return out.toString();
+  }
+  
+  /**
+   * Prints the trees from {@link #render()}.
+   */
+  public void print() {
+    System.out.print(render());
+  }
+  
+  private void render(StringBuilder out, DCEntity ent, int level) {
+    for (int i = 0; i < level; i++) {
+      out.append("  ");
+    }
+    
+    List<DCEntity> parts = new ArrayList<>();
+    if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      out.append("Operator \"").append(op.getOperator().getSymbol())
+          .append("\"");
+      if (op.getLeft() != null) {
+        parts.add(op.getLeft());
+      }
+      if (op.getRight() != null) {
+        parts.add(op.getRight());
+      }
+    } else if (ent instanceof DCListExpression) {
+      parts.addAll(((DCListExpression) ent).getItems());
+      out.append("List: ").append(parts.size()).append(" item(s)");
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      parts.addAll(func.getParams());
+      out.append("Function \"").append(func.getName()).append("\": ")
+          .append(parts.size()).append(" param(s)");
+    } else {
+      out.append(ent.toCode());
+    }
+    
+    Stats stat = stats.get(ent);
+    if (stat != null) {
+      out.append("  ").append(stat);
+    }
+    out.append('\n');
+    
+    for (DCEntity part : parts) {
+      render(out, part, level + 1);
+    }
+  }
+  
+  /**
+   * Returns the measuring copy of a node, making it if there isn't one.
+   * Values, and nodes that aren't operations, lists or functions, are
+   * their own copies.
+   */
+  private DCEntity copy(DCEntity ent) {
+    DCEntity copy = copies.get(ent);
+    if (copy != null) {
+      return copy;
+    }
+    
+    if (ent instanceof Copy) {
+      return ent;
+    } else if (ent instanceof DCOperation) {
+      DCOperation op = (DCOperation) ent;
+      copy = new CopiedOperation(op, copyOf(op.getLeft()),
+          copyOf(op.getRight()));
+    } else if (ent instanceof DCListExpression) {
+      List<DCEntity> items = new ArrayList<>();
+      for (DCEntity item : ((DCListExpression) ent).getItems()) {
+        items.add(copy(item));
+      }
+      copy = new CopiedList((DCListExpression) ent, items);
+    } else if (ent instanceof DCFunction) {
+      DCFunction func = (DCFunction) ent;
+      List<DCEntity> params = new ArrayList<>();
+      for (DCEntity param : func.getParams()) {
+        params.add(copy(param));
+      }
+      copy = new CopiedFunction(func, params);
+    } else {
+      return ent;
+    }
+    
+    copies.put(ent, copy);
+    return copy;
+  }
+  
+  private DCEntity copyOf(DCEntity ent) {
+    return (ent == null) ? null : copy(ent);
+  }
+  
+  private Stats stats(DCEntity source) {
+    Stats stat = stats.get(source);
+    if (stat == null) {
+      stat = new Stats();
+      stats.put(source, stat);
+    }
+    return stat;
+  }
+  
+  private Frame enter() {
+    Frame frame = new Frame(budget.getDice(), budget.getItems());
+    frames.add(frame);
+    return frame;
+  }
+  
+  private void exit(Frame frame, DCEntity source) {
+    long nanos = System.nanoTime() - frame.start;
+    long dice = budget.getDice() - frame.dice;
+    long items = budget.getItems() - frame.items;
+    
+    // An exception may have skipped the frames of nodes inside this one.
+    frames.subList(frames.lastIndexOf(frame), frames.size()).clear();
+    
+    Stats stat = stats(source);
+    stat.calls++;
+    stat.nanos += nanos;
+    stat.selfNanos += nanos - frame.childNanos;
+    stat.dice += dice - frame.childDice;
+    stat.items += items - frame.childItems;
+    
+    if (!frames.isEmpty()) {
+      Frame parent = frames.get(frames.size() - 1);
+      parent.childNanos += nanos;
+      parent.childDice += dice;
+      parent.childItems += items;
+    }
+  }
+  
+  /**
+   * The figures for one node.
+   */
+  public static class Stats {
+    private long calls;
+    private long nanos;
+    private long selfNanos;
+    private long dice;
+    private long items;
+    
+    private Stats() {
+    }
+    
+    /**
+     * Returns how many times the node was evaluated.
+     * 
+     * @return The number of evaluations.
+     */
+    public long getCalls() {
+      return calls;
+    }
+    
+    /**
+     * Returns how long evaluating the node took in total, including the
+     * nodes within it.
+     * 
+     * @return The time in nanoseconds.
+     */
+    public long getNanos() {
+      return nanos;
+    }
+    
+    /**
+     * Returns how long evaluating the node took in total, not including
+     * the nodes within it.
+     * 
+     * @return The time in nanoseconds.
+     */
+    public long getSelfNanos() {
+      return selfNanos;
+    }
+    
+    /**
+     * Returns how many dice the node rolled itself.
+     * 
+     * @return The number of dice.
+     */
+    public long getDice() {
+      return dice;
+    }
+    
+    /**
+     * Returns how many list items the node made itself.
+     * 
+     * @return The number of items.
+     */
+    public long getItems() {
+      return items;
+    }
+    
+    @Override
+    public String toString() {
+      return String.format(
+          "[calls: %d, total: %.3f ms, self: %.3f ms, dice: %d, items: %d]",
+          calls, nanos / 1e6, selfNanos / 1e6, dice, items);
+    }
+  }
+  
+  /**
+   * A node that's being evaluated.
+   */
+  private static class Frame {
+    private final long start = System.nanoTime();
+    private final long dice;
+    private final long items;
+    private long       childNanos;
+    private long       childDice;
+    private long       childItems;
+    
+    private Frame(long dice, long items) {
+      this.dice = dice;
+      this.items = items;
+    }
+  }
+  
+  /**
+   * A measuring copy of a node.
+   */
+  private interface Copy {
+  }
+  
+  private class CopiedOperation extends DCOperation implements Copy {
+    private final DCEntity source;
+    
+    private CopiedOperation(DCOperation source, DCEntity left,
+        DCEntity right) {
+      super(left, source.getOperator(), right);
+      this.source = source;
+    }
+    
+    @Override
+    public DCValue getValue() {
+      Frame frame = enter();
+      try {
+        return super.getValue();
+      } finally {
+        exit(frame, source);
+      }
+    }
+    
+    @Override
+    public double evaluateDouble() {
+      if (FunctionHistory.isRecording()) {
+        // This evaluates it with getValue(), which measures it.
+        return super.evaluateDouble();
+      }
+      
+      Frame frame = enter();
+      try {
+        return super.evaluateDouble();
+      } finally {
+        exit(frame, source);
+      }
+    }
+  }
+  
+  private class CopiedList extends DCListExpression implements Copy {
+    private final DCEntity source;
+    
+    private CopiedList(DCListExpression source, List<DCEntity> items) {
+      super(items);
+      this.source = source;
+    }
+    
+    @Override
+    public DCList getValue() {
+      Frame frame = enter();
+      try {
+        return super.getValue();
+      } finally {
+        exit(frame, source);
+      }
+    }
+  }
+  
+  private class CopiedFunction extends DCFunction implements Copy {
+    private final DCEntity source;
+    
+    private CopiedFunction(DCFunction source, List<DCEntity> params) {
+      super(source.getName(), params);
+      this.source = source;
+    }
+    
+    @Override
+    public DCValue getValue() {
+      Frame frame = enter();
+      try {
+        Governor.step();
+        DCEntity ent = getSaved();
+        
+        recordCall(ent);
+        
+        if (ent instanceof DCExpression) {
+          DCEntity body = body(ent);
+          stackParams();
+          DCValue val = body.getValue();
+          Functions.unstackParams();
+          
+          return val;
+        } else {
+          return ent.getValue();
+        }
+      } finally {
+        exit(frame, source);
+      }
+    }
+    
+    /**
+     * Returns the measuring copy of a function's saved entity, noting it
+     * to be rendered if it hasn't been copied before.
+     */
+    private DCEntity body(DCEntity ent) {
+      if (ent instanceof Copy || copies.containsKey(ent)) {
+        return copy(ent);
+      }
+      
+      DCEntity copy = copy(ent);
+      if (copy != ent) {
+        names.add(getName());
+        bodies.add(ent);
+      }
+      return copy;
+    }
+  }
+}
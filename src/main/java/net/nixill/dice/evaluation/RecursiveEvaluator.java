@@ -0,0 +1,20 @@
+package net.nixill.dice.evaluation;
+
+import net.nixill.dice.exception.EvaluationLimitException;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCValue;
+
+/**
+ * An {@link Evaluator} that calls {@link DCEntity#getValue()}, which
+ * recurses through the tree on the thread's stack.
+ * <p>
+ * How deep it can go depends on the size of that stack. Running out of it
+ * is reported as an {@link EvaluationLimitException}, and any function
+ * parameters left on the stack by the failed evaluation are removed.
+ */
+public class RecursiveEvaluator implements Evaluator {
+  @Override
+  public DCValue evaluate(DCEntity ent) {
+    return EvaluationGuard.evaluate(ent::getValue);
+  }
+}
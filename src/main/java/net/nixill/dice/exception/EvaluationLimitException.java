@@ -0,0 +1,19 @@
+package net.nixill.dice.exception;
+
+/**
+ * Thrown when an evaluation goes deeper or further than it's allowed to,
+ * such as a function that calls itself forever or an expression that
+ * rolls more dice than a {@link net.nixill.dice.evaluation.Governor
+ * Governor} allows. Evaluations that are interrupted, or run out of time,
+ * are stopped with one too.
+ */
+public class EvaluationLimitException extends DiceCalcException {
+  private static final long serialVersionUID = 2310568514263390471L;
+  
+  /**
+   * Creates a new EvaluationLimitException with an underlying message.
+   */
+  public EvaluationLimitException(String msg) {
+    super(msg);
+  }
+}
\ No newline at end of file
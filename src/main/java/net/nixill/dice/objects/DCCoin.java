@@ -1,5 +1,7 @@
 package net.nixill.dice.objects;
 
+import net.nixill.dice.evaluation.Governor;
+
 /**
  * Represents a coin, which is a DCSingle that can only have two states - 0
  * or its potential value.
@@ -32,7 +34,12 @@ public class DCCoin extends DCSingle {
    *   The potential value - the value for heads.
    */
   public DCCoin(double potent) {
-    this(potent, Randomizer.get().nextBoolean());
+    this(potent, flip());
+  }
+  
+  private static boolean flip() {
+    Governor.roll(1);
+    return Randomizer.get().nextBoolean();
   }
   
   /**
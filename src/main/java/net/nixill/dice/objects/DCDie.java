@@ -1,5 +1,7 @@
 package net.nixill.dice.objects;
 
+import net.nixill.dice.evaluation.Governor;
+
 /**
  * Represents a die, which is a random number between 1 and its potential.
  */
@@ -32,12 +34,24 @@ public class DCDie extends DCSingle {
    * value between 0 (inclusive) and 1 (exclusive).
    */
   public DCDie(double sides) {
+    Governor.roll(1);
     sides = Math.floor(sides);
     potential = sides;
+    value = roll(sides);
+  }
+  
+  /**
+   * Rolls a die without creating it, returning just its value.
+   * 
+   * @param sides
+   *   The number of sides, which must already be a whole number.
+   * @return The value that <code>new DCDie(sides)</code> would have.
+   */
+  static double roll(double sides) {
     if (sides >= 2) {
-      value = (double) (Randomizer.get().nextInt((int) sides) + 1);
+      return (double) (Randomizer.get().nextInt((int) sides) + 1);
     } else if (sides == 1) {
-      value = Randomizer.get().nextDouble();
+      return Randomizer.get().nextDouble();
     } else {
       throw new IllegalArgumentException(
           "Dice must have at least one side.");
@@ -14,6 +14,19 @@ import net.nixill.dice.parsing.ExpressionSplitter;
 public abstract class DCEntity {
   public abstract DCValue getValue();
   
+  /**
+   * Evaluates the entity as a single number.
+   * <p>
+   * This always gives the same number as
+   * <code>getValue().getSingle().getAmount()</code>, with the same dice
+   * rolled, but subclasses may skip creating the values in between.
+   * 
+   * @return The amount of the entity's value as a single.
+   */
+  public double evaluateDouble() {
+    return getValue().getSingle().getAmount();
+  }
+  
   /**
    * A number formatter for decimals.
    */
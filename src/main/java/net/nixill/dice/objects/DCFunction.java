@@ -4,11 +4,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import net.nixill.dice.evaluation.Governor;
 import net.nixill.dice.exception.DiceCalcException;
 import net.nixill.dice.exception.NoSuchFunctionException;
 import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.FunctionMemo;
 import net.nixill.dice.operations.Functions;
-import net.nixill.dice.operations.FunctionHistory.HistoryEntry;
 
 /**
  * A named function, with or without parameters.
@@ -38,7 +39,8 @@ public class DCFunction extends DCExpression {
    * Runs the function and returns its final value.
    * <p>
    * This operation gets the entity named by this function, then gets the
-   * value of that entity.
+   * value of that entity. Calls to deterministic functions are
+   * remembered by {@link FunctionMemo}.
    * <p>
    * To simply retrieve the named entity, use {@link #getSaved()}.
    * 
@@ -47,24 +49,41 @@ public class DCFunction extends DCExpression {
    */
   @Override
   public DCValue getValue() {
+    Governor.step();
     DCEntity ent = getSaved();
     
-    if (!(ent instanceof DCCodeFunction) && !name.matches("\\d+")) {
-      FunctionHistory
-          .add(new HistoryEntry(1, "{" + name + "} => " + ent.toString()));
-    }
+    recordCall(ent);
     
     if (ent instanceof DCExpression) {
-      Functions.stackParams(params);
-      DCValue val = ent.getValue();
-      Functions.unstackParams();
-      
-      return val;
+      return FunctionMemo.evaluate(this, ent);
     } else {
       return ent.getValue();
     }
   }
   
+  /**
+   * Records in the history that this function was called, unless it's
+   * built in or a function parameter.
+   * 
+   * @param ent
+   *   The entity named by this function, from {@link #getSaved()}.
+   */
+  public void recordCall(DCEntity ent) {
+    if (FunctionHistory.isRecording() && !(ent instanceof DCCodeFunction)
+        && !Functions.isParam(name)) {
+      FunctionHistory.add(1, () -> "{" + name + "} => " + ent.toString());
+    }
+  }
+  
+  /**
+   * Puts this function's parameters on the stack, as they are while the
+   * entity it names is evaluated. They should be removed with
+   * {@link Functions#unstackParams()} afterwards.
+   */
+  public void stackParams() {
+    Functions.stackParams(params);
+  }
+  
   /**
    * Gets the entity named by this function.
    * 
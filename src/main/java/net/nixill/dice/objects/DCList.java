@@ -3,6 +3,8 @@ package net.nixill.dice.objects;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import net.nixill.dice.evaluation.Governor;
+
 /**
  * A list of resolved, unchanging values.
  */
@@ -13,20 +15,36 @@ public class DCList extends DCValue {
    * Creates a new list of values.
    */
   public DCList(Collection<DCValue> items) {
+    Governor.allocate(items.size());
     listItems = new ArrayList<>(items);
   }
   
+  /**
+   * Creates a list without a backing {@link ArrayList}, for subclasses
+   * that store their items some other way. Such subclasses must override
+   * {@link #getSingle()}, {@link #getItems()}, {@link #size()} and
+   * {@link #get(int)}.
+   */
+  protected DCList() {
+    listItems = null;
+  }
+  
   /**
    * Casts this DCList to a {@link DCSingle} by taking the sum of all of
    * its items.
    */
   @Override
   public DCSingle getSingle() {
+    return new DCNumber(evaluateDouble());
+  }
+  
+  @Override
+  public double evaluateDouble() {
     double sum = 0;
     for (DCValue val : listItems) {
-      sum += val.getSingle().getAmount();
+      sum += val.evaluateDouble();
     }
-    return new DCNumber(sum);
+    return sum;
   }
   
   /**
@@ -44,8 +62,8 @@ public class DCList extends DCValue {
   public DCString getString() {
     StringBuilder out = new StringBuilder();
     
-    for (DCValue val : listItems) {
-      char chr = (char) val.getSingle().value;
+    for (int i = 0; i < size(); i++) {
+      char chr = (char) get(i).getSingle().value;
       out.append(chr);
     }
     
@@ -85,7 +103,8 @@ public class DCList extends DCValue {
    * @return <code>true</code> iff any sub-item is a string.
    */
   public boolean containsString() {
-    for (DCValue val : listItems) {
+    for (int i = 0; i < size(); i++) {
+      DCValue val = get(i);
       if (val instanceof DCString) {
         return true;
       } else if (val instanceof DCList) {
@@ -100,7 +119,7 @@ public class DCList extends DCValue {
   
   @Override
   public String toString(int lvl) {
-    if (listItems.isEmpty()) {
+    if (size() == 0) {
       return "[]";
     }
     
@@ -111,8 +130,8 @@ public class DCList extends DCValue {
       out = numFormat.format(getSingle().getAmount()) + " [";
     }
     
-    for (DCValue val : listItems) {
-      out += val.toString(lvl - 1) + ", ";
+    for (int i = 0; i < size(); i++) {
+      out += get(i).toString(lvl - 1) + ", ";
     }
     out = out.substring(0, out.length() - 2) + "]";
     return out;
@@ -120,13 +139,13 @@ public class DCList extends DCValue {
   
   @Override
   public String toCode() {
-    if (listItems.isEmpty()) {
+    if (size() == 0) {
       return "[]";
     }
     
     String out = "[";
-    for (DCValue val : listItems) {
-      out += val.toCode() + ",";
+    for (int i = 0; i < size(); i++) {
+      out += get(i).toCode() + ",";
     }
     out = out.substring(0, out.length() - 1) + "]";
     return out;
@@ -134,9 +153,9 @@ public class DCList extends DCValue {
   
   @Override
   public void printTree(int level) {
-    printSpaced(level, "List: " + listItems.size() + " item(s)");
-    for (DCValue val : listItems) {
-      val.printTree(level + 1);
+    printSpaced(level, "List: " + size() + " item(s)");
+    for (int i = 0; i < size(); i++) {
+      get(i).printTree(level + 1);
     }
   }
 }
\ No newline at end of file
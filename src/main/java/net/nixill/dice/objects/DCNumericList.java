@@ -0,0 +1,325 @@
+package net.nixill.dice.objects;
+
+import java.util.ArrayList;
+
+import net.nixill.dice.evaluation.Governor;
+
+/**
+ * A list of numbers and dice, stored as arrays of their values and
+ * potentials instead of as separate objects.
+ * <p>
+ * It behaves exactly like a {@link DCList} of the same {@link DCDie}s and
+ * {@link DCNumber}s; those objects are only created when an item is asked
+ * for with {@link #get(int)} or {@link #getItems()}.
+ */
+public class DCNumericList extends DCList {
+  private final double[]  values;
+  private final double[]  potentials;
+  private final boolean[] dice;
+  private final boolean   allDice;
+  
+  /**
+   * Creates a new list from arrays of values and potentials. The arrays
+   * are used directly, so they must not be changed afterwards.
+   * 
+   * @param values
+   *   The value of each item.
+   * @param potentials
+   *   The potential of each item.
+   * @param dice
+   *   Whether each item is a die (otherwise it's a number), or
+   *   <code>null</code> if no item is a die.
+   */
+  public DCNumericList(double[] values, double[] potentials,
+      boolean[] dice) {
+    this(values, potentials, dice, false);
+    Governor.allocate(values.length);
+  }
+  
+  private DCNumericList(double[] values, double[] potentials,
+      boolean[] dice, boolean allDice) {
+    this.values = values;
+    this.potentials = potentials;
+    this.dice = dice;
+    this.allDice = allDice;
+  }
+  
+  /**
+   * Rolls a number of dice, all with the same number of sides.
+   * <p>
+   * The dice are rolled in the same order, with the same results, as
+   * creating that many <code>new DCDie(sides)</code>s would.
+   * 
+   * @param count
+   *   The number of dice to roll.
+   * @param sides
+   *   The number of sides on each die.
+   * @return The list of rolled dice.
+   */
+  public static DCNumericList roll(int count, double sides) {
+    sides = Math.floor(sides);
+    Governor.roll(count);
+    Governor.allocate(count);
+    double[] values = new double[count];
+    double[] potentials = new double[count];
+    
+    for (int i = 0; i < count; i++) {
+      values[i] = DCDie.roll(sides);
+      potentials[i] = sides;
+    }
+    
+    return new DCNumericList(values, potentials, null, true);
+  }
+  
+  /**
+   * Rolls a number of dice, all with the same number of sides, and adds
+   * them up without keeping them.
+   * <p>
+   * The dice are rolled in the same order, with the same results, as
+   * {@link #roll(int, double)}, and the total is the amount of the
+   * {@link #getSingle() single value} of its list.
+   * 
+   * @param count
+   *   The number of dice to roll.
+   * @param sides
+   *   The number of sides on each die.
+   * @return The total of the rolled dice.
+   */
+  public static double rollSum(int count, double sides) {
+    sides = Math.floor(sides);
+    Governor.roll(count);
+    double sum = 0;
+    
+    for (int i = 0; i < count; i++) {
+      sum += DCDie.roll(sides);
+    }
+    
+    return sum;
+  }
+  
+  /**
+   * Rolls a number of dice, all with the same number of sides, and makes
+   * them negative. The result is the same as {@link #negate() negating}
+   * the list from {@link #roll(int, double)}.
+   * 
+   * @param count
+   *   The number of dice to roll.
+   * @param sides
+   *   The number of sides on each die.
+   * @return The list of negative rolls.
+   */
+  public static DCNumericList rollNegative(int count, double sides) {
+    sides = Math.floor(sides);
+    Governor.roll(count);
+    Governor.allocate(count);
+    double[] values = new double[count];
+    double[] potentials = new double[count];
+    
+    for (int i = 0; i < count; i++) {
+      values[i] = -DCDie.roll(sides);
+      potentials[i] = sides;
+    }
+    
+    return new DCNumericList(values, potentials, null, false);
+  }
+  
+  /**
+   * Rolls a number of dice, all with the same number of sides, followed
+   * by a number. The result is the same as {@link #join(DCValue, DCValue)
+   * joining} the list from {@link #roll(int, double)} and the number.
+   * 
+   * @param count
+   *   The number of dice to roll.
+   * @param sides
+   *   The number of sides on each die.
+   * @param number
+   *   The number to add to the end of the list.
+   * @return The list of rolls and the number.
+   */
+  public static DCNumericList rollJoin(int count, double sides,
+      DCNumber number) {
+    sides = Math.floor(sides);
+    Governor.roll(count);
+    Governor.allocate(count + 1L);
+    double[] values = new double[count + 1];
+    double[] potentials = new double[count + 1];
+    boolean[] dice = new boolean[count + 1];
+    
+    for (int i = 0; i < count; i++) {
+      values[i] = DCDie.roll(sides);
+      potentials[i] = sides;
+      dice[i] = true;
+    }
+    values[count] = number.getAmount();
+    potentials[count] = number.getPotential();
+    
+    return new DCNumericList(values, potentials, dice, false);
+  }
+  
+  /**
+   * Returns whether a value can be stored in a DCNumericList without
+   * changing how it behaves: a DCNumericList, a {@link DCDie} or a
+   * {@link DCNumber}.
+   * 
+   * @param val
+   *   The value to check.
+   * @return <code>true</code> iff the value is numeric.
+   */
+  public static boolean isNumeric(DCValue val) {
+    return val instanceof DCNumericList || val instanceof DCDie
+        || val instanceof DCNumber;
+  }
+  
+  /**
+   * Joins two numeric values into a single list, as if by appending the
+   * items of the right to the items of the left. A single value counts as
+   * a list of one item.
+   * 
+   * @param left
+   *   The first value, which must be {@link #isNumeric(DCValue) numeric}.
+   * @param right
+   *   The second value, which must be {@link #isNumeric(DCValue)
+   *   numeric}.
+   * @return The joined list.
+   */
+  public static DCNumericList join(DCValue left, DCValue right) {
+    DCNumericList leftList = from(left);
+    DCNumericList rightList = from(right);
+    
+    int leftSize = leftList.size();
+    int size = leftSize + rightList.size();
+    Governor.allocate(size);
+    double[] values = new double[size];
+    double[] potentials = new double[size];
+    
+    System.arraycopy(leftList.values, 0, values, 0, leftSize);
+    System.arraycopy(rightList.values, 0, values, leftSize,
+        rightList.size());
+    System.arraycopy(leftList.potentials, 0, potentials, 0, leftSize);
+    System.arraycopy(rightList.potentials, 0, potentials, leftSize,
+        rightList.size());
+    
+    if (leftList.dice == null && rightList.dice == null
+        && leftList.allDice == rightList.allDice) {
+      return new DCNumericList(values, potentials, null,
+          leftList.allDice);
+    }
+    
+    boolean[] dice = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      dice[i] = (i < leftSize) ? leftList.isDie(i)
+          : rightList.isDie(i - leftSize);
+    }
+    return new DCNumericList(values, potentials, dice, false);
+  }
+  
+  private static DCNumericList from(DCValue val) {
+    if (val instanceof DCNumericList) {
+      return (DCNumericList) val;
+    }
+    
+    DCSingle single = (DCSingle) val;
+    return new DCNumericList(new double[] { single.getAmount() },
+        new double[] { single.getPotential() }, null,
+        single instanceof DCDie);
+  }
+  
+  /**
+   * Returns a list with every item made negative. Negative items are
+   * always numbers, but keep the potential they had.
+   * 
+   * @return The negative list.
+   */
+  public DCNumericList negate() {
+    Governor.allocate(values.length);
+    double[] out = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      out[i] = -values[i];
+    }
+    return new DCNumericList(out, potentials, null, false);
+  }
+  
+  /**
+   * Returns the value of an item without creating it.
+   * 
+   * @param i
+   *   The index of the item.
+   * @return Its value.
+   */
+  public double getAmount(int i) {
+    return values[i];
+  }
+  
+  /**
+   * Returns the potential of an item without creating it.
+   * 
+   * @param i
+   *   The index of the item.
+   * @return Its potential.
+   */
+  public double getPotential(int i) {
+    return potentials[i];
+  }
+  
+  /**
+   * Returns whether an item is a die, without creating it.
+   * 
+   * @param i
+   *   The index of the item.
+   * @return <code>true</code> iff it's a {@link DCDie}.
+   */
+  public boolean isDie(int i) {
+    return (dice == null) ? allDice : dice[i];
+  }
+  
+  @Override
+  public DCSingle getSingle() {
+    return new DCNumber(evaluateDouble());
+  }
+  
+  @Override
+  public double evaluateDouble() {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+  
+  @Override
+  public DCString getString() {
+    StringBuilder out = new StringBuilder(values.length);
+    for (double value : values) {
+      out.append((char) value);
+    }
+    return new DCString(out.toString());
+  }
+  
+  @Override
+  public ArrayList<DCValue> getItems() {
+    ArrayList<DCValue> out = new ArrayList<>(values.length);
+    for (int i = 0; i < values.length; i++) {
+      out.add(get(i));
+    }
+    return out;
+  }
+  
+  @Override
+  public int size() {
+    return values.length;
+  }
+  
+  @Override
+  public DCValue get(int i) {
+    if (isDie(i)) {
+      return new DCDie(potentials[i], values[i]);
+    } else {
+      return new DCNumber(values[i], potentials[i]);
+    }
+  }
+  
+  @Override
+  public boolean containsString() {
+    return false;
+  }
+}
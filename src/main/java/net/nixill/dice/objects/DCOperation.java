@@ -2,7 +2,6 @@ package net.nixill.dice.objects;
 
 import net.nixill.dice.operations.BinaryOperator;
 import net.nixill.dice.operations.FunctionHistory;
-import net.nixill.dice.operations.FunctionHistory.HistoryEntry;
 import net.nixill.dice.operations.Operator;
 import net.nixill.dice.operations.PostfixOperator;
 import net.nixill.dice.operations.PrefixOperator;
@@ -80,15 +79,57 @@ public class DCOperation extends DCExpression {
       val = ((PostfixOperator<?>) oper).run(left);
     }
     
-    String code = toCode();
-    String out = val.toCode();
+    recordHistory(this, oper.getLevel(), val);
     
-    if (!code.equals(out)) {
-      FunctionHistory.add(new HistoryEntry(oper.getLevel(),
-          toCode() + " => " + val.toString()));
+    return val;
+  }
+  
+  /**
+   * {@inheritDoc}
+   * <p>
+   * While history isn't being recorded, this runs the operator's
+   * {@link BinaryOperator#runDouble(DCEntity, DCEntity) double function},
+   * if it has one.
+   */
+  @Override
+  public double evaluateDouble() {
+    if (FunctionHistory.isRecording()) {
+      return super.evaluateDouble();
     }
     
-    return val;
+    if (oper instanceof BinaryOperator) {
+      return ((BinaryOperator<?>) oper).runDouble(left, right);
+    } else if (oper instanceof PrefixOperator) {
+      return ((PrefixOperator<?>) oper).runDouble(right);
+    } else if (oper instanceof PostfixOperator) {
+      return ((PostfixOperator<?>) oper).runDouble(left);
+    } else {
+      return super.evaluateDouble();
+    }
+  }
+  
+  /**
+   * Records that an expression was evaluated to a value, unless the value
+   * looks exactly like the expression. The check and the text are only
+   * worked out if the history is read.
+   * 
+   * @param exp
+   *   The expression that was evaluated.
+   * @param level
+   *   The level of the history entry.
+   * @param val
+   *   The value it was evaluated to.
+   */
+  public static void recordHistory(DCEntity exp, int level, DCValue val) {
+    if (FunctionHistory.isRecording()) {
+      FunctionHistory.add(level, () -> {
+        String code = exp.toCode();
+        if (code.equals(val.toCode())) {
+          return null;
+        }
+        return code + " => " + val.toString();
+      });
+    }
   }
   
   @Override
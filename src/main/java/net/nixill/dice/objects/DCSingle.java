@@ -39,6 +39,11 @@ public abstract class DCSingle extends DCValue {
     return value;
   }
   
+  @Override
+  public double evaluateDouble() {
+    return value;
+  }
+  
   /**
    * Returns the potential amount of this DCSingle.
    * 
@@ -23,6 +23,11 @@ public class DCString extends DCValue {
     return new DCNumber(value.length());
   }
   
+  @Override
+  public double evaluateDouble() {
+    return value.length();
+  }
+  
   /**
    * Returns this String as a list by taking all of its character codes.
    */
@@ -27,4 +27,14 @@ public class Randomizer {
   public static void setSeed(long seed) {
     randoms.set(new Random(seed));
   }
+  
+  /**
+   * Replaces the Random used by the current thread.
+   * 
+   * @param rand
+   *   The Random to use
+   */
+  public static void set(Random rand) {
+    randoms.set(rand);
+  }
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package net.nixill.dice.operations;
 
 import java.util.function.BiFunction;
+import java.util.function.ToDoubleBiFunction;
 
+import net.nixill.dice.evaluation.Governor;
 import net.nixill.dice.objects.DCEntity;
 import net.nixill.dice.objects.DCValue;
 
@@ -9,7 +11,9 @@ import net.nixill.dice.objects.DCValue;
  * A binary operator, i.e. one that has operands on both sides.
  */
 public class BinaryOperator<R extends DCValue> extends Operator {
-  protected BiFunction<DCEntity, DCEntity, R> func;
+  protected BiFunction<DCEntity, DCEntity, R>       func;
+  protected ToDoubleBiFunction<DCEntity, DCEntity> doubleFunc;
+  protected BiFunction<DCEntity, DCValue, DCEntity> choice;
   
   /**
    * Creates a new BinaryOperator.
@@ -37,9 +41,96 @@ public class BinaryOperator<R extends DCValue> extends Operator {
    * @return The result of the operation.
    */
   public R run(DCEntity left, DCEntity right) {
+    Governor.step();
     return func.apply(left, right);
   }
   
+  /**
+   * Run the operation with a left- and a right-hand operand, and return
+   * the amount of its result as a single. This uses the
+   * {@link #setDoubleFunction(ToDoubleBiFunction) double function} if
+   * there is one.
+   * 
+   * @param left
+   *   The operand on the left.
+   * @param right
+   *   The operand on the right.
+   * @return The amount of the result of the operation.
+   */
+  public double runDouble(DCEntity left, DCEntity right) {
+    Governor.step();
+    if (doubleFunc != null) {
+      return doubleFunc.applyAsDouble(left, right);
+    }
+    return func.apply(left, right).getSingle().getAmount();
+  }
+  
+  /**
+   * Sets a function that works out the amount of the operation's result
+   * as a single directly, for {@link #runDouble(DCEntity, DCEntity)}.
+   * <p>
+   * It must give the same amount as the operator's main function would,
+   * and roll the same dice; it should get the amounts of its operands
+   * with {@link DCEntity#evaluateDouble()}.
+   * 
+   * @param doubleFunc
+   *   The function.
+   */
+  public void setDoubleFunction(
+      ToDoubleBiFunction<DCEntity, DCEntity> doubleFunc) {
+    this.doubleFunc = doubleFunc;
+  }
+  
+  /**
+   * Chooses the entity whose value is the result of the operation, given
+   * the unevaluated left operand and the value of the right one. This uses
+   * the {@link #setChoiceFunction(BiFunction) choice function} if there is
+   * one.
+   * 
+   * @param left
+   *   The operand on the left.
+   * @param right
+   *   The value of the operand on the right.
+   * @return The chosen entity, or <code>null</code> if the operator
+   *   doesn't choose one, in which case the left operand should be
+   *   evaluated and the operator run.
+   */
+  public DCEntity choose(DCEntity left, DCValue right) {
+    if (choice != null) {
+      Governor.step();
+      return choice.apply(left, right);
+    }
+    return null;
+  }
+  
+  /**
+   * Returns whether the operator has a
+   * {@link #setChoiceFunction(BiFunction) choice function}, and so may
+   * not evaluate its left operand.
+   * 
+   * @return true iff it has one.
+   */
+  public boolean hasChoiceFunction() {
+    return choice != null;
+  }
+  
+  /**
+   * Sets a function that chooses the entity whose value is the result of
+   * the operation, for {@link #choose(DCEntity, DCValue)}.
+   * <p>
+   * The operator must have the {@link OperandOrder#RIGHT_FIRST RIGHT_FIRST}
+   * order, and, whenever the function chooses an entity, its main function
+   * must evaluate the right operand, then that entity and nothing else,
+   * and return the entity's value.
+   * 
+   * @param choice
+   *   The function.
+   */
+  public void setChoiceFunction(
+      BiFunction<DCEntity, DCValue, DCEntity> choice) {
+    this.choice = choice;
+  }
+  
   public String toString() {
     return "bin:" + symbol;
   }
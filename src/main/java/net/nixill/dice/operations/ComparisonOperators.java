@@ -4,6 +4,7 @@ import java.util.function.BiFunction;
 
 import net.nixill.dice.objects.DCEntity;
 import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.Operator.OperandOrder;
 
 /**
  * A set of eight {@link BinaryOperator}s based on a comparison.
@@ -74,6 +75,55 @@ public class ComparisonOperators<T extends DCValue> {
     NOT_MODULO = new ComparisonOperator(Comparison.NOT_MODULO);
   }
   
+  /**
+   * Sets the order in which all eight operators evaluate their operands.
+   * See {@link Operator#getOperandOrder()}.
+   * 
+   * @param order
+   *   The order, or <code>null</code> if there isn't one.
+   */
+  public void setOperandOrder(OperandOrder order) {
+    GREATER.setOperandOrder(order);
+    EQUAL.setOperandOrder(order);
+    LESS.setOperandOrder(order);
+    NOT_GREATER.setOperandOrder(order);
+    NOT_EQUAL.setOperandOrder(order);
+    NOT_LESS.setOperandOrder(order);
+    MODULO.setOperandOrder(order);
+    NOT_MODULO.setOperandOrder(order);
+  }
+  
+  /**
+   * Sets whether all eight operators are pure. See
+   * {@link Operator#isPure()}.
+   * 
+   * @param pure
+   *   Whether the operators are pure.
+   */
+  public void setPure(boolean pure) {
+    GREATER.setPure(pure);
+    EQUAL.setPure(pure);
+    LESS.setPure(pure);
+    NOT_GREATER.setPure(pure);
+    NOT_EQUAL.setPure(pure);
+    NOT_LESS.setPure(pure);
+    MODULO.setPure(pure);
+    NOT_MODULO.setPure(pure);
+  }
+  
+  /**
+   * Returns whether an operator is one of the eight in this set.
+   * 
+   * @param oper
+   *   The operator.
+   * @return <code>true</code> iff it is.
+   */
+  public boolean contains(Operator oper) {
+    return oper == GREATER || oper == EQUAL || oper == LESS
+        || oper == NOT_GREATER || oper == NOT_EQUAL || oper == NOT_LESS
+        || oper == MODULO || oper == NOT_MODULO;
+  }
+  
   /**
    * The function of a ComparisonOperator, which accepts two
    * {@link DCEntity}s and a {@link Comparison} to produce a result.
@@ -1,27 +1,144 @@
 package net.nixill.dice.operations;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
 
+/**
+ * The per-thread history of an evaluation: the intermediate steps and the
+ * functions that were called along the way.
+ * <p>
+ * Entries are usually added as {@link Supplier}s of their text, which is
+ * only worked out when {@link #getList()} is called. Evaluating an
+ * expression therefore doesn't pay for rendering history that nobody
+ * reads. Recording can also be {@link #setRecording(boolean) switched
+ * off} entirely.
+ */
 public class FunctionHistory {
-  private static ThreadLocal<ArrayList<HistoryEntry>> histories = new ThreadLocal<ArrayList<HistoryEntry>>() {
+  private static ThreadLocal<ArrayList<Pending>> histories = new ThreadLocal<ArrayList<Pending>>() {
     @Override
-    protected ArrayList<HistoryEntry> initialValue() {
+    protected ArrayList<Pending> initialValue() {
       return new ArrayList<>();
     }
   };
   
+  private static ThreadLocal<Boolean> recording = ThreadLocal
+      .withInitial(() -> true);
+  
+  /**
+   * Adds an entry that has already been rendered.
+   * 
+   * @param ent
+   *   The entry to add.
+   */
   public static void add(HistoryEntry ent) {
-    histories.get().add(ent);
+    if (isRecording()) {
+      histories.get().add(new Pending(ent));
+    }
+  }
+  
+  /**
+   * Adds an entry whose text will be worked out when the history is read.
+   * <p>
+   * Anything the supplier refers to must not change in the meantime. If
+   * the supplier returns <code>null</code>, there's no entry after all.
+   * 
+   * @param level
+   *   The level of the entry.
+   * @param text
+   *   The supplier of the entry's text.
+   */
+  public static void add(int level, Supplier<String> text) {
+    if (isRecording()) {
+      histories.get().add(new Pending(level, text));
+    }
   }
   
+  /**
+   * Returns the entries recorded so far on this thread, rendering any
+   * that haven't been yet.
+   * 
+   * @return A new list of the entries.
+   */
   public static ArrayList<HistoryEntry> getList() {
-    return new ArrayList<>(histories.get());
+    ArrayList<Pending> history = histories.get();
+    ArrayList<HistoryEntry> out = new ArrayList<>(history.size());
+    for (Pending pending : history) {
+      HistoryEntry ent = pending.render();
+      if (ent != null) {
+        out.add(ent);
+      }
+    }
+    return out;
   }
   
   public static void clear() {
     histories.remove();
   }
   
+  /**
+   * Returns how many entries have been recorded on the current thread, to
+   * {@link #cut(int) cut} the history there later.
+   * 
+   * @return The number of entries.
+   */
+  public static int mark() {
+    return histories.get().size();
+  }
+  
+  /**
+   * Removes the entries recorded on the current thread since a
+   * {@link #mark()}, so that they can be {@link #paste(Segment) pasted}
+   * into the history elsewhere, such as on another thread.
+   * 
+   * @param mark
+   *   The number of entries to leave.
+   * @return The entries that were removed.
+   */
+  public static Segment cut(int mark) {
+    List<Pending> tail = histories.get().subList(mark,
+        histories.get().size());
+    Segment seg = new Segment(new ArrayList<>(tail));
+    tail.clear();
+    return seg;
+  }
+  
+  /**
+   * Adds entries that were {@link #cut(int) cut} from a history to the
+   * end of the current thread's. They're added even if recording is off,
+   * since they were recorded when it wasn't.
+   * 
+   * @param seg
+   *   The entries to add.
+   */
+  public static void paste(Segment seg) {
+    histories.get().addAll(seg.entries);
+  }
+  
+  /**
+   * Turns recording on or off for the current thread. While it's off,
+   * nothing is added to the history, which is useful for callers that
+   * only want the results of many evaluations.
+   * 
+   * @param record
+   *   Whether to record history.
+   * @return Whether history was being recorded before.
+   */
+  public static boolean setRecording(boolean record) {
+    boolean old = recording.get();
+    recording.set(record);
+    return old;
+  }
+  
+  /**
+   * Returns whether history is being recorded on the current thread.
+   * 
+   * @return <code>true</code> iff history is being recorded.
+   */
+  public static boolean isRecording() {
+    return recording.get();
+  }
+  
   public static class HistoryEntry {
     public final int    level;
     public final String text;
@@ -31,4 +148,47 @@ public class FunctionHistory {
       this.text = text;
     }
   }
-}
\ No newline at end of file
+  
+  /**
+   * Some entries that were {@link FunctionHistory#cut(int) cut} from a
+   * history.
+   */
+  public static class Segment {
+    private final ArrayList<Pending> entries;
+    
+    private Segment(ArrayList<Pending> entries) {
+      this.entries = entries;
+    }
+  }
+  
+  /**
+   * An entry that may not have been rendered yet.
+   */
+  private static class Pending {
+    private final int        level;
+    private Supplier<String> text;
+    private HistoryEntry     rendered;
+    
+    private Pending(HistoryEntry ent) {
+      this.level = ent.level;
+      this.rendered = ent;
+    }
+    
+    private Pending(int level, Supplier<String> text) {
+      this.level = level;
+      this.text = text;
+    }
+    
+    private HistoryEntry render() {
+      if (text != null) {
+        String str = text.get();
+        if (str != null) {
+          rendered = new HistoryEntry(level, str);
+        }
+        // Let go of whatever the supplier was holding on to.
+        text = null;
+      }
+      return rendered;
+    }
+  }
+}
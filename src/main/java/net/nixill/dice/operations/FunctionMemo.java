@@ -0,0 +1,343 @@
+package net.nixill.dice.operations;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.operations.FunctionHistory.Segment;
+
+/**
+ * Remembers the values of calls to saved functions that always give the
+ * same value for the same parameters, so that functions which call
+ * themselves (or each other) with the same parameters over and over only
+ * work each one out once.
+ * <p>
+ * A function can be remembered if what it's saved as is deterministic:
+ * made only of values, lists, {@link Operator#isPure() pure} operators,
+ * its own parameters, and calls to other deterministic saved functions.
+ * Anything that rolls dice, flips coins, shuffles, or reads environment
+ * variables (like <code>{_u}</code>), global variables or built-in
+ * functions isn't. Its parameters have to be deterministic as well, and
+ * mustn't refer to the parameters of the function they're passed from.
+ * They're then evaluated up front, and a call is remembered by the saved
+ * entity and the values of its parameters.
+ * <p>
+ * Remembered calls add the same history they did the first time. At most
+ * {@link #getMaxSize()} calls are remembered, the least recently used
+ * being forgotten first, and everything is forgotten whenever saved
+ * functions {@link Functions#changed() change}, since other functions may
+ * have called the old ones.
+ * <p>
+ * Only the remembered calls themselves are locked, so calls that can't be
+ * remembered never wait for other threads.
+ */
+public class FunctionMemo {
+  /**
+   * The number of calls remembered if it hasn't been set, which is
+   * 10,000.
+   */
+  public static final int DEFAULT_MAX_SIZE = 10000;
+  
+  private static final Map<Identity, Boolean> checked;
+  private static final Calls                  calls;
+  private static volatile int                 maxSize;
+  
+  static {
+    checked = new ConcurrentHashMap<>();
+    calls = new Calls();
+    maxSize = DEFAULT_MAX_SIZE;
+  }
+  
+  private FunctionMemo() {
+  }
+  
+  /**
+   * Returns the most calls that are remembered at once.
+   * 
+   * @return The size limit.
+   */
+  public static int getMaxSize() {
+    return maxSize;
+  }
+  
+  /**
+   * Sets the most calls that are remembered at once. Setting it to 0
+   * switches remembering off.
+   * 
+   * @param size
+   *   The size limit.
+   */
+  public static void setMaxSize(int size) {
+    synchronized (calls) {
+      maxSize = Math.max(0, size);
+      if (calls.size() > maxSize) {
+        calls.clear();
+      }
+    }
+  }
+  
+  /**
+   * Returns how many calls are remembered.
+   * 
+   * @return The number of calls.
+   */
+  public static int size() {
+    synchronized (calls) {
+      return calls.size();
+    }
+  }
+  
+  /**
+   * Forgets every call, and which functions can be remembered.
+   */
+  public static void clear() {
+    synchronized (calls) {
+      calls.clear();
+    }
+    checked.clear();
+  }
+  
+  /**
+   * Evaluates a call to a function, whose parameters haven't been put on
+   * the {@link Functions#stackParams(ArrayList) stack} yet, remembering
+   * or reusing the value if it can.
+   * 
+   * @param func
+   *   The function call.
+   * @param saved
+   *   The expression the function is saved as.
+   * @return The value of the call.
+   */
+  public static DCValue evaluate(DCFunction func, DCEntity saved) {
+    Key key = key(func, saved);
+    if (key == null) {
+      return TailCalls.evaluate(func, saved);
+    }
+    
+    boolean recording = FunctionHistory.isRecording();
+    Call remembered;
+    synchronized (calls) {
+      remembered = calls.get(key);
+    }
+    // A call remembered while nothing was recorded has no history to add.
+    if (remembered != null && (remembered.recorded || !recording)) {
+      if (recording) {
+        FunctionHistory.paste(remembered.history);
+      }
+      return remembered.value;
+    }
+    
+    int mark = FunctionHistory.mark();
+    DCValue val = TailCalls.evaluate(func, saved);
+    Segment history = FunctionHistory.cut(mark);
+    FunctionHistory.paste(history);
+    
+    synchronized (calls) {
+      if (maxSize > 0) {
+        calls.put(key, new Call(val, history, recording));
+      }
+    }
+    return val;
+  }
+  
+  /**
+   * Works out what a call is remembered by.
+   * 
+   * @return The key, or <code>null</code> if the call can't be
+   *   remembered.
+   */
+  private static Key key(DCFunction func, DCEntity saved) {
+    if (maxSize == 0 || !Functions.isUserFunction(func.getName())
+        || !isDeterministic(saved)) {
+      return null;
+    }
+    
+    for (DCEntity param : func.getParams()) {
+      if (!isDeterministic(param) || Functions.refersToParams(param)) {
+        return null;
+      }
+    }
+    
+    // The parameters are deterministic, so evaluating them here gives the
+    // same values as evaluating them in the function, but not the same
+    // history.
+    StringBuilder args = new StringBuilder();
+    boolean old = FunctionHistory.setRecording(false);
+    try {
+      for (DCEntity param : func.getParams()) {
+        args.append(param.getValue().toCode()).append('\n');
+      }
+    } catch (RuntimeException ex) {
+      // The function might not use it, so let it fail there if it does.
+      return null;
+    } finally {
+      FunctionHistory.setRecording(old);
+    }
+    
+    return new Key(saved, args.toString());
+  }
+  
+  /**
+   * Returns whether an entity always has the same value, given the same
+   * function parameters, without doing anything else.
+   * 
+   * @param ent
+   *   The entity.
+   * @return <code>true</code> iff it's checked.
+   */
+  public static boolean isDeterministic(DCEntity ent) {
+    Identity id = new Identity(ent);
+    Boolean known = checked.get(id);
+    if (known != null) {
+      return known;
+    }
+    
+    boolean result = checkDeterministic(ent);
+    // A loader might give a new entity every time, so don't keep them all.
+    // Another thread may check the same entity meanwhile, and get the same
+    // result.
+    if (checked.size() >= Math.max(maxSize, 1)) {
+      checked.clear();
+    }
+    checked.put(id, result);
+    return result;
+  }
+  
+  /**
+   * Checks an entity and everything it refers to, without recursion.
+   * Functions that are reached again are assumed to be deterministic,
+   * since the rest of them is checked anyway.
+   */
+  private static boolean checkDeterministic(DCEntity root) {
+    ArrayList<DCEntity> stack = new ArrayList<>();
+    Map<DCEntity, Boolean> seen = new IdentityHashMap<>();
+    stack.add(root);
+    
+    while (!stack.isEmpty()) {
+      DCEntity ent = stack.remove(stack.size() - 1);
+      if (ent == null || seen.put(ent, true) != null) {
+        continue;
+      }
+      
+      if (ent instanceof DCValue) {
+        continue;
+      } else if (ent instanceof DCOperation) {
+        DCOperation op = (DCOperation) ent;
+        if (!op.getOperator().isPure()) {
+          return false;
+        }
+        stack.add(op.getLeft());
+        stack.add(op.getRight());
+      } else if (ent instanceof DCListExpression) {
+        stack.addAll(((DCListExpression) ent).getItems());
+      } else if (ent instanceof DCFunction) {
+        DCFunction func = (DCFunction) ent;
+        String name = func.getName().toLowerCase();
+        stack.addAll(func.getParams());
+        if (Functions.isParam(name)) {
+          // Parameters are checked where they're passed.
+          continue;
+        } else if (!Functions.isUserFunction(name)) {
+          return false;
+        }
+        
+        try {
+          stack.add(Functions.get(name));
+        } catch (RuntimeException ex) {
+          return false;
+        }
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * What a call is remembered by: the entity the function is saved as,
+   * and the values of the parameters.
+   */
+  private static class Key {
+    private final DCEntity saved;
+    private final String   args;
+    
+    private Key(DCEntity saved, String args) {
+      this.saved = saved;
+      this.args = args;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return saved == key.saved && args.equals(key.args);
+    }
+    
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(saved) * 31 + args.hashCode();
+    }
+  }
+  
+  /**
+   * A key for an entity that's compared by identity, as it would be in
+   * an {@link IdentityHashMap}. Null is allowed.
+   */
+  private static class Identity {
+    private final DCEntity ent;
+    
+    private Identity(DCEntity ent) {
+      this.ent = ent;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Identity && ((Identity) other).ent == ent;
+    }
+    
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(ent);
+    }
+  }
+  
+  /**
+   * The remembered calls, least recently used first.
+   */
+  private static class Calls extends LinkedHashMap<Key, Call> {
+    private static final long serialVersionUID = 1L;
+    
+    private Calls() {
+      super(16, 0.75f, true);
+    }
+    
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Call> eldest) {
+      return size() > maxSize;
+    }
+  }
+  
+  /**
+   * A remembered call.
+   */
+  private static class Call {
+    private final DCValue value;
+    private final Segment history;
+    private final boolean recorded;
+    
+    private Call(DCValue value, Segment history, boolean recorded) {
+      this.value = value;
+      this.history = history;
+      this.recorded = recorded;
+    }
+  }
+}
@@ -2,6 +2,7 @@ package net.nixill.dice.operations;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 import net.nixill.dice.defaults.functions.DieCoinFunctions;
@@ -9,6 +10,10 @@ import net.nixill.dice.exception.DiceCalcException;
 import net.nixill.dice.exception.NoSuchFunctionException;
 import net.nixill.dice.objects.DCCodeFunction;
 import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCListExpression;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
 
 /**
  * A class that provides access to save and load {@link Function}s and
@@ -19,6 +24,7 @@ public class Functions {
   private static ThreadLocal<ArrayList<ArrayList<DCEntity>>> params;
   private static ThreadLocal<HashMap<String, String>>        env;
   private static HashMap<String, DCCodeFunction>             builtins;
+  private static AtomicLong                                  version;
   
   static {
     params = new ThreadLocal<ArrayList<ArrayList<DCEntity>>>() {
@@ -35,6 +41,8 @@ public class Functions {
       }
     };
     
+    version = new AtomicLong();
+    
     builtins = new HashMap<>();
     builtins.put("!d", DieCoinFunctions.DIE);
     builtins.put("!c", DieCoinFunctions.COIN);
@@ -48,6 +56,29 @@ public class Functions {
    */
   public static void setLoader(FunctionLoader loader) {
     Functions.loader = loader;
+    changed();
+  }
+  
+  /**
+   * Returns a number that changes whenever saved functions might have,
+   * so that anything worked out from them can be checked to still hold.
+   * 
+   * @return The version of the saved functions.
+   */
+  public static long getVersion() {
+    return version.get();
+  }
+  
+  /**
+   * Notes that saved functions might have changed, forgetting anything
+   * worked out from them. This is done by
+   * {@link #save(String, DCEntity)} and {@link #setLoader(FunctionLoader)},
+   * but a loader whose functions can change in other ways should call it
+   * when they do.
+   */
+  public static void changed() {
+    version.incrementAndGet();
+    FunctionMemo.clear();
   }
   
   private static ArrayList<ArrayList<DCEntity>> getStack() {
@@ -91,6 +122,131 @@ public class Functions {
     }
   }
   
+  /**
+   * Returns a copy of the current thread's stack of function parameters,
+   * so that an evaluation can be carried on with the same parameters on
+   * another thread.
+   * 
+   * @return A copy of the stack.
+   */
+  public static ArrayList<ArrayList<DCEntity>> getParamsStack() {
+    return new ArrayList<>(getStack());
+  }
+  
+  /**
+   * Replaces the current thread's stack of function parameters.
+   * 
+   * @param stack
+   *   The new stack, which is used as it is rather than copied.
+   * @return The old stack.
+   */
+  public static ArrayList<ArrayList<DCEntity>> setParamsStack(
+      ArrayList<ArrayList<DCEntity>> stack) {
+    ArrayList<ArrayList<DCEntity>> old = getStack();
+    params.set(stack);
+    return old;
+  }
+  
+  /**
+   * Returns how many lists of function parameters are on the stack.
+   * 
+   * @return The number of lists.
+   */
+  public static int getParamsDepth() {
+    return getStack().size();
+  }
+  
+  /**
+   * Removes lists of function parameters until there are only a given
+   * number left on the stack, such as after an evaluation that stopped
+   * part of the way through a function.
+   * 
+   * @param depth
+   *   The number of lists to leave.
+   */
+  public static void unstackParams(int depth) {
+    ArrayList<ArrayList<DCEntity>> stack = getStack();
+    while (stack.size() > depth) {
+      stack.remove(0);
+    }
+  }
+  
+  /**
+   * Returns whether a name is that of a function parameter, which is just
+   * a number.
+   * <p>
+   * This is checked on every function call, so it doesn't use a regex,
+   * which would be compiled every time (and can't be compiled at all near
+   * the end of the stack).
+   * 
+   * @param name
+   *   The name to check.
+   * @return <code>true</code> iff the name is all digits.
+   */
+  public static boolean isParam(String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return !name.isEmpty();
+  }
+  
+  /**
+   * Returns whether a name is that of a function saved by the user, rather
+   * than a built-in function, an environment or global variable, a last
+   * result, or a function parameter.
+   * 
+   * @param name
+   *   The name to check.
+   * @return <code>true</code> iff it's a user function.
+   */
+  public static boolean isUserFunction(String name) {
+    if (name.isEmpty() || isParam(name)) {
+      return false;
+    }
+    char first = name.charAt(0);
+    return first != '!' && first != '_' && first != '$' && first != '^';
+  }
+  
+  /**
+   * Returns whether an entity refers to numbered function parameters
+   * anywhere in it, including the parameters of the calls it makes (but
+   * not what those functions are saved as). Entities other than values
+   * that can't be looked into are assumed to.
+   * 
+   * @param root
+   *   The entity to check.
+   * @return <code>true</code> iff it refers to parameters, or might.
+   */
+  public static boolean refersToParams(DCEntity root) {
+    ArrayList<DCEntity> stack = new ArrayList<>();
+    stack.add(root);
+    
+    while (!stack.isEmpty()) {
+      DCEntity ent = stack.remove(stack.size() - 1);
+      if (ent == null || ent instanceof DCValue) {
+        continue;
+      } else if (ent instanceof DCOperation) {
+        DCOperation op = (DCOperation) ent;
+        stack.add(op.getLeft());
+        stack.add(op.getRight());
+      } else if (ent instanceof DCListExpression) {
+        stack.addAll(((DCListExpression) ent).getItems());
+      } else if (ent instanceof DCFunction) {
+        DCFunction func = (DCFunction) ent;
+        if (isParam(func.getName())) {
+          return true;
+        }
+        stack.addAll(func.getParams());
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+  
   /**
    * Get a variable with a given name.
    * 
@@ -114,7 +270,7 @@ public class Functions {
     }
     
     // Function parameters
-    else if (name.matches("\\d+")) {
+    else if (isParam(name)) {
       int i = Integer.parseInt(name) - 1;
       ArrayList<DCEntity> pars = params.get().get(0);
       if (pars.size() > i) {
@@ -167,7 +323,7 @@ public class Functions {
     }
     
     // Function parameters
-    else if (name.matches("\\d+")) {
+    else if (isParam(name)) {
       throw new DiceCalcException(new IllegalArgumentException(
           "Function parameters can't be overwritten."));
     }
@@ -193,6 +349,9 @@ public class Functions {
     else {
       loader.save(name, ent);
     }
+    
+    // Anything worked out from the old value is out of date
+    changed();
   }
   
   /**
@@ -52,9 +52,11 @@ public abstract class Operator {
   }
   
   // -- NOT STATICS --//
-  protected int    priority;
-  protected String symbol;
-  protected int    level;
+  protected int          priority;
+  protected String       symbol;
+  protected int          level;
+  protected boolean      pure;
+  protected OperandOrder order;
   
   /**
    * Creates a new Operator.
@@ -104,5 +106,78 @@ public abstract class Operator {
     return level;
   }
   
+  /**
+   * Returns whether the operator is pure: given operands that always
+   * have the same values, it always gives the same result, and it does
+   * nothing else (such as rolling dice or saving functions).
+   * <p>
+   * Operators aren't pure unless they're marked as such, and pure
+   * operations on constants may be worked out ahead of time by
+   * {@link net.nixill.dice.evaluation.ConstantFolder ConstantFolder}.
+   * 
+   * @return true iff the operator is pure.
+   */
+  public boolean isPure() {
+    return pure;
+  }
+  
+  /**
+   * Sets whether the operator is pure. See {@link #isPure()}.
+   * 
+   * @param pure
+   *   Whether the operator is pure.
+   */
+  public void setPure(boolean pure) {
+    this.pure = pure;
+  }
+  
+  /**
+   * Returns the order in which the operator evaluates its operands, if
+   * it's been declared.
+   * <p>
+   * An operator with an order evaluates each of its operands exactly once,
+   * in that order, before it does anything else, so it can be given the
+   * values of its operands instead. This lets an
+   * {@link net.nixill.dice.evaluation.IterativeEvaluator
+   * IterativeEvaluator} work them out without recursion. Operators have
+   * no order unless they're given one, and are then run on their operands
+   * as they are.
+   * 
+   * @return The order, or <code>null</code> if there isn't one.
+   */
+  public OperandOrder getOperandOrder() {
+    return order;
+  }
+  
+  /**
+   * Sets the order in which the operator evaluates its operands. See
+   * {@link #getOperandOrder()}.
+   * 
+   * @param order
+   *   The order, or <code>null</code> if there isn't one.
+   */
+  public void setOperandOrder(OperandOrder order) {
+    this.order = order;
+  }
+  
   public abstract String toString();
+  
+  /**
+   * The order in which an operator evaluates its operands. A unary
+   * operator only has one, so either order means it's evaluated first.
+   */
+  public static enum OperandOrder {
+    /**
+     * The left operand is evaluated before the right.
+     */
+    LEFT_FIRST,
+    /**
+     * The right operand is evaluated before the left.
+     * <p>
+     * A {@link BinaryOperator} with this order may also
+     * {@link BinaryOperator#choose choose} its result from its left
+     * operand, having only evaluated its right.
+     */
+    RIGHT_FIRST;
+  }
 }
\ No newline at end of file
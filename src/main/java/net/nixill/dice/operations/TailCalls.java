@@ -0,0 +1,163 @@
+package net.nixill.dice.operations;
+
+import java.util.ArrayList;
+
+import net.nixill.dice.evaluation.Governor;
+import net.nixill.dice.exception.EvaluationLimitException;
+import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCExpression;
+import net.nixill.dice.objects.DCFunction;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCValue;
+
+/**
+ * Evaluates the bodies of saved functions so that calls in tail position
+ * run in a loop, rather than each one going deeper into the Java stack.
+ * <p>
+ * A call is in tail position if its value is the value of the whole body:
+ * if it is the body, or it's the entity chosen by an operator with a
+ * {@link BinaryOperator#setChoiceFunction(java.util.function.BiFunction)
+ * choice function} (like "s" from a list) that's in tail position itself.
+ * So in <code>[{1}, 1+{f,2}, {f,3}]s(d3)</code>, the call to
+ * <code>{f,3}</code> is in tail position, and the one to
+ * <code>{f,2}</code> isn't.
+ * <p>
+ * A tail call replaces the parameters of the function it's made from on
+ * the stack with its own, instead of putting them on top, since nothing
+ * is left to be done with the old ones. At most {@link #getMaxCalls()}
+ * tail calls can be made in a row.
+ * <p>
+ * While {@link FunctionHistory} is recording, each choice passed through
+ * is recorded once the value is known, innermost first, so the history
+ * is the same as if every call had gone deeper into the stack.
+ */
+public class TailCalls {
+  /**
+   * The most tail calls in a row if it hasn't been set, which is
+   * 1,000,000.
+   */
+  public static final long DEFAULT_MAX_CALLS = 1000000;
+  
+  private static volatile long maxCalls = DEFAULT_MAX_CALLS;
+  
+  private TailCalls() {
+  }
+  
+  /**
+   * Returns the most tail calls that can be made in a row.
+   * 
+   * @return The limit.
+   */
+  public static long getMaxCalls() {
+    return maxCalls;
+  }
+  
+  /**
+   * Sets the most tail calls that can be made in a row. Any more stop the
+   * evaluation with an {@link EvaluationLimitException}.
+   * 
+   * @param calls
+   *   The limit.
+   */
+  public static void setMaxCalls(long calls) {
+    maxCalls = Math.max(0, calls);
+  }
+  
+  /**
+   * Evaluates a call to a function, whose parameters haven't been put on
+   * the stack yet.
+   * 
+   * @param func
+   *   The function call.
+   * @param saved
+   *   The expression the function is saved as.
+   * @return The value of the call.
+   * @throws EvaluationLimitException
+   *   If more tail calls are made in a row than are allowed.
+   */
+  public static DCValue evaluate(DCFunction func, DCEntity saved) {
+    func.stackParams();
+    DCValue val = loop(saved);
+    Functions.unstackParams();
+    
+    return val;
+  }
+  
+  /**
+   * Evaluates an entity in tail position, with the parameters of the
+   * function it's in on top of the stack.
+   */
+  private static DCValue loop(DCEntity ent) {
+    long max = maxCalls;
+    long calls = 0;
+    // The choices passed through, which are only kept while recording.
+    ArrayList<DCOperation> choices = FunctionHistory.isRecording()
+        ? new ArrayList<>() : null;
+    DCValue val;
+    
+    while (true) {
+      if (isChoice(ent)) {
+        DCOperation op = (DCOperation) ent;
+        BinaryOperator<?> oper = (BinaryOperator<?>) op.getOperator();
+        if (choices != null) {
+          choices.add(op);
+        }
+        DCValue right = op.getRight().getValue();
+        DCEntity chosen = oper.choose(op.getLeft(), right);
+        if (chosen == null) {
+          val = oper.run(op.getLeft().getValue(), right);
+          break;
+        }
+        ent = chosen;
+      } else if (isCall(ent)) {
+        DCFunction func = (DCFunction) ent;
+        Governor.step();
+        DCEntity saved = func.getSaved();
+        func.recordCall(saved);
+        if (!(saved instanceof DCExpression)) {
+          val = saved.getValue();
+          break;
+        }
+        
+        if (++calls > max) {
+          throw new EvaluationLimitException(
+              "The expression made more than " + max
+                  + " tail calls in a row.");
+        }
+        Functions.unstackParams();
+        func.stackParams();
+        ent = saved;
+      } else {
+        val = ent.getValue();
+        break;
+      }
+    }
+    
+    // Every choice has the final value as its own.
+    if (choices != null) {
+      for (int i = choices.size() - 1; i >= 0; i--) {
+        DCOperation op = choices.get(i);
+        DCOperation.recordHistory(op, op.getOperator().getLevel(), val);
+      }
+    }
+    return val;
+  }
+  
+  /**
+   * Returns whether an entity is an operation that chooses which of its
+   * operands is its value. Subclasses, which may evaluate differently,
+   * aren't.
+   */
+  private static boolean isChoice(DCEntity ent) {
+    if (ent == null || ent.getClass() != DCOperation.class) {
+      return false;
+    }
+    Operator oper = ((DCOperation) ent).getOperator();
+    return oper instanceof BinaryOperator
+        && ((BinaryOperator<?>) oper).hasChoiceFunction();
+  }
+  
+  private static boolean isCall(DCEntity ent) {
+    return ent != null && ent.getClass() == DCFunction.class;
+  }
+}
@@ -1,7 +1,9 @@
 package net.nixill.dice.operations;
 
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
+import net.nixill.dice.evaluation.Governor;
 import net.nixill.dice.objects.DCEntity;
 import net.nixill.dice.objects.DCValue;
 
@@ -9,8 +11,9 @@ import net.nixill.dice.objects.DCValue;
  * A unary operator, i.e. one that has operands only on one side.
  */
 public abstract class UnaryOperator<R extends DCValue> extends Operator {
-  protected Function<DCEntity, R> func;
-  protected boolean               isPostfix;
+  protected Function<DCEntity, R>      func;
+  protected ToDoubleFunction<DCEntity> doubleFunc;
+  protected boolean                    isPostfix;
   
   /**
    * Creates a new UnaryOperator.
@@ -37,9 +40,43 @@ public abstract class UnaryOperator<R extends DCValue> extends Operator {
    * @return The result of the operation.
    */
   public R run(DCEntity operand) {
+    Governor.step();
     return func.apply(operand);
   }
   
+  /**
+   * Run the operation with a single operand, and return the amount of its
+   * result as a single. This uses the
+   * {@link #setDoubleFunction(ToDoubleFunction) double function} if there
+   * is one.
+   * 
+   * @param operand
+   *   The operand against the operator.
+   * @return The amount of the result of the operation.
+   */
+  public double runDouble(DCEntity operand) {
+    Governor.step();
+    if (doubleFunc != null) {
+      return doubleFunc.applyAsDouble(operand);
+    }
+    return func.apply(operand).getSingle().getAmount();
+  }
+  
+  /**
+   * Sets a function that works out the amount of the operation's result
+   * as a single directly, for {@link #runDouble(DCEntity)}.
+   * <p>
+   * It must give the same amount as the operator's main function would,
+   * and roll the same dice; it should get the amount of its operand with
+   * {@link DCEntity#evaluateDouble()}.
+   * 
+   * @param doubleFunc
+   *   The function.
+   */
+  public void setDoubleFunction(ToDoubleFunction<DCEntity> doubleFunc) {
+    this.doubleFunc = doubleFunc;
+  }
+  
   /**
    * Whether or not the operator is a postfix operator.
    * 
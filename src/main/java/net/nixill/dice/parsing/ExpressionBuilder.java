@@ -10,7 +10,11 @@ import net.nixill.dice.operations.PrefixOperator;
 
 /**
  * A mutable object with which to build a {@link DCExpression}.
+ * 
+ * @deprecated The parser no longer builds expressions with this. Create
+ *   {@link DCOperation}s directly instead.
  */
+@Deprecated
 public class ExpressionBuilder {
   private DCEntity          leftEnt;
   private DCEntity          rightEnt;
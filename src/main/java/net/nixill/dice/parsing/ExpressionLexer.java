@@ -0,0 +1,225 @@
+package net.nixill.dice.parsing;
+
+import net.nixill.dice.exception.UserInputException;
+import net.nixill.dice.parsing.ExpressionPiece.ExpressionPieceType;
+
+/**
+ * Splits an input string into tokens in a single pass, deciding what kind
+ * of token comes next from its first character.
+ * <p>
+ * The tokens (and their positions) are exactly those that
+ * {@link ExpressionSplitter#split(String)} has always produced; they're
+ * just written into a {@link TokenBuffer} instead of a list of
+ * {@link ExpressionPiece}s.
+ */
+public class ExpressionLexer {
+  private ExpressionLexer() {
+  }
+  
+  /**
+   * Splits an input into tokens.
+   * 
+   * @param input
+   *   The input to split.
+   * @param out
+   *   The buffer to write the tokens to. It's {@link TokenBuffer#reset
+   *   reset} first.
+   * @throws UserInputException
+   *   If the input contains something that isn't a valid token.
+   */
+  public static void lex(String input, TokenBuffer out) {
+    out.reset(input);
+    
+    int length = input.length();
+    int pos = 0;
+    
+    // Whether the last token means an operator run can only hold
+    // prefixes: the start of the input, an opening bracket or a comma.
+    boolean afterOpener = true;
+    
+    while (pos < length) {
+      char chr = input.charAt(pos);
+      int end;
+      
+      if (isWhitespace(chr)) {
+        pos++;
+        continue;
+      } else if (chr >= '0' && chr <= '9') {
+        end = scanNumber(input, pos);
+        out.add(ExpressionPieceType.NUMBER, pos, end);
+        afterOpener = false;
+      } else if (isSeparator(chr)) {
+        end = pos + 1;
+        out.add(ExpressionPieceType.BRACKET, pos, end);
+        afterOpener = (chr == '(' || chr == '[' || chr == ',');
+      } else if (chr == '{' && (end = scanName(input, pos)) != -1) {
+        out.add(ExpressionPieceType.NAME, pos, end);
+        afterOpener = false;
+      } else if (chr == '"' && (end = scanString(input, pos)) != -1) {
+        out.add(ExpressionPieceType.STRING, pos, end);
+        afterOpener = false;
+      } else if (isOperatorChar(chr)) {
+        end = pos + 1;
+        while (end < length && (isOperatorChar(input.charAt(end))
+            || isWhitespace(input.charAt(end)))) {
+          end++;
+        }
+        
+        // If the operators immediately follow an opening bracket, they
+        // can only be prefix operators; if they immediately precede a
+        // closing bracket, they can only be postfix operators.
+        boolean prefix = afterOpener;
+        boolean postfix = (end == length || isCloser(input.charAt(end)));
+        
+        // An operator can't be both (i.e. the only thing between two
+        // brackets).
+        if (prefix && postfix) {
+          throw new UserInputException("A number was expected here.",
+              pos);
+        }
+        
+        Operators.addOpers(stripWhitespace(input, pos, end), prefix,
+            postfix, pos, out);
+        afterOpener = false;
+      } else {
+        throw new UserInputException("I don't know what this means.",
+            pos);
+      }
+      
+      pos = end;
+    }
+  }
+  
+  /**
+   * A number is a <code>0</code> or digits not starting with zero,
+   * optionally followed by a decimal point and at least one digit.
+   */
+  private static int scanNumber(String input, int pos) {
+    int length = input.length();
+    int end = pos + 1;
+    
+    if (input.charAt(pos) != '0') {
+      while (end < length && isDigit(input.charAt(end))) {
+        end++;
+      }
+    }
+    
+    if (end + 1 < length && input.charAt(end) == '.'
+        && isDigit(input.charAt(end + 1))) {
+      end += 2;
+      while (end < length && isDigit(input.charAt(end))) {
+        end++;
+      }
+    }
+    
+    return end;
+  }
+  
+  /**
+   * A name is a <code>{</code> followed by either digits, or an optional
+   * <code>$</code>, <code>_</code>, <code>^</code> or <code>!</code>, a
+   * letter, and then letters, digits, underscores and hyphens that don't
+   * end with an underscore or hyphen.
+   * 
+   * @return The end of the name, or -1 if there isn't one.
+   */
+  private static int scanName(String input, int pos) {
+    int length = input.length();
+    int start = pos + 1;
+    int letter = start;
+    
+    if (letter < length && "$_^!".indexOf(input.charAt(letter)) != -1) {
+      letter++;
+    }
+    
+    if (letter < length && isLetter(input.charAt(letter))) {
+      int end = letter + 1;
+      for (int i = end; i < length; i++) {
+        char chr = input.charAt(i);
+        if (isLetter(chr) || isDigit(chr)) {
+          end = i + 1;
+        } else if (chr != '_' && chr != '-') {
+          break;
+        }
+      }
+      return end;
+    }
+    
+    int end = start;
+    while (end < length && isDigit(input.charAt(end))) {
+      end++;
+    }
+    return (end == start) ? -1 : end;
+  }
+  
+  /**
+   * A string is text in double quotes, in which a backslash escapes any
+   * character other than a letter or digit.
+   * 
+   * @return The end of the string, or -1 if there isn't one.
+   */
+  private static int scanString(String input, int pos) {
+    int length = input.length();
+    int i = pos + 1;
+    
+    while (i < length) {
+      char chr = input.charAt(i);
+      if (chr == '"') {
+        return i + 1;
+      } else if (chr == '\\') {
+        if (i + 1 >= length || isLetter(input.charAt(i + 1))
+            || isDigit(input.charAt(i + 1))) {
+          return -1;
+        }
+        i += 2;
+      } else {
+        i++;
+      }
+    }
+    
+    return -1;
+  }
+  
+  private static String stripWhitespace(String input, int start,
+      int end) {
+    StringBuilder out = null;
+    for (int i = start; i < end; i++) {
+      char chr = input.charAt(i);
+      if (isWhitespace(chr)) {
+        if (out == null) {
+          out = new StringBuilder(end - start);
+          out.append(input, start, i);
+        }
+      } else if (out != null) {
+        out.append(chr);
+      }
+    }
+    return (out == null) ? input.substring(start, end) : out.toString();
+  }
+  
+  static boolean isWhitespace(char chr) {
+    return chr == ' ' || chr == '`' || chr == '\t' || chr == '\n';
+  }
+  
+  static boolean isOperatorChar(char chr) {
+    return (chr >= 'a' && chr <= 'z')
+        || "<>/?|~!#$%^&*-=+".indexOf(chr) != -1;
+  }
+  
+  private static boolean isSeparator(char chr) {
+    return chr == '(' || chr == ')' || chr == '[' || chr == ']'
+        || chr == ',' || chr == '}';
+  }
+  
+  private static boolean isCloser(char chr) {
+    return chr == ')' || chr == ']' || chr == ',';
+  }
+  
+  private static boolean isDigit(char chr) {
+    return chr >= '0' && chr <= '9';
+  }
+  
+  private static boolean isLetter(char chr) {
+    return (chr >= 'a' && chr <= 'z') || (chr >= 'A' && chr <= 'Z');
+  }
+}
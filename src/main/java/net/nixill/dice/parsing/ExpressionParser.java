@@ -1,6 +1,5 @@
 package net.nixill.dice.parsing;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 
 import net.nixill.dice.exception.UserInputException;
@@ -9,15 +8,21 @@ import net.nixill.dice.objects.DCExpression;
 import net.nixill.dice.objects.DCFunction;
 import net.nixill.dice.objects.DCListExpression;
 import net.nixill.dice.objects.DCNumber;
+import net.nixill.dice.objects.DCOperation;
 import net.nixill.dice.objects.DCString;
 import net.nixill.dice.operations.Operator;
-import net.nixill.dice.operations.PostfixOperator;
-import net.nixill.dice.operations.PrefixOperator;
 import net.nixill.dice.parsing.ExpressionPiece.ExpressionPieceType;
 
 /**
- * A class that takes a list of {@link ExpressionPiece}s and builds a tree
- * of {@link DCExpression}s from them.
+ * A class that takes a list of tokens and builds a tree of
+ * {@link DCExpression}s from them.
+ * <p>
+ * The tokens are read once, in order, by index. Operators are placed by
+ * precedence climbing: an operator joins the operand of the operator to
+ * its left if its {@link Operator#getPriority() priority} is higher, or
+ * if it's equal and {@link Operator#isFromRight(int) from the right}.
+ * Otherwise, the operand is finished and the operator is tried one level
+ * further out.
  */
 public class ExpressionParser {
   /**
@@ -32,285 +37,459 @@ public class ExpressionParser {
    *   brackets.
    */
   public static DCEntity parseLine(ArrayList<ExpressionPiece> pieces) {
-    DCEntity ent = parseChain(pieces);
-    if (!pieces.isEmpty()) {
-      ExpressionPiece piece = pieces.get(0);
-      throw new UserInputException("Unmatched " + piece.contents,
-          piece.position);
+    TokenBuffer tokens = new TokenBuffer();
+    for (ExpressionPiece piece : pieces) {
+      tokens.add(piece.type, piece.contents, piece.position);
     }
-    return ent;
+    return parse(tokens);
   }
   
-  private static DCEntity parseParentheses(
-      ArrayList<ExpressionPiece> pieces) {
-    ExpressionPiece lpar = pieces.remove(0);
-    DCEntity ent = parseChain(pieces);
-    if (pieces.isEmpty()) {
-      throw new UserInputException("Unmatched (", lpar.position);
-    } else {
-      ExpressionPiece rpar = pieces.remove(0);
-      if (!rpar.contents.equals(")")) {
-        throw new UserInputException("Unmatched ( and " + rpar.contents,
-            lpar.position);
-      }
-    }
-    
-    return ent;
+  /**
+   * Builds a {@link DCExpression} tree from the tokens in a
+   * {@link TokenBuffer}.
+   * 
+   * @param tokens
+   *   The tokens from which to build
+   * @return The root of the DCExpression tree
+   * @throws UserInputException
+   *   If there are two values not separated by an operator, an operator
+   *   without a value, or unmatched brackets.
+   */
+  public static DCEntity parse(TokenBuffer tokens) {
+    return new Cursor(tokens).parseLine();
   }
   
-  private static DCListExpression parseList(
-      ArrayList<ExpressionPiece> pieces) {
-    ExpressionPiece lbracket = pieces.remove(0);
-    ArrayList<DCEntity> listItems = new ArrayList<>();
+  /**
+   * The state of one parse: the tokens, the index of the next one, and
+   * the parts of the tree that are still being read.
+   * <p>
+   * Brackets, lists, functions and operands can be nested in each other
+   * as deeply as the input likes, so they aren't read by methods calling
+   * each other. Each one being read is a {@link Frame} on a stack of its
+   * own instead: the innermost one reads tokens until it's finished, or
+   * until it needs to read something nested, which goes on top.
+   */
+  private static class Cursor {
+    private final TokenBuffer      tokens;
+    private final int              size;
+    private int                    pos;
+    private final ArrayList<Frame> frames = new ArrayList<>();
+    private DCEntity               result;
     
-    // Allow empty lists
-    ExpressionPiece next = pieces.get(0);
-    if (next.contents.equals("]")) {
-      pieces.remove(0);
-      return new DCListExpression(listItems);
+    private Cursor(TokenBuffer tokens) {
+      this.tokens = tokens;
+      this.size = tokens.size();
     }
     
-    // Add items to non-empty lists
-    while (!pieces.isEmpty()) {
-      // First get the value
-      DCEntity ent = parseChain(pieces);
-      if (ent == null) {
-        throw new UserInputException("List with empty value",
-            pieces.get(0).position);
-      }
-      
-      // Add it to the list of values
-      listItems.add(ent);
-      
-      // Make sure we're not already at the end of the line
-      if (pieces.isEmpty()) {
-        throw new UserInputException("Unmatched [", lbracket.position);
-      }
-      
-      // Then get the next "bracket"
-      next = pieces.remove(0);
-      
-      // If it's the wrong kind of closing bracket, error.
-      if (next.contents.equals(")") || next.contents.equals("}")) {
-        throw new UserInputException("Unmatched [ and " + next.contents,
-            lbracket.position);
+    private DCEntity parseLine() {
+      call(new Chain());
+      while (!frames.isEmpty()) {
+        frames.get(frames.size() - 1).step();
       }
       
-      // If it's a list closer, close the list.
-      if (next.contents.equals("]")) {
-        return new DCListExpression(listItems);
+      if (pos < size) {
+        throw new UserInputException("Unmatched " + tokens.getText(pos),
+            tokens.getStart(pos));
       }
+      return result;
     }
     
-    throw new UserInputException("Unmatched [", lbracket.position);
-  }
-  
-  private static DCFunction parseFunction(
-      ArrayList<ExpressionPiece> pieces) {
-    ExpressionPiece lbracket = pieces.remove(0);
-    String name = lbracket.contents.substring(1).toLowerCase();
-    ArrayList<DCEntity> params = new ArrayList<>();
+    /**
+     * Starts reading something nested in the current frame, which gets
+     * the result when it's finished.
+     */
+    private void call(Frame frame) {
+      frames.add(frame);
+    }
     
-    // Allow no-param functions
-    ExpressionPiece next = pieces.get(0);
-    if (next.contents.equals("}")) {
-      pieces.remove(0);
-      return new DCFunction(name, params);
+    /**
+     * Finishes the current frame by reading something else instead, whose
+     * result is passed on.
+     */
+    private void replace(Frame frame) {
+      frames.set(frames.size() - 1, frame);
     }
     
-    if (next.contents.equals(",")) {
-      pieces.remove(0);
+    /**
+     * Finishes the current frame with a result.
+     */
+    private void finish(DCEntity ent) {
+      frames.remove(frames.size() - 1);
+      result = ent;
     }
     
-    // Add items to with-param functions
-    while (!pieces.isEmpty()) {
-      // First get the value
-      DCEntity ent = parseChain(pieces);
-      if (ent == null) {
-        throw new UserInputException("Function with empty param",
-            pieces.get(0).position);
-      }
-      
-      // Add it to the list of params
-      params.add(ent);
+    /**
+     * Something that's being read.
+     */
+    private abstract class Frame {
+      /**
+       * How far through this frame is, which is 0 when it starts.
+       */
+      protected int stage;
       
-      // Make sure we're not already at the end of the line
-      if (pieces.isEmpty()) {
-        throw new UserInputException("Unmatched {", lbracket.position);
-      }
-      
-      // Then get the next "bracket"
-      next = pieces.remove(0);
-      
-      // If it's the wrong kind of closing bracket, error.
-      if (next.contents.equals(")") || next.contents.equals("]")) {
-        throw new UserInputException("Unmatched { and " + next.contents,
-            lbracket.position);
-      }
-      
-      // If it's a function closer, close the function.
-      if (next.contents.equals("}")) {
-        return new DCFunction(name, params);
-      }
+      /**
+       * Reads tokens until this frame is finished or something nested has
+       * been {@link Cursor#call(Frame) called}. When the nested frame is
+       * finished, this is called again with its result in
+       * {@link Cursor#result}.
+       */
+      protected abstract void step();
     }
     
-    throw new UserInputException("Unmatched {", lbracket.position);
-  }
-  
-  private static DCEntity parseChain(ArrayList<ExpressionPiece> pieces) {
-    if (pieces.isEmpty()) {
-      throw new UserInputException("Empty list received.", 0);
+    /**
+     * Everything up to the next closing bracket or comma (which isn't
+     * consumed). The result is <code>null</code> if there was nothing
+     * before the closing bracket or comma.
+     */
+    private class Chain extends Frame {
+      @Override
+      protected void step() {
+        if (pos >= size) {
+          throw new UserInputException("Empty list received.", 0);
+        }
+        
+        if (isCloser(pos)) {
+          finish(null);
+        } else {
+          replace(new Operand(null));
+        }
+      }
     }
     
-    ArrayDeque<ExpressionBuilder> exps = new ArrayDeque<>();
-    DCEntity hold = null;
-    boolean valueLast = false;
-    
-    while (!pieces.isEmpty()) {
-      ExpressionPiece piece = pieces.get(0);
+    /**
+     * An operand, along with every operator after it that binds more
+     * tightly than <code>outer</code>, which is the operator whose operand
+     * this is, or <code>null</code> for a whole chain.
+     */
+    private class Operand extends Frame {
+      private final Operator outer;
+      private DCEntity       left;
+      private Operator       pending;
       
-      // Get the next value, if there is one
-      DCEntity ent = null;
-      boolean err = false;
-      if (piece.type == ExpressionPieceType.BRACKET) {
-        if (piece.contents.equals("(")) {
-          if (!valueLast) {
-            ent = parseParentheses(pieces);
+      private Operand(Operator outer) {
+        this.outer = outer;
+      }
+      
+      @Override
+      protected void step() {
+        if (stage == 0) {
+          stage = 1;
+          call(new Value());
+          return;
+        } else if (stage == 1) {
+          left = result;
+        } else {
+          left = new DCOperation(left, pending, result);
+        }
+        
+        while (pos < size) {
+          ExpressionPieceType type = tokens.getType(pos);
+          Operator op;
+          
+          if (type == ExpressionPieceType.BINARY_OPERATOR) {
+            op = Operators.getBinaryOperator(tokens.getText(pos));
+          } else if (type == ExpressionPieceType.POSTFIX_OPERATOR) {
+            op = Operators.getPostfixOperator(tokens.getText(pos));
+          } else if (isValue(pos)) {
+            throw new UserInputException("Two consecutive values",
+                tokens.getStart(pos));
           } else {
-            err = true;
+            break;
+          }
+          
+          if (!bindsTighter(op, outer)) {
+            break;
           }
-        } else if (piece.contents.equals("[")) {
-          if (!valueLast) {
-            ent = parseList(pieces);
+          
+          pos++;
+          if (type == ExpressionPieceType.POSTFIX_OPERATOR) {
+            left = new DCOperation(left, op, null);
           } else {
-            err = true;
+            pending = op;
+            stage = 2;
+            call(new Operand(op));
+            return;
           }
-        } else /* ], ), }, , */ {
-          break;
-        }
-      } else if (piece.type == ExpressionPieceType.NAME) {
-        if (!valueLast) {
-          ent = parseFunction(pieces);
-        } else {
-          err = true;
         }
-      } else if (piece.type == ExpressionPieceType.NUMBER) {
-        if (!valueLast) {
-          ent = new DCNumber(Double.parseDouble(piece.contents));
-          pieces.remove(0);
-        } else {
-          err = true;
+        
+        finish(left);
+      }
+    }
+    
+    /**
+     * A single value: a number, string, bracketed expression, list or
+     * function, or a prefix operator and its operand.
+     */
+    private class Value extends Frame {
+      @Override
+      protected void step() {
+        if (pos >= size) {
+          throw new UserInputException("An operator is missing a value.",
+              tokens.getStart(size - 1));
         }
-      } else if (piece.type == ExpressionPieceType.STRING) {
-        if (!valueLast) {
-          String check = piece.contents.substring(1,
-              piece.contents.length() - 1);
-          
-          check = check.replace("\\\\", "\uF000").replace("\\", "")
-              .replace("\uF000", "\\");
-          
-          ent = new DCString(check);
-          pieces.remove(0);
-        } else {
-          err = true;
+        
+        int start = tokens.getStart(pos);
+        
+        switch (tokens.getType(pos)) {
+          case NUMBER:
+            String number = tokens.getText(pos++);
+            finish(new DCNumber(Double.parseDouble(number)));
+            return;
+          case STRING:
+            String text = tokens.getText(pos++);
+            String check = text.substring(1, text.length() - 1);
+            
+            check = check.replace("\\\\", "\uF000").replace("\\", "")
+                .replace("\uF000", "\\");
+            
+            finish(new DCString(check));
+            return;
+          case NAME:
+            replace(new Braces());
+            return;
+          case PREFIX_OPERATOR:
+            replace(new Prefix(
+                Operators.getPrefixOperator(tokens.getText(pos++))));
+            return;
+          case BRACKET:
+            char chr = tokens.getChar(pos);
+            if (chr == '(') {
+              replace(new Parentheses());
+              return;
+            } else if (chr == '[') {
+              replace(new Brackets());
+              return;
+            }
+            break;
+          default:
+            break;
         }
+        
+        // Anything else, including a closing bracket, ends the expression
+        // where a value should be.
+        throw new UserInputException("An operator is missing a value.",
+            start);
       }
+    }
+    
+    /**
+     * A prefix operator, which has already been read, and its operand.
+     */
+    private class Prefix extends Frame {
+      private final Operator op;
       
-      if (err) {
-        throw new UserInputException("Two consecutive values",
-            piece.position);
+      private Prefix(Operator op) {
+        this.op = op;
       }
       
-      // If there is a value, put it in the most recent expression
-      if (ent != null) {
-        valueLast = true;
-        
-        if (exps.isEmpty()) {
-          // If there's no expression, just hold the value
-          hold = ent;
+      @Override
+      protected void step() {
+        if (stage == 0) {
+          stage = 1;
+          call(new Operand(op));
         } else {
-          ExpressionBuilder exp = exps.getLast();
-          if (exp.getRightEnt() == null && exp.getRightExp() == null) {
-            exp.setRight(ent);
-          } else {
-            throw new UserInputException("Two consecutive values.",
-                piece.position);
-          }
+          finish(new DCOperation(null, op, result));
         }
-        continue;
       }
+    }
+    
+    /**
+     * A bracketed expression, from its opening bracket.
+     */
+    private class Parentheses extends Frame {
+      private final int lpar = tokens.getStart(pos++);
       
-      // If there's no value, the piece must be an operator
-      ExpressionBuilder expNew = null;
-      Operator op = null;
-      valueLast = false;
-      
-      if (piece.type == ExpressionPieceType.BINARY_OPERATOR) {
-        op = Operators.getBinaryOperator(piece.contents);
-      } else if (piece.type == ExpressionPieceType.POSTFIX_OPERATOR) {
-        op = Operators.getPostfixOperator(piece.contents);
-      } else if (piece.type == ExpressionPieceType.PREFIX_OPERATOR) {
-        op = Operators.getPrefixOperator(piece.contents);
+      @Override
+      protected void step() {
+        if (stage == 0) {
+          stage = 1;
+          call(new Chain());
+          return;
+        }
+        
+        DCEntity ent = result;
+        if (pos >= size) {
+          throw new UserInputException("Unmatched (", lpar);
+        } else if (tokens.getChar(pos) != ')') {
+          throw new UserInputException("Unmatched ( and "
+              + tokens.getText(pos), lpar);
+        } else if (ent == null) {
+          throw new UserInputException("A number was expected here.",
+              tokens.getStart(pos));
+        }
+        
+        pos++;
+        finish(ent);
       }
+    }
+    
+    /**
+     * A list, from its opening bracket.
+     */
+    private class Brackets extends Frame {
+      private final int                 lbracket  = tokens.getStart(pos++);
+      private final ArrayList<DCEntity> listItems = new ArrayList<>();
       
-      expNew = new ExpressionBuilder(op);
-      
-      // If it's the first operator, then just use the held value
-      if (exps.isEmpty()) {
-        if (hold != null) {
-          expNew.setLeft(hold);
-        }
-        exps.addLast(expNew);
-      } else {
-        // For prefix operators, don't check priorities to the left
-        // Just stack it in.
-        if (op instanceof PrefixOperator) {
-          exps.getLast().setRight(expNew);
-          exps.addLast(expNew);
+      @Override
+      protected void step() {
+        if (stage == 0) {
+          // Allow empty lists
+          if (pos < size && tokens.getChar(pos) == ']') {
+            pos++;
+            finish(new DCListExpression(listItems));
+            return;
+          }
         } else {
-          ExpressionBuilder expOld = null;
-          ExpressionBuilder expNext = null;
-          // Removes expressions from the stack that are a higher priority
-          // than the one being inserted - or that are postfix.
-          while (!exps.isEmpty()) {
-            expNext = exps.getLast();
-            if (expNext.getOper().getPriority() > op.getPriority()
-                || (expNext.getOper().getPriority() == op.getPriority()
-                    && !Operator.isFromRight(op.getPriority()))
-                || expNext.getOper() instanceof PostfixOperator) {
-              expOld = exps.removeLast();
-              expNext = null;
-            } else {
-              break;
-            }
+          // First get the value
+          DCEntity ent = result;
+          if (ent == null) {
+            throw new UserInputException("List with empty value",
+                tokens.getStart(pos));
           }
           
-          // The last removed expression becomes the left of this one
-          // (if no such expression, then the right of the first
-          // expression)
-          // and this expression becomes the right of the next one
-          if (expOld == null) {
-            expNew.setLeft(expNext.getRight());
-          } else {
-            expNew.setLeft(expOld);
+          // Add it to the list of values
+          listItems.add(ent);
+          
+          // Make sure we're not already at the end of the line
+          if (pos >= size) {
+            throw new UserInputException("Unmatched [", lbracket);
           }
           
-          if (expNext != null) {
-            expNext.setRight(expNew);
+          // Then get the next "bracket"
+          char next = tokens.getChar(pos);
+          
+          // If it's the wrong kind of closing bracket, error.
+          if (next == ')' || next == '}') {
+            throw new UserInputException("Unmatched [ and " + next,
+                lbracket);
           }
           
-          exps.addLast(expNew);
+          pos++;
+          
+          // If it's a list closer, close the list.
+          if (next == ']') {
+            finish(new DCListExpression(listItems));
+            return;
+          }
+        }
+        
+        // Add items to non-empty lists
+        if (pos < size) {
+          stage = 1;
+          call(new Chain());
+        } else {
+          throw new UserInputException("Unmatched [", lbracket);
         }
       }
+    }
+    
+    /**
+     * A function and its parameters, from its name.
+     */
+    private class Braces extends Frame {
+      private final int                 lbracket = tokens.getStart(pos);
+      private final String              name     = tokens.getText(pos++)
+          .substring(1).toLowerCase();
+      private final ArrayList<DCEntity> params   = new ArrayList<>();
       
-      pieces.remove(0);
+      @Override
+      protected void step() {
+        if (stage == 0) {
+          // Allow no-param functions
+          if (pos < size && tokens.getChar(pos) == '}') {
+            pos++;
+            finish(new DCFunction(name, params));
+            return;
+          }
+          
+          if (pos < size && tokens.getChar(pos) == ',') {
+            pos++;
+          }
+        } else {
+          // First get the value
+          DCEntity ent = result;
+          if (ent == null) {
+            throw new UserInputException("Function with empty param",
+                tokens.getStart(pos));
+          }
+          
+          // Add it to the list of params
+          params.add(ent);
+          
+          // Make sure we're not already at the end of the line
+          if (pos >= size) {
+            throw new UserInputException("Unmatched {", lbracket);
+          }
+          
+          // Then get the next "bracket"
+          char next = tokens.getChar(pos);
+          
+          // If it's the wrong kind of closing bracket, error.
+          if (next == ')' || next == ']') {
+            throw new UserInputException("Unmatched { and " + next,
+                lbracket);
+          }
+          
+          pos++;
+          
+          // If it's a function closer, close the function.
+          if (next == '}') {
+            finish(new DCFunction(name, params));
+            return;
+          }
+        }
+        
+        // Add items to with-param functions
+        if (pos < size) {
+          stage = 1;
+          call(new Chain());
+        } else {
+          throw new UserInputException("Unmatched {", lbracket);
+        }
+      }
     }
     
-    if (exps.isEmpty()) {
-      return hold;
-    } else {
-      return exps.getFirst().build();
+    /**
+     * Whether the token is a closing bracket or comma, which ends a
+     * chain.
+     */
+    private boolean isCloser(int i) {
+      if (tokens.getType(i) != ExpressionPieceType.BRACKET) {
+        return false;
+      }
+      char chr = tokens.getChar(i);
+      return chr != '(' && chr != '[';
+    }
+    
+    /**
+     * Whether the token starts a value.
+     */
+    private boolean isValue(int i) {
+      ExpressionPieceType type = tokens.getType(i);
+      return type == ExpressionPieceType.NUMBER
+          || type == ExpressionPieceType.STRING
+          || type == ExpressionPieceType.NAME
+          || (type == ExpressionPieceType.BRACKET && !isCloser(i));
     }
   }
   
-}
\ No newline at end of file
+  /**
+   * Whether <code>op</code> becomes part of the operand of
+   * <code>outer</code>, rather than taking the whole of that operation
+   * as its left side.
+   * <p>
+   * This is the opposite of the order in which operations are done: an
+   * operator with a higher priority is done first, and so is the later of
+   * two operators with the same priority if that priority goes from the
+   * right. Postfix operators on the left are always finished first.
+   */
+  private static boolean bindsTighter(Operator op, Operator outer) {
+    if (outer == null) {
+      return true;
+    }
+    int priority = op.getPriority();
+    int outerPriority = outer.getPriority();
+    return priority > outerPriority || (priority == outerPriority
+        && Operator.isFromRight(priority));
+  }
+}
@@ -1,13 +1,11 @@
 package net.nixill.dice.parsing;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import net.nixill.dice.defaults.operations.DiceOperators;
 import net.nixill.dice.defaults.operations.ListOperators;
+import net.nixill.dice.defaults.operations.LogicOperators;
 import net.nixill.dice.defaults.operations.MathsOperators;
 import net.nixill.dice.exception.UserInputException;
 import net.nixill.dice.operations.BinaryOperator;
@@ -20,25 +18,22 @@ import net.nixill.dice.parsing.ExpressionPiece.ExpressionPieceType;
 /**
  * This class is used during parsing to get {@link Operator}s from their
  * symbols and separate multiple consecutive operators.
+ * <p>
+ * Consecutive operators are separated using a {@link SymbolTrie} of all
+ * the known symbols, which is kept up to date as operators are added.
  */
 public class Operators {
   private static HashMap<String, PrefixOperator<?>>  prefixOperators;
   private static HashMap<String, PostfixOperator<?>> postfixOperators;
   private static HashMap<String, BinaryOperator<?>>  binaryOperators;
   
-  private static String prefixRegex;
-  private static String postfixRegex;
-  private static String binaryRegex;
-  private static String combinedRegex;
-  
-  private static Pattern ptnPrefix;
-  private static Pattern ptnPostfix;
-  private static Pattern ptnCombined;
+  private static SymbolTrie symbols;
   
   static {
     prefixOperators = new HashMap<>();
     postfixOperators = new HashMap<>();
     binaryOperators = new HashMap<>();
+    symbols = new SymbolTrie();
     
     putOperator(ListOperators.NEGATIVE);
     putOperator(ListOperators.JOIN);
@@ -47,6 +42,7 @@ public class Operators {
     putOperator(ListOperators.SELECT);
     putOperator(ListOperators.SHUFFLE);
     putOperator(ListOperators.SUM);
+    putOperator(ListOperators.REPEAT);
     
     putOperator(MathsOperators.FACTORIAL);
     putOperator(MathsOperators.TIMES);
@@ -60,18 +56,8 @@ public class Operators {
     putOperator(DiceOperators.ONE_DIE);
     putOperator(DiceOperators.ROLL_UNTIL);
     
-    initRegexes();
-  }
-  
-  private static String keysToPattern(HashMap<String, ?> map) {
-    String out = "";
-    for (String str : map.keySet()) {
-      out += "|" + str.replaceAll("([^a-zA-Z0-9])",
-          Matcher.quoteReplacement("\\") + "$1");
-    }
-    
-    out = "(" + out.substring(1) + ")";
-    return out;
+    putOperator(LogicOperators.COMPARE);
+    putOperator(LogicOperators.CONDITION);
   }
   
   /**
@@ -91,62 +77,123 @@ public class Operators {
    */
   public static List<ExpressionPiece> getOpers(String opers,
       boolean prefix, boolean postfix, int startPos) {
-    ArrayList<ExpressionPiece> out = new ArrayList<>();
-    
-    int pos = startPos;
-    
-    Matcher mtcPrefix = null;
-    Matcher mtcPostfix = null;
-    String midString = null;
-    
-    // Split the operator string into postfixes, in-between, and prefixes.
-    if (!(prefix || postfix)) {
-      Matcher mtcCombined = ptnCombined.matcher(opers);
-      if (mtcCombined.matches()) {
-        mtcPostfix = ptnPostfix.matcher(mtcCombined.group(1));
-        mtcPrefix = ptnPrefix.matcher(mtcCombined.group(4));
-        midString = mtcCombined.group(3);
-      } else {
-        throw new UserInputException(
-            "Operator " + opers + " isn't recognized.", startPos);
-      }
-    } else {
-      if (postfix) {
-        mtcPostfix = ptnPostfix.matcher(opers);
-      } else {
-        mtcPrefix = ptnPrefix.matcher(opers);
+    TokenBuffer out = new TokenBuffer();
+    addOpers(opers, prefix, postfix, startPos, out);
+    return out.toPieces();
+  }
+  
+  /**
+   * Gets the consecutive operators from a single string, and adds them to
+   * a {@link TokenBuffer}.
+   * <p>
+   * If the operators can only be prefixes or only postfixes, the longest
+   * symbol is taken each time, and anything left over once no symbol
+   * matches is ignored. Otherwise, the string must be made up of any
+   * number of postfixes, one binary operator, and any number of prefixes;
+   * longer symbols are tried first, and shorter ones if that doesn't work
+   * out.
+   * 
+   * @param opers
+   *   The string of consecutive operators.
+   * @param prefix
+   *   Whether the operators can only be prefixes.
+   * @param postfix
+   *   Whether the operators can only be postfixes.
+   * @param startPos
+   *   The index of the first character, in case of
+   *   {@link UserInputException}s.
+   * @param out
+   *   The buffer to add the operators to.
+   * @throws UserInputException
+   *   If the operators can be neither and can't be split that way.
+   */
+  public static void addOpers(String opers, boolean prefix,
+      boolean postfix, int startPos, TokenBuffer out) {
+    if (prefix || postfix) {
+      ExpressionPieceType type = (postfix)
+          ? ExpressionPieceType.POSTFIX_OPERATOR
+          : ExpressionPieceType.PREFIX_OPERATOR;
+      
+      int pos = 0;
+      int length;
+      while ((length = symbols.longest(opers, pos, type)) != 0) {
+        out.add(type, opers.substring(pos, pos + length),
+            startPos + pos);
+        pos += length;
       }
+      return;
     }
     
-    // Get the postfixes first
-    if (postfix || !prefix) {
-      pos = getMultiOpers(out, mtcPostfix, pos, true);
-    }
+    int size = opers.length();
+    ExpressionPieceType[] types = new ExpressionPieceType[size];
+    int[] ends = new int[size];
+    int count = split(opers, 0, false, new boolean[2 * size + 2], types,
+        ends, 0);
     
-    if (!postfix && !prefix) {
-      out.add(new ExpressionPiece(midString,
-          ExpressionPieceType.BINARY_OPERATOR, pos));
-      pos += midString.length();
+    if (count == -1) {
+      throw new UserInputException(
+          "Operator " + opers + " isn't recognized.", startPos);
     }
     
-    if (prefix || !postfix) {
-      getMultiOpers(out, mtcPrefix, pos, false);
+    int pos = 0;
+    for (int i = 0; i < count; i++) {
+      out.add(types[i], opers.substring(pos, ends[i]), startPos + pos);
+      pos = ends[i];
     }
-    
-    return out;
   }
   
-  private static int getMultiOpers(List<ExpressionPiece> list,
-      Matcher matcher, int pos, boolean post) {
-    while (matcher.lookingAt()) {
-      list.add(new ExpressionPiece(matcher.group(),
-          (post) ? ExpressionPieceType.POSTFIX_OPERATOR
-              : ExpressionPieceType.PREFIX_OPERATOR,
-          pos));
-      pos += matcher.end();
-      matcher.region(matcher.end(), matcher.regionEnd());
+  /**
+   * Splits the rest of a string of operators that are between two values.
+   * 
+   * @param afterBinary
+   *   Whether the binary operator has already been found, so that only
+   *   prefixes can follow.
+   * @param failed
+   *   Which positions (and values of <code>afterBinary</code>) have
+   *   already been found not to split, so that they're only tried once.
+   * @param types
+   *   The types of the operators found so far.
+   * @param ends
+   *   The ends of the operators found so far.
+   * @param count
+   *   The number of operators found so far.
+   * @return The number of operators in total, or -1 if the rest of the
+   *   string can't be split.
+   */
+  private static int split(String opers, int pos, boolean afterBinary,
+      boolean[] failed, ExpressionPieceType[] types, int[] ends,
+      int count) {
+    if (afterBinary && pos == opers.length()) {
+      return count;
     }
-    return pos;
+    
+    int state = 2 * pos + (afterBinary ? 1 : 0);
+    if (failed[state]) {
+      return -1;
+    }
+    
+    int[] lengths = new int[opers.length() - pos];
+    ExpressionPieceType[] tries = (afterBinary)
+        ? new ExpressionPieceType[] { ExpressionPieceType.PREFIX_OPERATOR }
+        : new ExpressionPieceType[] { ExpressionPieceType.POSTFIX_OPERATOR,
+            ExpressionPieceType.BINARY_OPERATOR };
+    
+    for (ExpressionPieceType type : tries) {
+      int matches = symbols.match(opers, pos, type, lengths);
+      for (int i = 0; i < matches; i++) {
+        types[count] = type;
+        ends[count] = pos + lengths[i];
+        int total = split(opers, ends[count],
+            type != ExpressionPieceType.POSTFIX_OPERATOR, failed, types,
+            ends, count + 1);
+        if (total != -1) {
+          return total;
+        }
+      }
+    }
+    
+    failed[state] = true;
+    return -1;
   }
   
   /**
@@ -190,6 +237,7 @@ public class Operators {
    */
   public static void putOperator(BinaryOperator<?> oper) {
     binaryOperators.put(oper.getSymbol(), oper);
+    symbols.add(oper.getSymbol(), ExpressionPieceType.BINARY_OPERATOR);
   }
   
   /**
@@ -218,6 +266,7 @@ public class Operators {
    */
   public static void putOperator(PrefixOperator<?> oper) {
     prefixOperators.put(oper.getSymbol(), oper);
+    symbols.add(oper.getSymbol(), ExpressionPieceType.PREFIX_OPERATOR);
   }
   
   /**
@@ -228,21 +277,16 @@ public class Operators {
    */
   public static void putOperator(PostfixOperator<?> oper) {
     postfixOperators.put(oper.getSymbol(), oper);
+    symbols.add(oper.getSymbol(), ExpressionPieceType.POSTFIX_OPERATOR);
   }
   
   /**
-   * Re-initialize the internal regular expressions. Use this after adding
-   * a new set of operators.
+   * Formerly re-initialized the internal regular expressions. Operators
+   * are now recognized as soon as they're added, so this does nothing.
+   * 
+   * @deprecated Not needed after adding operators.
    */
+  @Deprecated
   public static void initRegexes() {
-    prefixRegex = keysToPattern(prefixOperators);
-    postfixRegex = keysToPattern(postfixOperators);
-    binaryRegex = keysToPattern(binaryOperators);
-    combinedRegex = "(" + postfixRegex + "*)" + binaryRegex + "("
-        + prefixRegex + "*)";
-    
-    ptnPrefix = Pattern.compile(prefixRegex);
-    ptnPostfix = Pattern.compile(postfixRegex);
-    ptnCombined = Pattern.compile(combinedRegex);
   }
-}
\ No newline at end of file
+}
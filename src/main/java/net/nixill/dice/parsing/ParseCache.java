@@ -0,0 +1,242 @@
+package net.nixill.dice.parsing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.nixill.dice.exception.UserInputException;
+import net.nixill.dice.objects.DCEntity;
+
+/**
+ * A bounded cache of parsed expressions, placed in front of
+ * {@link ExpressionSplitter#parse(String)}.
+ * <p>
+ * Parsed trees are never modified by evaluation, so the same
+ * {@link DCEntity} can safely be handed out to any number of callers and
+ * threads. Inputs are looked up by their {@link #normalize(String)
+ * normalized} form, so <code>1 + 2</code> and <code>1+2</code> share an
+ * entry. Once the cache is full, the least recently used entry is
+ * evicted.
+ * <p>
+ * All methods are safe to call from multiple threads. Parsing itself
+ * happens outside of the lock, so a slow parse doesn't hold up hits on
+ * other entries.
+ */
+public class ParseCache {
+  private final int                             maxSize;
+  private final LinkedHashMap<String, DCEntity> entries;
+  
+  private long hits;
+  private long misses;
+  private long evictions;
+  
+  /**
+   * Creates a new, empty ParseCache.
+   * 
+   * @param maxSize
+   *   The most entries the cache will hold at once.
+   * @throws IllegalArgumentException
+   *   If <code>maxSize</code> is less than one.
+   */
+  public ParseCache(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException(
+          "A ParseCache must be able to hold at least one entry.");
+    }
+    
+    this.maxSize = maxSize;
+    entries = new LinkedHashMap<String, DCEntity>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, DCEntity> e) {
+        if (size() > ParseCache.this.maxSize) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+  
+  /**
+   * Returns the parsed tree for an input, parsing it only if an
+   * equivalent input isn't already cached.
+   * <p>
+   * Inputs that fail to parse aren't cached, and their exceptions refer
+   * to positions within the input as it was given.
+   * 
+   * @param input
+   *   The input to parse.
+   * @return The root of the parsed tree.
+   * @throws UserInputException
+   *   If the input is malformed.
+   */
+  public DCEntity parse(String input) {
+    String key = normalize(input);
+    
+    synchronized (entries) {
+      DCEntity ent = entries.get(key);
+      if (ent != null) {
+        hits++;
+        return ent;
+      }
+      misses++;
+    }
+    
+    DCEntity ent = ExpressionSplitter.parse(input);
+    
+    synchronized (entries) {
+      // Another thread may have parsed the same input in the meantime;
+      // keep whichever tree got there first.
+      DCEntity existing = entries.get(key);
+      if (existing != null) {
+        return existing;
+      }
+      entries.put(key, ent);
+    }
+    
+    return ent;
+  }
+  
+  /**
+   * Returns the number of lookups that found an existing entry.
+   * 
+   * @return The number of hits.
+   */
+  public long getHits() {
+    synchronized (entries) {
+      return hits;
+    }
+  }
+  
+  /**
+   * Returns the number of lookups that had to parse their input.
+   * 
+   * @return The number of misses.
+   */
+  public long getMisses() {
+    synchronized (entries) {
+      return misses;
+    }
+  }
+  
+  /**
+   * Returns the number of entries that were removed to make room for
+   * newer ones.
+   * 
+   * @return The number of evictions.
+   */
+  public long getEvictions() {
+    synchronized (entries) {
+      return evictions;
+    }
+  }
+  
+  /**
+   * Returns the number of entries currently in the cache.
+   * 
+   * @return The size of the cache.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+  
+  /**
+   * Returns the most entries the cache will hold at once.
+   * 
+   * @return The maximum size of the cache.
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+  
+  /**
+   * Removes all entries from the cache. The counters are left alone.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+  
+  /**
+   * Returns the key under which an input is cached.
+   * <p>
+   * Whitespace (spaces, tabs, newlines and backticks) is removed wherever
+   * it can't change how the input is split, and shortened to a single
+   * space wherever it can - between two digits, for example, or after a
+   * name. Strings are kept exactly as written.
+   * 
+   * @param input
+   *   The input to normalize.
+   * @return The normalized input.
+   */
+  public static String normalize(String input) {
+    StringBuilder out = new StringBuilder(input.length());
+    int length = input.length();
+    boolean inName = false;
+    
+    for (int i = 0; i < length; i++) {
+      char chr = input.charAt(i);
+      
+      if (chr == '"') {
+        // Strings are copied as-is, up to and including the closing
+        // quote.
+        inName = false;
+        out.append(chr);
+        for (i++; i < length; i++) {
+          chr = input.charAt(i);
+          out.append(chr);
+          if (chr == '\\' && i + 1 < length) {
+            out.append(input.charAt(++i));
+          } else if (chr == '"') {
+            break;
+          }
+        }
+      } else if (isWhitespace(chr)) {
+        int end = i;
+        while (end < length && isWhitespace(input.charAt(end))) {
+          end++;
+        }
+        
+        if (out.length() > 0 && end < length) {
+          char prev = out.charAt(out.length() - 1);
+          char next = input.charAt(end);
+          
+          if ((isWordChar(prev) && isWordChar(next)) || prev == '{'
+              || (inName && next != '}' && next != ',')) {
+            out.append(' ');
+          }
+        }
+        
+        inName = false;
+        i = end - 1;
+      } else {
+        if (chr == '{') {
+          inName = true;
+        } else if (inName && !isNameChar(chr)) {
+          inName = false;
+        }
+        out.append(chr);
+      }
+    }
+    
+    return out.toString();
+  }
+  
+  private static boolean isWhitespace(char chr) {
+    return chr == ' ' || chr == '`' || chr == '\t' || chr == '\n';
+  }
+  
+  private static boolean isWordChar(char chr) {
+    return (chr >= 'a' && chr <= 'z') || (chr >= 'A' && chr <= 'Z')
+        || (chr >= '0' && chr <= '9') || chr == '.' || chr == '_';
+  }
+  
+  private static boolean isNameChar(char chr) {
+    return isWordChar(chr) || chr == '-' || chr == '$' || chr == '^'
+        || chr == '!';
+  }
+}
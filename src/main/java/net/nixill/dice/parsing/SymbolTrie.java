@@ -0,0 +1,132 @@
+package net.nixill.dice.parsing;
+
+import java.util.Arrays;
+
+import net.nixill.dice.parsing.ExpressionPiece.ExpressionPieceType;
+
+/**
+ * A prefix tree of operator symbols, used by {@link Operators} to find
+ * the operators in a run of operator characters.
+ * <p>
+ * Each node records which kinds of operator (prefix, postfix or binary)
+ * have the symbol spelled out by the path to it. Symbols can be added at
+ * any time; nothing needs to be rebuilt afterwards.
+ */
+class SymbolTrie {
+  private final Node root = new Node();
+  
+  /**
+   * Adds a symbol.
+   * 
+   * @param symbol
+   *   The symbol.
+   * @param type
+   *   The kind of operator it's a symbol of.
+   */
+  void add(String symbol, ExpressionPieceType type) {
+    Node node = root;
+    for (int i = 0; i < symbol.length(); i++) {
+      node = node.child(symbol.charAt(i), true);
+    }
+    node.types |= mask(type);
+  }
+  
+  /**
+   * Finds the symbols of one kind that the text has at a position.
+   * 
+   * @param text
+   *   The text to look in.
+   * @param pos
+   *   The position to look at.
+   * @param type
+   *   The kind of operator.
+   * @param lengths
+   *   An array to write the lengths of the symbols to, longest first. It
+   *   must be at least as long as the rest of the text.
+   * @return The number of symbols found.
+   */
+  int match(String text, int pos, ExpressionPieceType type,
+      int[] lengths) {
+    int bit = mask(type);
+    int count = 0;
+    Node node = root;
+    
+    for (int i = pos; i < text.length(); i++) {
+      node = node.child(text.charAt(i), false);
+      if (node == null) {
+        break;
+      }
+      if ((node.types & bit) != 0) {
+        lengths[count++] = i + 1 - pos;
+      }
+    }
+    
+    // They were found shortest first.
+    for (int i = 0, j = count - 1; i < j; i++, j--) {
+      int swap = lengths[i];
+      lengths[i] = lengths[j];
+      lengths[j] = swap;
+    }
+    
+    return count;
+  }
+  
+  /**
+   * Returns the length of the longest symbol of one kind that the text
+   * has at a position.
+   * 
+   * @param text
+   *   The text to look in.
+   * @param pos
+   *   The position to look at.
+   * @param type
+   *   The kind of operator.
+   * @return The length, or 0 if there's no such symbol.
+   */
+  int longest(String text, int pos, ExpressionPieceType type) {
+    int bit = mask(type);
+    int length = 0;
+    Node node = root;
+    
+    for (int i = pos; i < text.length(); i++) {
+      node = node.child(text.charAt(i), false);
+      if (node == null) {
+        break;
+      }
+      if ((node.types & bit) != 0) {
+        length = i + 1 - pos;
+      }
+    }
+    
+    return length;
+  }
+  
+  private static int mask(ExpressionPieceType type) {
+    return 1 << type.ordinal();
+  }
+  
+  private static class Node {
+    private char[] chars    = new char[0];
+    private Node[] children = new Node[0];
+    private int    types;
+    
+    private Node child(char chr, boolean create) {
+      for (int i = 0; i < chars.length; i++) {
+        if (chars[i] == chr) {
+          return children[i];
+        }
+      }
+      
+      if (!create) {
+        return null;
+      }
+      
+      int size = chars.length;
+      chars = Arrays.copyOf(chars, size + 1);
+      children = Arrays.copyOf(children, size + 1);
+      chars[size] = chr;
+      children[size] = new Node();
+      return children[size];
+    }
+  }
+}
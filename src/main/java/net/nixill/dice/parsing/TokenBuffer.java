@@ -0,0 +1,209 @@
+package net.nixill.dice.parsing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.nixill.dice.parsing.ExpressionPiece.ExpressionPieceType;
+
+/**
+ * A compact, reusable list of the tokens of one input, as filled in by
+ * {@link ExpressionLexer}.
+ * <p>
+ * Each token is a type and a range of the input, stored in parallel
+ * arrays; the text of a token is only copied out of the input if it's
+ * asked for. Operator tokens hold their own text instead, since
+ * whitespace inside a run of operators means the symbol isn't always a
+ * range of the input.
+ * <p>
+ * A buffer can be {@link #reset(String) reset} and filled again without
+ * allocating new arrays, as long as the new input doesn't have more
+ * tokens.
+ */
+public class TokenBuffer {
+  private static final ExpressionPieceType[] TYPES = ExpressionPieceType
+      .values();
+  
+  private String   input;
+  private int      size;
+  private int[]    types;
+  private int[]    starts;
+  private int[]    ends;
+  private String[] symbols;
+  
+  /**
+   * Creates a new, empty TokenBuffer.
+   */
+  public TokenBuffer() {
+    types = new int[16];
+    starts = new int[16];
+    ends = new int[16];
+    symbols = new String[16];
+    input = "";
+  }
+  
+  /**
+   * Removes all tokens, and sets the input that new ones refer to.
+   * 
+   * @param input
+   *   The input.
+   */
+  public void reset(String input) {
+    this.input = input;
+    for (int i = 0; i < size; i++) {
+      symbols[i] = null;
+    }
+    size = 0;
+  }
+  
+  /**
+   * Adds a token that's a range of the input.
+   * 
+   * @param type
+   *   The type of the token.
+   * @param start
+   *   The index of its first character.
+   * @param end
+   *   The index after its last character.
+   */
+  public void add(ExpressionPieceType type, int start, int end) {
+    grow();
+    types[size] = type.ordinal();
+    starts[size] = start;
+    ends[size] = end;
+    size++;
+  }
+  
+  /**
+   * Adds a token with its own text, such as an operator.
+   * 
+   * @param type
+   *   The type of the token.
+   * @param text
+   *   The text of the token.
+   * @param position
+   *   The position reported for the token.
+   */
+  public void add(ExpressionPieceType type, String text, int position) {
+    grow();
+    types[size] = type.ordinal();
+    starts[size] = position;
+    ends[size] = position + text.length();
+    symbols[size] = text;
+    size++;
+  }
+  
+  private void grow() {
+    if (size == types.length) {
+      int capacity = size * 2;
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      symbols = Arrays.copyOf(symbols, capacity);
+    }
+  }
+  
+  /**
+   * Returns the number of tokens.
+   * 
+   * @return The number of tokens.
+   */
+  public int size() {
+    return size;
+  }
+  
+  /**
+   * Returns the input the tokens refer to.
+   * 
+   * @return The input.
+   */
+  public String getInput() {
+    return input;
+  }
+  
+  /**
+   * Returns the type of a token.
+   * 
+   * @param i
+   *   The index of the token.
+   * @return Its type.
+   */
+  public ExpressionPieceType getType(int i) {
+    return TYPES[types[i]];
+  }
+  
+  /**
+   * Returns the position of a token, as used in
+   * {@link net.nixill.dice.exception.UserInputException
+   * UserInputException}s.
+   * 
+   * @param i
+   *   The index of the token.
+   * @return Its position.
+   */
+  public int getStart(int i) {
+    return starts[i];
+  }
+  
+  /**
+   * Returns the position just after a token.
+   * 
+   * @param i
+   *   The index of the token.
+   * @return The position after it.
+   */
+  public int getEnd(int i) {
+    return ends[i];
+  }
+  
+  /**
+   * Returns the first character of a token.
+   * 
+   * @param i
+   *   The index of the token.
+   * @return Its first character.
+   */
+  public char getChar(int i) {
+    if (symbols[i] != null) {
+      return symbols[i].charAt(0);
+    }
+    return input.charAt(starts[i]);
+  }
+  
+  /**
+   * Returns the text of a token.
+   * 
+   * @param i
+   *   The index of the token.
+   * @return Its text.
+   */
+  public String getText(int i) {
+    if (symbols[i] != null) {
+      return symbols[i];
+    }
+    return input.substring(starts[i], ends[i]);
+  }
+  
+  /**
+   * Returns the token as an {@link ExpressionPiece}.
+   * 
+   * @param i
+   *   The index of the token.
+   * @return The piece.
+   */
+  public ExpressionPiece getPiece(int i) {
+    return new ExpressionPiece(getText(i), getType(i), starts[i]);
+  }
+  
+  /**
+   * Returns all of the tokens as {@link ExpressionPiece}s.
+   * 
+   * @return A new list of pieces.
+   */
+  public ArrayList<ExpressionPiece> toPieces() {
+    ArrayList<ExpressionPiece> out = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      out.add(getPiece(i));
+    }
+    return out;
+  }
+}
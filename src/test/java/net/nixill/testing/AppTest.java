@@ -1,16 +1,55 @@
 package net.nixill.testing;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
+import net.nixill.dice.analysis.CostEstimate;
+import net.nixill.dice.analysis.CostEstimator;
+import net.nixill.dice.analysis.Distribution;
+import net.nixill.dice.analysis.DistributionAnalyzer;
+import net.nixill.dice.analysis.SimulationResult;
+import net.nixill.dice.analysis.Simulator;
+import net.nixill.dice.defaults.operations.ListOperators;
+import net.nixill.dice.evaluation.ConstantFolder;
+import net.nixill.dice.evaluation.DiceFuser;
+import net.nixill.dice.evaluation.Evaluator;
+import net.nixill.dice.evaluation.ExpressionCompiler;
+import net.nixill.dice.evaluation.Governor;
+import net.nixill.dice.evaluation.IncrementalEvaluation;
+import net.nixill.dice.evaluation.Inliner;
+import net.nixill.dice.evaluation.IterativeEvaluator;
+import net.nixill.dice.evaluation.ParallelEvaluator;
+import net.nixill.dice.evaluation.PreparedExpression;
+import net.nixill.dice.evaluation.Profiler;
+import net.nixill.dice.evaluation.Profiler.Stats;
+import net.nixill.dice.evaluation.RecursiveEvaluator;
+import net.nixill.dice.exception.DiceCalcException;
+import net.nixill.dice.exception.EvaluationLimitException;
+import net.nixill.dice.exception.UserInputException;
+import net.nixill.dice.objects.DCDie;
 import net.nixill.dice.objects.DCEntity;
+import net.nixill.dice.objects.DCList;
+import net.nixill.dice.objects.DCNumber;
+import net.nixill.dice.objects.DCOperation;
+import net.nixill.dice.objects.DCString;
 import net.nixill.dice.objects.DCValue;
+import net.nixill.dice.objects.Randomizer;
+import net.nixill.dice.operations.ComparisonOperators.Comparison;
 import net.nixill.dice.operations.FunctionHistory;
+import net.nixill.dice.operations.FunctionMemo;
 import net.nixill.dice.operations.Functions;
+import net.nixill.dice.operations.TailCalls;
 import net.nixill.dice.operations.FunctionHistory.HistoryEntry;
+import net.nixill.dice.parsing.ExpressionLexer;
+import net.nixill.dice.parsing.ExpressionParser;
 import net.nixill.dice.parsing.ExpressionPiece;
 import net.nixill.dice.parsing.ExpressionSplitter;
+import net.nixill.dice.parsing.ParseCache;
+import net.nixill.dice.parsing.TokenBuffer;
 
 public class AppTest {
   // @Test
@@ -88,6 +127,1345 @@ public class AppTest {
     }
   }
   
+  @Test
+  public void parseCacheTest() {
+    System.out.println("-- BEGIN PARSE CACHE TEST --");
+    ParseCache cache = new ParseCache(2);
+    
+    DCEntity first = cache.parse("1 + 2");
+    DCEntity second = cache.parse("1+2");
+    if (first != second || cache.getHits() != 1 || cache.getMisses() != 1) {
+      throw new AssertionError("Equivalent inputs didn't share an entry!");
+    }
+    
+    if (ParseCache.normalize("1 2").equals(ParseCache.normalize("12"))) {
+      throw new AssertionError("Whitespace between numbers was dropped!");
+    }
+    
+    cache.parse("d20+5");
+    cache.parse("4d6");
+    if (cache.size() != 2 || cache.getEvictions() != 1) {
+      throw new AssertionError("The oldest entry wasn't evicted!");
+    }
+  }
+  
+  @Test
+  public void lexerTest() {
+    System.out.println("-- BEGIN LEXER TEST --");
+    TokenBuffer tokens = new TokenBuffer();
+    
+    ExpressionLexer.lex("{level, 2} + -d6", tokens);
+    printExpList(tokens.toPieces());
+    String[] texts = { "{level", ",", "2", "}", "+", "-", "d", "6" };
+    // Positions within a run of operators don't count its whitespace.
+    int[] positions = { 0, 6, 8, 9, 11, 12, 13, 15 };
+    if (tokens.size() != texts.length) {
+      throw new AssertionError("Wrong number of tokens.");
+    }
+    for (int i = 0; i < texts.length; i++) {
+      if (!tokens.getText(i).equals(texts[i])
+          || tokens.getStart(i) != positions[i]) {
+        throw new AssertionError("Wrong token at index " + i + ": "
+            + tokens.getPiece(i));
+      }
+    }
+    
+    // The buffer can be reused, and errors keep their positions.
+    try {
+      ExpressionLexer.lex("2 + 3.5 . 1", tokens);
+      throw new AssertionError("A lone . was accepted.");
+    } catch (UserInputException ex) {
+      if (ex.getPosition() != 8) {
+        throw new AssertionError("Error at " + ex.getPosition());
+      }
+    }
+    
+    // Runs of operators are split into postfixes, one binary operator
+    // and prefixes, each at its own position.
+    ExpressionLexer.lex("3!u>=--d6", tokens);
+    printExpList(tokens.toPieces());
+    texts = new String[] { "3", "!", "u>=", "-", "-", "d", "6" };
+    positions = new int[] { 0, 1, 2, 5, 6, 7, 8 };
+    for (int i = 0; i < texts.length; i++) {
+      if (!tokens.getText(i).equals(texts[i])
+          || tokens.getStart(i) != positions[i]) {
+        throw new AssertionError("Wrong token at index " + i + ": "
+            + tokens.getPiece(i));
+      }
+    }
+  }
+  
+  @Test
+  public void parserTest() {
+    System.out.println("-- BEGIN PARSER TEST --");
+    
+    // Both entry points build the same trees.
+    String[] lines = { "2^3^2", "-2^2+1", "2+-3*4", "-3!^2", "#2d6+3",
+        "[1, 2, 3]?s1", "{level, 2} + -d6" };
+    for (String line : lines) {
+      String direct = ExpressionSplitter.parse(line).toCode();
+      String pieces = ExpressionParser
+          .parseLine(ExpressionSplitter.split(line)).toCode();
+      System.out.println(line + " => " + direct);
+      if (!direct.equals(pieces)) {
+        throw new AssertionError("Parses of " + line + " differ.");
+      }
+    }
+    
+    // Long inputs are read in one pass.
+    StringBuilder list = new StringBuilder("[1");
+    StringBuilder chain = new StringBuilder("1");
+    for (int i = 0; i < 10000; i++) {
+      list.append(", ").append(i);
+      chain.append(" + ").append(i);
+    }
+    list.append("]");
+    DCEntity ent = ExpressionSplitter.parse(list.toString());
+    if (ent.getValue().getList().size() != 10001) {
+      throw new AssertionError("Long list was parsed wrongly.");
+    }
+    ExpressionSplitter.parse(chain.toString());
+    
+    try {
+      ExpressionSplitter.parse("3 4");
+      throw new AssertionError("Two consecutive values were accepted.");
+    } catch (UserInputException ex) {
+      if (ex.getPosition() != 2) {
+        throw new AssertionError("Error at " + ex.getPosition());
+      }
+    }
+  }
+  
+  @Test
+  public void compileTest() {
+    System.out.println("-- BEGIN COMPILE TEST --");
+    Functions.setLoader(new Loader());
+    
+    String[] lines = { "4!/3", "2*(-1+5)", "2+[1,2,3]", "{level,5}",
+        "[1, 2, 3]?", "[\"red\", \"green\", \"blue\"]?s1", "2d5",
+        "d20", "d1", "6u>=5", "3d6-d4" };
+    
+    for (String line : lines) {
+      DCEntity ent = ExpressionSplitter.parse(line);
+      DCEntity compiled = ExpressionCompiler.compile(ent);
+      
+      if (!ent.toCode().equals(compiled.toCode())) {
+        throw new AssertionError("Compiling changed the code of " + line);
+      }
+      
+      Randomizer.setSeed(line.hashCode());
+      String expected = ent.getValue().toCode();
+      Randomizer.setSeed(line.hashCode());
+      String actual = compiled.getValue().toCode();
+      
+      System.out.println(line + " => " + actual);
+      if (!expected.equals(actual)) {
+        throw new AssertionError("Compiled value differs for " + line);
+      }
+    }
+  }
+  
+  @Test
+  public void foldTest() {
+    System.out.println("-- BEGIN FOLD TEST --");
+    Functions.setLoader(new Loader());
+    
+    String[] lines = { "4!/3", "2*(-1+5)+d6", "#[1,2,3]+2^3^2",
+        "[1, 2, 3]s(1+1)", "{level,2*3}", "[3!, d4]?", "-[2d4, 1/%2]",
+        "1/0" };
+    
+    for (String line : lines) {
+      DCEntity ent = ExpressionSplitter.parse(line);
+      DCEntity folded = ConstantFolder.fold(ent);
+      
+      if (!ent.toCode().equals(folded.toCode())) {
+        throw new AssertionError("Folding changed the code of " + line);
+      }
+      
+      FunctionHistory.clear();
+      Randomizer.setSeed(line.hashCode());
+      String expected = ent.getValue().toCode();
+      String expectedHistory = historyText();
+      
+      FunctionHistory.clear();
+      Randomizer.setSeed(line.hashCode());
+      String actual = folded.getValue().toCode();
+      String actualHistory = historyText();
+      
+      System.out.println(line + " => " + actual);
+      if (!expected.equals(actual)) {
+        throw new AssertionError("Folded value differs for " + line);
+      }
+      if (!expectedHistory.equals(actualHistory)) {
+        throw new AssertionError("Folded history differs for " + line);
+      }
+    }
+    
+    DCEntity random = ConstantFolder.fold(ExpressionSplitter.parse("d6"));
+    DCEntity constant = ConstantFolder
+        .fold(ExpressionSplitter.parse("(2+3)!"));
+    if (ConstantFolder.isConstant(random)
+        || !ConstantFolder.isConstant(constant)) {
+      throw new AssertionError("Wrong parts were folded.");
+    }
+    FunctionHistory.clear();
+  }
+  
+  @Test
+  public void fuseTest() {
+    System.out.println("-- BEGIN FUSE TEST --");
+    Functions.setLoader(new Loader());
+    
+    String[] lines = { "$3d6", "#4d8", "-(2d10)", "3d6+2", "$(d4)d6+1",
+        "[$2d6, #d3d4]", "{level,$2d1}", "2d6-1" };
+    
+    for (String line : lines) {
+      DCEntity ent = ExpressionSplitter.parse(line);
+      DCEntity fused = DiceFuser.fuse(ent);
+      
+      if (!ent.toCode().equals(fused.toCode())) {
+        throw new AssertionError("Fusing changed the code of " + line);
+      }
+      
+      for (boolean record : new boolean[] { false, true }) {
+        boolean old = FunctionHistory.setRecording(record);
+        try {
+          FunctionHistory.clear();
+          Randomizer.setSeed(line.hashCode());
+          String expected = ent.getValue().toCode() + " "
+              + ExpressionSplitter.parse("d1000000").getValue().toCode();
+          String expectedHistory = historyText();
+          
+          FunctionHistory.clear();
+          Randomizer.setSeed(line.hashCode());
+          String actual = fused.getValue().toCode() + " "
+              + ExpressionSplitter.parse("d1000000").getValue().toCode();
+          String actualHistory = historyText();
+          
+          System.out.println(line + " => " + actual);
+          if (!expected.equals(actual)) {
+            throw new AssertionError("Fused value differs for " + line);
+          }
+          if (!expectedHistory.equals(actualHistory)) {
+            throw new AssertionError("Fused history differs for " + line);
+          }
+        } finally {
+          FunctionHistory.setRecording(old);
+        }
+      }
+    }
+    
+    DCEntity sum = DiceFuser.fuse(ExpressionSplitter.parse("$2d6"));
+    if (sum instanceof DCOperation) {
+      throw new AssertionError("$2d6 wasn't fused.");
+    }
+    FunctionHistory.clear();
+  }
+  
+  @Test
+  public void evaluateDoubleTest() {
+    System.out.println("-- BEGIN EVALUATE DOUBLE TEST --");
+    Functions.setLoader(new Loader());
+    
+    String[] lines = { "4!/3", "2*(-1+5)", "3d6*2", "$(2d20)^2//7",
+        "(d6)d(d8)%5", "d1*3", "[1,2,3]*2", "\"abc\"*2", "{level,4}/2",
+        "5d6+2-d4", "-(3d6)*2", "(2d1)d6" };
+    
+    for (String line : lines) {
+      DCEntity ent = ExpressionSplitter.parse(line);
+      DCEntity compiled = ExpressionCompiler.compile(ent);
+      
+      for (boolean record : new boolean[] { false, true }) {
+        boolean old = FunctionHistory.setRecording(record);
+        try {
+          Randomizer.setSeed(line.hashCode());
+          double expected = ent.getValue().getSingle().getAmount();
+          double next = ExpressionSplitter.parse("d1000000")
+              .evaluateDouble();
+          
+          for (DCEntity tree : new DCEntity[] { ent, compiled }) {
+            Randomizer.setSeed(line.hashCode());
+            double actual = tree.evaluateDouble();
+            System.out.println(line + " => " + actual);
+            if (Double.compare(expected, actual) != 0
+                || ExpressionSplitter.parse("d1000000")
+                    .evaluateDouble() != next) {
+              throw new AssertionError(
+                  "evaluateDouble() differs for " + line);
+            }
+          }
+        } finally {
+          FunctionHistory.setRecording(old);
+        }
+      }
+    }
+    FunctionHistory.clear();
+  }
+  
+  @Test
+  public void evaluatorTest() throws InterruptedException {
+    System.out.println("-- BEGIN EVALUATOR TEST --");
+    Functions.setLoader(new Loader());
+    Evaluator iterative = new IterativeEvaluator();
+    
+    String[] lines = { "4!/3", "2*(-1+5)+d6", "[1,2,3]s(1+1)",
+        "[d4,d6,d8]s(d3)", "(3d6)s2", "3d6-d4", "6u>=5", "{level,2*3}",
+        "{level}", "[1, 2, 3]?", "-[2d4, 1/%2]", "{!d,4,6}",
+        "#2d6+$[d4,2]" };
+    
+    for (String line : lines) {
+      DCEntity ent = ExpressionSplitter.parse(line);
+      
+      FunctionHistory.clear();
+      Randomizer.setSeed(line.hashCode());
+      String expected = ent.getValue().toCode();
+      String expectedHistory = historyText();
+      
+      FunctionHistory.clear();
+      Randomizer.setSeed(line.hashCode());
+      String actual = iterative.evaluate(ent).toCode();
+      String actualHistory = historyText();
+      
+      System.out.println(line + " => " + actual);
+      if (!expected.equals(actual)) {
+        throw new AssertionError("Iterative value differs for " + line);
+      }
+      if (!expectedHistory.equals(actualHistory)) {
+        throw new AssertionError("Iterative history differs for " + line);
+      }
+    }
+    FunctionHistory.clear();
+    
+    DCEntity levelFunc = Functions.get("level");
+    boolean old = FunctionHistory.setRecording(false);
+    try {
+      // Deep trees don't need a deep stack to be parsed or evaluated.
+      StringBuilder nested = new StringBuilder();
+      for (int i = 0; i < 20000; i++) {
+        nested.append("1+(");
+      }
+      nested.append("1");
+      for (int i = 0; i < 20000; i++) {
+        nested.append(")");
+      }
+      DCEntity deep = ExpressionSplitter.parse(nested.toString());
+      if (iterative.evaluate(deep).getSingle().getAmount() != 20001) {
+        throw new AssertionError("Deep tree was evaluated wrongly.");
+      }
+      
+      // Nor do deeply recursive functions, which give the same results as
+      // they do with a big enough stack.
+      Functions.save("level",
+          ExpressionSplitter.parse("[1+{level}, 0]s(d10000/5000)"));
+      DCEntity call = ExpressionSplitter.parse("{level}");
+      double[] expected = new double[1];
+      Thread thread = new Thread(null, () -> {
+        Randomizer.setSeed(14);
+        FunctionHistory.setRecording(false);
+        expected[0] = call.getValue().getSingle().getAmount();
+      }, "deep", 1L << 29);
+      thread.start();
+      thread.join();
+      
+      Randomizer.setSeed(14);
+      double actual = iterative.evaluate(call).getSingle().getAmount();
+      System.out.println("{level} => " + actual);
+      if (actual != expected[0] || actual < 1000) {
+        throw new AssertionError("Recursive function differs.");
+      }
+      
+      // Endless recursion is stopped by either evaluator.
+      Functions.save("level", ExpressionSplitter.parse("1+{level}"));
+      for (Evaluator eval : new Evaluator[] { new IterativeEvaluator(100),
+          iterative, new RecursiveEvaluator() }) {
+        try {
+          eval.evaluate(call);
+          throw new AssertionError("Endless recursion finished.");
+        } catch (EvaluationLimitException ex) {
+          if (Functions.getParamsDepth() != 0) {
+            throw new AssertionError("Parameters were left on the stack.");
+          }
+        }
+      }
+    } finally {
+      Functions.save("level", levelFunc);
+      FunctionHistory.setRecording(old);
+    }
+  }
+  
+  @Test
+  public void parallelTest() {
+    System.out.println("-- BEGIN PARALLEL TEST --");
+    Functions.setLoader(new Loader());
+    
+    DCEntity levelFunc = Functions.get("level");
+    ForkJoinPool one = new ForkJoinPool(1);
+    ForkJoinPool four = new ForkJoinPool(4);
+    try {
+      Functions.save("level",
+          ExpressionSplitter.parse("[{1}d6+1000d6, 1000d8+{1}]"));
+      
+      String[] lines = { "4!/3+d6", "[1000d6, 1000d8, 1000d10]",
+          "$[1000d6, d4, 1000d8]", "{level,7}-{level,3}",
+          "[2000d6, 3]s(d2)" };
+      
+      for (String line : lines) {
+        DCEntity ent = ExpressionSplitter.parse(line);
+        DCEntity next = ExpressionSplitter.parse("d1000000");
+        
+        FunctionHistory.clear();
+        Randomizer.setSeed(line.hashCode());
+        String sequential = ent.getValue().toCode();
+        
+        // The same seed gives the same results and history however many
+        // threads there are.
+        String expected = null;
+        for (ForkJoinPool pool : new ForkJoinPool[] { one, four }) {
+          Evaluator eval = new ParallelEvaluator(pool, 500);
+          
+          FunctionHistory.clear();
+          Randomizer.setSeed(line.hashCode());
+          DCValue val = eval.evaluate(ent);
+          String actual = val.toCode() + "\n" + next.getValue().toCode()
+              + "\n" + historyText();
+          
+          if (expected == null) {
+            expected = actual;
+          } else if (!expected.equals(actual)) {
+            throw new AssertionError("Parallel results differ for " + line);
+          }
+        }
+        System.out.println(line + " => " + expected.length() + " chars");
+        
+        // Cheap expressions and selections aren't split up at all, and
+        // other expensive ones are.
+        boolean whole = line.equals("4!/3+d6") || line.contains("s");
+        if (whole != expected.startsWith(sequential)) {
+          throw new AssertionError("Wrong expressions were split up.");
+        }
+      }
+      
+      // Parameters are the same in separate tasks.
+      DCList list = new ParallelEvaluator(four, 500)
+          .evaluate(ExpressionSplitter.parse("{level,7}-{level,3}"))
+          .getList();
+      if (list.get(0).getList().size() != 1007
+          || list.get(2).getList().size() != 1003) {
+        throw new AssertionError("Parameters were lost in a task.");
+      }
+    } finally {
+      Functions.save("level", levelFunc);
+      one.shutdown();
+      four.shutdown();
+      FunctionHistory.clear();
+    }
+  }
+  
+  @Test
+  public void governorTest() {
+    System.out.println("-- BEGIN GOVERNOR TEST --");
+    Functions.setLoader(new Loader());
+    FunctionHistory.setRecording(false);
+    
+    long none = Governor.UNLIMITED;
+    DCEntity levelFunc = Functions.get("level");
+    ForkJoinPool four = new ForkJoinPool(4);
+    try {
+      // Too many dice stop before they're rolled, or take any memory.
+      expectLimit(new Governor(new RecursiveEvaluator(), none, 1000000,
+          none, none), "99999999d99999", "dice");
+      expectLimit(new Governor(new RecursiveEvaluator(), none, 2500, none,
+          none), "$[1000d6, 1000d8, 1000d10]", "dice");
+      
+      // Limits are per evaluation.
+      Governor dice = new Governor(new RecursiveEvaluator(), none, 2500,
+          none, none);
+      for (int i = 0; i < 3; i++) {
+        dice.evaluate(ExpressionSplitter.parse("2000d6"));
+      }
+      
+      // So are lists...
+      Governor items = new Governor(new RecursiveEvaluator(), none, none,
+          5, none);
+      expectLimit(items, "[1, 2, 3]+[4, 5, 6]", "list items");
+      items.evaluate(ExpressionSplitter.parse("[1, 2, 3]"));
+      
+      // ...and steps, which stop a function that calls itself forever.
+      Functions.save("level", ExpressionSplitter.parse("1+{level}"));
+      for (Evaluator eval : new Evaluator[] { new RecursiveEvaluator(),
+          new IterativeEvaluator() }) {
+        expectLimit(new Governor(eval, 1000, none, none, none), "{level}",
+            "steps");
+        if (Functions.getParamsDepth() != 0) {
+          throw new AssertionError("Parameters were left on the stack.");
+        }
+      }
+      
+      // Evaluations can run out of time.
+      StringBuilder slow = new StringBuilder("$[");
+      for (int i = 0; i < 2000; i++) {
+        slow.append(i == 0 ? "" : ", ").append("100000d6");
+      }
+      expectLimit(new Governor(new RecursiveEvaluator(), none, none, none,
+          20), slow.append("]").toString(), "milliseconds");
+      
+      // Parallel tasks count against the same budget.
+      expectLimit(new Governor(new ParallelEvaluator(four, 500), none,
+          2500, none, none), "[1000d6, 1000d8, 1000d10]", "dice");
+      
+      // Interrupted evaluations stop, and leave the thread interrupted.
+      Thread.currentThread().interrupt();
+      try {
+        expectLimit(new Governor(new RecursiveEvaluator(), none, none,
+            none, none), "2d6", "interrupted");
+      } finally {
+        if (!Thread.interrupted()) {
+          throw new AssertionError("The interruption was cleared.");
+        }
+      }
+      
+      // Without a governor, nothing is counted.
+      if (Governor.getBudget() != null) {
+        throw new AssertionError("A budget was left on the thread.");
+      }
+      ExpressionSplitter.parse("[3000d6, 3000d6]").getValue();
+    } finally {
+      Functions.save("level", levelFunc);
+      four.shutdown();
+      FunctionHistory.setRecording(true);
+    }
+  }
+  
+  @Test
+  public void costEstimatorTest() {
+    System.out.println("-- BEGIN COST ESTIMATOR TEST --");
+    Functions.setLoader(new Loader());
+    FunctionHistory.setRecording(false);
+    
+    DCEntity levelFunc = Functions.get("level");
+    try {
+      Functions.save("level", ExpressionSplitter.parse("{1}+{1}"));
+      
+      // Certain estimates are upper bounds of what a governor counts.
+      String[] lines = { "500d6", "(d6)d6", "$[1000d6, d4, 1000d8]",
+          "[3d6, 10d6]s(d2)", "-(4d6)", "3d6-2d4", "(2d6)?", "#(d20)d4",
+          "{level,100d6}", "\"abc\"+\"de\"", "[1, \"a\"]+3", "6u>=5",
+          "4!/3+d6", "7/%2", "(2d3)d(3d4)" };
+      for (String line : lines) {
+        DCEntity ent = ExpressionSplitter.parse(line);
+        CostEstimate est = CostEstimator.estimate(ent);
+        System.out.println(line + " => " + est);
+        if (!est.isCertain()) {
+          throw new AssertionError("Uncertain estimate for " + line);
+        }
+        
+        Governor gov = new Governor(new RecursiveEvaluator(),
+            est.getSteps(), est.getDice(), est.getItems(),
+            Governor.UNLIMITED);
+        for (int seed = 0; seed < 100; seed++) {
+          Randomizer.setSeed(seed);
+          gov.evaluate(ent);
+        }
+      }
+      
+      // Constant dice counts are used as they are.
+      CostEstimate est = CostEstimator
+          .estimate(ExpressionSplitter.parse("500d6"));
+      if (est.getDice() != 500 || est.getItems() != 500
+          || est.getSteps() != 1) {
+        throw new AssertionError("Wrong estimate for 500d6.");
+      }
+      est = CostEstimator.estimate(ExpressionSplitter.parse("{level,d6}"));
+      if (est.getDice() != 2 || est.getSteps() != 6) {
+        throw new AssertionError("Parameters weren't counted per use.");
+      }
+      
+      // Anything that can't be bounded isn't certain.
+      Functions.save("level",
+          ExpressionSplitter.parse("[1+{level}, 0]s(d2)"));
+      for (String line : new String[] { "{level}", "{1}d6", "{nope}",
+          "(3/%2)d6" }) {
+        if (CostEstimator.estimate(ExpressionSplitter.parse(line))
+            .isCertain()) {
+          throw new AssertionError("Certain estimate for " + line);
+        }
+      }
+      
+      // Deep trees don't overflow the stack.
+      StringBuilder deep = new StringBuilder();
+      for (int i = 0; i < 20000; i++) {
+        deep.append("(1+");
+      }
+      deep.append("1");
+      for (int i = 0; i < 20000; i++) {
+        deep.append(")");
+      }
+      est = CostEstimator
+          .estimate(ExpressionSplitter.parse(deep.toString()));
+      if (est.getSteps() != 20000 || !est.isCertain()) {
+        throw new AssertionError("Wrong estimate for a deep tree.");
+      }
+      
+      // Parts are estimated where they are in the expression.
+      DCOperation repeat = (DCOperation) ExpressionSplitter
+          .parse("20x(100d6)");
+      Map<DCEntity, CostEstimate> parts = CostEstimator
+          .estimateParts(repeat);
+      if (parts.get(repeat).getDice() != 2000
+          || parts.get(repeat.getRight()).getDice() != 100) {
+        throw new AssertionError("Wrong estimates for the parts.");
+      }
+    } finally {
+      Functions.save("level", levelFunc);
+      FunctionHistory.setRecording(true);
+    }
+  }
+  
+  @Test
+  public void profilerTest() {
+    System.out.println("-- BEGIN PROFILER TEST --");
+    Functions.setLoader(new Loader());
+    
+    DCEntity levelFunc = Functions.get("level");
+    try {
+      DCEntity body = ExpressionSplitter.parse("{1}d6+100d6");
+      Functions.save("level", body);
+      
+      // Profiling gives the same values and history.
+      Profiler profiler = new Profiler();
+      String[] lines = { "{level,3}+{level,4}", "[d4, 2d6]s2",
+          "$(2d6)d6*2" };
+      for (String line : lines) {
+        DCEntity ent = ExpressionSplitter.parse(line);
+        
+        FunctionHistory.clear();
+        Randomizer.setSeed(line.hashCode());
+        String expected = ent.getValue().toCode() + "\n" + historyText();
+        
+        for (int i = 0; i < 3; i++) {
+          FunctionHistory.clear();
+          Randomizer.setSeed(line.hashCode());
+          String actual = profiler.evaluate(ent).toCode() + "\n"
+              + historyText();
+          if (!expected.equals(actual)) {
+            throw new AssertionError("Profiling changed " + line);
+          }
+        }
+        
+        Stats root = profiler.getStats(ent);
+        if (root == null || root.getCalls() != 3
+            || root.getSelfNanos() > root.getNanos()) {
+          throw new AssertionError("Wrong figures for " + line);
+        }
+      }
+      
+      // Saved functions are measured per node, over every call.
+      DCOperation plus = (DCOperation) body;
+      Stats dice = profiler.getStats(plus.getRight());
+      if (profiler.getStats(plus).getCalls() != 6 || dice.getCalls() != 6
+          || dice.getDice() != 600 || dice.getItems() != 600) {
+        throw new AssertionError("Wrong figures for a saved function.");
+      }
+      
+      String render = profiler.render();
+      System.out.print(render);
+      if (!render.contains("Saved function \"level\":")
+          || !render.contains("  Operator \"+\"  [calls: 6,")) {
+        throw new AssertionError("Wrong rendering.");
+      }
+    } finally {
+      Functions.save("level", levelFunc);
+      FunctionHistory.clear();
+    }
+  }
+  
+  @Test
+  public void rerollTest() {
+    System.out.println("-- BEGIN REROLL TEST --");
+    Functions.setLoader(new Loader());
+    FunctionHistory.setRecording(false);
+    
+    try {
+      // Rerolling a part leaves the other parts as they were.
+      DCOperation plus = (DCOperation) ExpressionSplitter
+          .parse("3d6+(4d8+{level,d20})");
+      DCOperation inner = (DCOperation) plus.getRight();
+      DCEntity threeD6 = plus.getLeft();
+      
+      Randomizer.setSeed(31);
+      IncrementalEvaluation eval = new IncrementalEvaluation(plus);
+      String before = eval.getValue().toCode();
+      String fourD8 = eval.getValue(inner.getLeft()).toCode();
+      String level = eval.getValue(inner.getRight()).toCode();
+      System.out.println(before);
+      
+      for (int i = 0; i < 20; i++) {
+        eval.reroll(threeD6);
+        if (!eval.getValue(inner.getLeft()).toCode().equals(fourD8)
+            || !eval.getValue(inner.getRight()).toCode().equals(level)) {
+          throw new AssertionError("Other parts were rerolled.");
+        }
+      }
+      
+      // The new value is what evaluating with those parts gives.
+      DCList whole = eval.getValue().getList();
+      DCList left = eval.getValue(threeD6).getList();
+      DCList right = eval.getValue(inner).getList();
+      if (whole.size() != left.size() + right.size()
+          || whole.getSingle().getAmount() != left.getSingle().getAmount()
+              + right.getSingle().getAmount()) {
+        throw new AssertionError("The value wasn't put back together.");
+      }
+      
+      // Single dice can be rerolled too.
+      DCList dice = eval.getValue(inner.getLeft()).getList();
+      eval.reroll(inner.getLeft(), 2);
+      DCList rerolled = eval.getValue(inner.getLeft()).getList();
+      for (int i = 0; i < 4; i++) {
+        if (i != 2 && rerolled.get(i).getSingle().getAmount() != dice.get(i)
+            .getSingle().getAmount()) {
+          throw new AssertionError("The wrong die was rerolled.");
+        }
+      }
+      if (eval.getValue().getList().size() != 3 + 4 + 1) {
+        throw new AssertionError("The value wasn't put back together.");
+      }
+      
+      try {
+        eval.reroll(ExpressionSplitter.parse("3d6"));
+        throw new AssertionError("Rerolled a node from elsewhere.");
+      } catch (DiceCalcException ex) {
+      }
+      try {
+        eval.reroll(inner.getRight(), 0);
+        throw new AssertionError("Rerolled something that isn't a die.");
+      } catch (DiceCalcException ex) {
+      }
+      
+      // "x" rolls its body again each time, as it does without keeping
+      // values, and is rerolled as a whole.
+      DCOperation repeat = (DCOperation) ExpressionSplitter
+          .parse("2d4+6x(4d6)");
+      Randomizer.setSeed(7);
+      String plain = repeat.getValue().toCode();
+      Randomizer.setSeed(7);
+      IncrementalEvaluation kept = new IncrementalEvaluation(repeat);
+      System.out.println(kept.getValue().toCode());
+      if (!kept.getValue().toCode().equals(plain)) {
+        throw new AssertionError("A repeat kept its first value.");
+      }
+      String one = kept.getValue(repeat.getLeft()).toCode();
+      String rolls = kept.reroll(repeat.getRight()).toCode();
+      if (rolls.equals(plain) || !kept.getValue(repeat.getLeft()).toCode()
+          .equals(one)) {
+        throw new AssertionError("The repeat wasn't rerolled alone.");
+      }
+    } finally {
+      FunctionHistory.setRecording(true);
+    }
+  }
+  
+  @Test
+  public void memoTest() {
+    System.out.println("-- BEGIN MEMO TEST --");
+    Functions.setLoader(new Loader());
+    
+    DCEntity levelFunc = Functions.get("level");
+    try {
+      Functions.save("level", ExpressionSplitter.parse("[{level,1}*3+"
+          + "{level,1}, {level,2}*{level,2}, 7]s({1}+1)"));
+      DCEntity call = ExpressionSplitter.parse("{level,0}");
+      
+      // Remembered calls give the same value and history as the first.
+      FunctionMemo.setMaxSize(0);
+      FunctionHistory.clear();
+      String expected = call.getValue().toCode();
+      String expectedHistory = historyText();
+      
+      FunctionMemo.setMaxSize(FunctionMemo.DEFAULT_MAX_SIZE);
+      for (int i = 0; i < 2; i++) {
+        FunctionHistory.clear();
+        String actual = call.getValue().toCode();
+        System.out.println("{level,0} => " + actual + " ("
+            + FunctionMemo.size() + " remembered)");
+        if (!expected.equals(actual)) {
+          throw new AssertionError("Remembered value differs.");
+        }
+        if (!expectedHistory.equals(historyText())) {
+          throw new AssertionError("Remembered history differs.");
+        }
+      }
+      if (FunctionMemo.size() != 3) {
+        throw new AssertionError("Calls weren't remembered.");
+      }
+      
+      // Saving a function forgets everything.
+      Functions.save("level", ExpressionSplitter.parse("{1}*10"));
+      if (FunctionMemo.size() != 0
+          || call.getValue().getSingle().getAmount() != 0) {
+        throw new AssertionError("Calls weren't forgotten on saving.");
+      }
+      
+      // Random functions and parameters aren't remembered.
+      FunctionMemo.clear();
+      ExpressionSplitter.parse("{level,d1}").getValue();
+      Functions.save("level", ExpressionSplitter.parse("{1}d6"));
+      ExpressionSplitter.parse("{level,3}").getValue();
+      if (FunctionMemo.size() != 0) {
+        throw new AssertionError("Random calls were remembered.");
+      }
+    } finally {
+      Functions.save("level", levelFunc);
+      FunctionMemo.setMaxSize(FunctionMemo.DEFAULT_MAX_SIZE);
+    }
+  }
+  
+  @Test
+  public void inlinerTest() {
+    System.out.println("-- BEGIN INLINER TEST --");
+    Functions.setLoader(new Loader());
+    
+    DCEntity levelFunc = Functions.get("level");
+    String[] bodies = { null, "{1}s2", "[1+{level}, 0]s(d10/5)",
+        "[{1}, {level,{1}-1}]s({1}+1)", "{3,d4}*{2}+{1}" };
+    String[] lines = { "{level,2*3}", "{level}", "{level,d6}+{level,2}",
+        "[{level,3}, 2d4]s2", "{level,[d4,d6,d8]}", "{level,1,2,3}",
+        "{level,1,2}", "{level,0}", "{nothing}" };
+    try {
+      for (String body : bodies) {
+        if (body != null) {
+          Functions.save("level", ExpressionSplitter.parse(body));
+        }
+        
+        for (String line : lines) {
+          DCEntity ent = ExpressionSplitter.parse(line);
+          DCEntity inlined = Inliner.inline(ent);
+          if (!ent.toCode().equals(inlined.toCode())) {
+            throw new AssertionError("Inlining changed the code of "
+                + line);
+          }
+          
+          // The same value, or the same error, with or without history.
+          for (boolean recording : new boolean[] { false, true }) {
+            boolean old = FunctionHistory.setRecording(recording);
+            try {
+              FunctionHistory.clear();
+              Randomizer.setSeed(line.hashCode());
+              String expected = outcome(ent);
+              String expectedHistory = historyText();
+              
+              FunctionHistory.clear();
+              Randomizer.setSeed(line.hashCode());
+              String actual = outcome(inlined);
+              
+              if (!expected.equals(actual)) {
+                throw new AssertionError("Inlined value differs for "
+                    + line + " in " + body + ": " + actual);
+              }
+              if (!expectedHistory.equals(historyText())) {
+                throw new AssertionError("Inlined history differs for "
+                    + line + " in " + body);
+              }
+            } finally {
+              FunctionHistory.setRecording(old);
+            }
+          }
+        }
+      }
+      
+      // Inlined calls follow the function when it's saved again.
+      boolean old = FunctionHistory.setRecording(false);
+      try {
+        DCEntity inlined = Inliner.inline(ExpressionSplitter.parse(
+            "{level,3}"));
+        Functions.save("level", ExpressionSplitter.parse("{1}*2"));
+        double before = inlined.getValue().getSingle().getAmount();
+        Functions.save("level", ExpressionSplitter.parse("{1}*100"));
+        double after = inlined.getValue().getSingle().getAmount();
+        System.out.println("{level,3} => " + before + ", then " + after);
+        if (before != 6 || after != 300) {
+          throw new AssertionError("Inlined call wasn't updated.");
+        }
+      } finally {
+        FunctionHistory.setRecording(old);
+      }
+    } finally {
+      Functions.save("level", levelFunc);
+    }
+  }
+  
+  private String outcome(DCEntity ent) {
+    int depth = Functions.getParamsDepth();
+    try {
+      return ent.getValue().toCode();
+    } catch (RuntimeException ex) {
+      Functions.unstackParams(depth);
+      return ex.getClass().getSimpleName() + ": " + ex.getMessage();
+    }
+  }
+  
+  @Test
+  public void tailCallTest() {
+    System.out.println("-- BEGIN TAIL CALL TEST --");
+    Functions.setLoader(new Loader());
+    
+    DCEntity levelFunc = Functions.get("level");
+    boolean old = FunctionHistory.setRecording(false);
+    try {
+      // Tens of thousands of calls in a row don't need a deep stack.
+      Functions.save("level",
+          ExpressionSplitter.parse("[{level}, 7]s(1+d20000/20000)"));
+      DCEntity call = ExpressionSplitter.parse("{level}");
+      for (int seed = 0; seed < 5; seed++) {
+        Randomizer.setSeed(seed);
+        if (call.getValue().getSingle().getAmount() != 7
+            || Functions.getParamsDepth() != 0) {
+          throw new AssertionError("Tail calls went wrong.");
+        }
+      }
+      
+      // They take the same steps as calls on the stack, which are made
+      // while history is recording.
+      Functions.save("level",
+          ExpressionSplitter.parse("[{level}, 1+{level,2}, 7]s(d30/10)"));
+      for (int seed = 0; seed < 20; seed++) {
+        long[] steps = new long[2];
+        for (int i = 0; i < 2; i++) {
+          FunctionHistory.setRecording(i == 1);
+          Randomizer.setSeed(seed);
+          int which = i;
+          new Governor(ent -> {
+            DCValue val = ent.getValue();
+            steps[which] = Governor.getBudget().getSteps();
+            return val;
+          }, Governor.UNLIMITED, Governor.UNLIMITED, Governor.UNLIMITED,
+              Governor.UNLIMITED).evaluate(call);
+        }
+        if (steps[0] != steps[1]) {
+          throw new AssertionError("Tail calls took different steps.");
+        }
+      }
+      
+      // While recording, the history is the same as that of calls on a
+      // stack, like the IterativeEvaluator's.
+      Functions.save("level", ExpressionSplitter
+          .parse("[{level}, 1+{level,2}, [7, {level}]s(d2)]s(d30/10)"));
+      FunctionHistory.setRecording(true);
+      for (int seed = 0; seed < 20; seed++) {
+        String[] texts = new String[2];
+        for (int i = 0; i < 2; i++) {
+          FunctionHistory.clear();
+          Randomizer.setSeed(seed);
+          if (i == 0) {
+            call.getValue();
+          } else {
+            new IterativeEvaluator().evaluate(call);
+          }
+          StringBuilder text = new StringBuilder();
+          for (HistoryEntry entry : FunctionHistory.getList()) {
+            text.append(entry.level + ": " + entry.text + "\n");
+          }
+          texts[i] = text.toString();
+        }
+        if (!texts[0].equals(texts[1])) {
+          throw new AssertionError("Tail calls were recorded differently:\n"
+              + texts[0] + "instead of:\n" + texts[1]);
+        }
+      }
+      
+      // The number in a row is limited, whether recording or not.
+      Functions.save("level",
+          ExpressionSplitter.parse("[{level}, 7]s(1+d20000/20000)"));
+      TailCalls.setMaxCalls(100);
+      expectLimit(new RecursiveEvaluator(), "{level}", "tail calls");
+      FunctionHistory.setRecording(false);
+      expectLimit(new RecursiveEvaluator(), "{level}", "tail calls");
+    } finally {
+      FunctionHistory.clear();
+      TailCalls.setMaxCalls(TailCalls.DEFAULT_MAX_CALLS);
+      Functions.save("level", levelFunc);
+      FunctionHistory.setRecording(old);
+    }
+  }
+  
+  @Test
+  public void conditionTest() {
+    System.out.println("-- BEGIN CONDITION TEST --");
+    Functions.setLoader(new Loader());
+    
+    String[][] cases = { { "[10, 20] ? 3 c>= 2", "10" },
+        { "[10, 20] ? 3 c< 2", "20" }, { "[10] ? 3c<2", "[]" },
+        { "[10, 20] ? 0", "20" }, { "[1+1, 2d6] ? (4c%2)", "2" },
+        { "3 c!= 2", "{!c,1,1}" }, { "[1]?+3", "[1,3]" } };
+    for (String[] test : cases) {
+      String actual = ExpressionSplitter.parse(test[0]).getValue()
+          .toCode();
+      System.out.println(test[0] + " => " + actual);
+      if (!test[1].equals(actual)) {
+        throw new AssertionError("Wrong value for " + test[0]);
+      }
+    }
+    
+    // Only the chosen item is evaluated, by every evaluator.
+    long none = Governor.UNLIMITED;
+    DCEntity lazy = ExpressionSplitter.parse("[1000d6, 5] ? 1 c> 2");
+    for (Evaluator eval : new Evaluator[] { new RecursiveEvaluator(),
+        new IterativeEvaluator(), new ParallelEvaluator() }) {
+      DCValue val = new Governor(eval, none, 0, none, none)
+          .evaluate(lazy);
+      if (val.getSingle().getAmount() != 5) {
+        throw new AssertionError("The condition chose wrongly.");
+      }
+    }
+    
+    // Its cost is that of the dearer item.
+    CostEstimate est = CostEstimator
+        .estimate(ExpressionSplitter.parse("[3d6, 10d6] ? (d2 c= 1)"));
+    System.out.println(est);
+    if (!est.isCertain() || est.getDice() != 11) {
+      throw new AssertionError("Wrong estimate for a condition.");
+    }
+  }
+  
+  @Test
+  public void repeatTest() {
+    System.out.println("-- BEGIN REPEAT TEST --");
+    Functions.setLoader(new Loader());
+    
+    // Repeating rolls the same as writing the body out each time.
+    String[][] cases = { { "6x(4d6)", "[4d6,4d6,4d6,4d6,4d6,4d6]" },
+        { "3x4d6", "[4d6,4d6,4d6]" }, { "2.9x(d20+1)", "[d20+1,d20+1]" },
+        { "0xd6", "[]" } };
+    for (String[] test : cases) {
+      Randomizer.setSeed(test[0].hashCode());
+      String actual = ExpressionSplitter.parse(test[0]).getValue()
+          .toCode();
+      Randomizer.setSeed(test[0].hashCode());
+      String expected = ExpressionSplitter.parse(test[1]).getValue()
+          .toCode();
+      System.out.println(test[0] + " => " + actual);
+      if (!expected.equals(actual)) {
+        throw new AssertionError("Wrong value for " + test[0]);
+      }
+    }
+    
+    // The body is evaluated each time by every evaluator.
+    long none = Governor.UNLIMITED;
+    DCEntity stats = ExpressionSplitter.parse("6x(4d6)");
+    for (Evaluator eval : new Evaluator[] { new RecursiveEvaluator(),
+        new IterativeEvaluator(), new ParallelEvaluator() }) {
+      DCList list = new Governor(eval, none, none, none, none)
+          .evaluate(stats).getList();
+      if (list.size() != 6 || list.get(5).getList().size() != 4) {
+        throw new AssertionError("Wrong shape for 6x(4d6).");
+      }
+    }
+    
+    int oldMax = ListOperators.getMaxRepeats();
+    try {
+      ListOperators.setMaxRepeats(10);
+      expectLimit(new RecursiveEvaluator(), "11xd6", "more than 10");
+      String neg = outcome(ExpressionSplitter.parse("(-1)xd6"));
+      System.out.println("(-1)xd6 => " + neg);
+      if (!neg.startsWith("DiceCalcException")) {
+        throw new AssertionError("A negative count didn't fail.");
+      }
+      
+      // The estimate counts the body once per repeat.
+      CostEstimate est = CostEstimator
+          .estimate(ExpressionSplitter.parse("d6x(4d6)"));
+      System.out.println(est);
+      if (!est.isCertain() || est.getDice() != 25) {
+        throw new AssertionError("Wrong estimate for a repeat.");
+      }
+    } finally {
+      ListOperators.setMaxRepeats(oldMax);
+    }
+  }
+  
+  @Test
+  public void preparedTest() {
+    System.out.println("-- BEGIN PREPARED TEST --");
+    Functions.setLoader(new Loader());
+    long version = Functions.getVersion();
+    int depth = Functions.getParamsDepth();
+    
+    // Binding values rolls the same as writing them in.
+    PreparedExpression prep = new PreparedExpression("{N}d20+{M}", "n",
+        "m");
+    HashMap<String, DCValue> named = new HashMap<>();
+    named.put("N", new DCNumber(4));
+    named.put("m", new DCNumber(1));
+    String[][] cases = { { "3", "5", "3d20+5" }, { "1", "0", "1d20+0" } };
+    for (String[] test : cases) {
+      Randomizer.setSeed(test[2].hashCode());
+      String actual = prep.evaluate(new DCNumber(Integer.parseInt(test[0])),
+          new DCNumber(Integer.parseInt(test[1]))).toCode();
+      Randomizer.setSeed(test[2].hashCode());
+      String expected = ExpressionSplitter.parse(test[2]).getValue()
+          .toCode();
+      System.out.println(test[2] + " => " + actual);
+      if (!expected.equals(actual)) {
+        throw new AssertionError("Wrong value for " + test[2]);
+      }
+    }
+    Randomizer.setSeed(1);
+    String byName = prep.evaluate(named).toCode();
+    Randomizer.setSeed(1);
+    if (!byName.equals(ExpressionSplitter.parse("4d20+1").getValue()
+        .toCode())) {
+      throw new AssertionError("Wrong value for values given by name.");
+    }
+    
+    // Lists and strings can be bound too, and defaults still apply.
+    ArrayList<DCValue> items = new ArrayList<>();
+    items.add(new DCNumber(1));
+    items.add(new DCNumber(2));
+    items.add(new DCNumber(3));
+    double sum = new PreparedExpression("${xs}*2", "xs")
+        .evaluate(new DCList(items)).getSingle().getAmount();
+    String text = new PreparedExpression("{who} + {2,\"!\"}", "who")
+        .evaluate(new DCString("hi")).getString().toString();
+    System.out.println(sum + ", " + text);
+    if (sum != 12 || !text.equals("hi!")) {
+      throw new AssertionError("Wrong value for a list or string.");
+    }
+    
+    // Nothing's saved, and the parameters are taken off the stack.
+    if (Functions.getVersion() != version
+        || Functions.getParamsDepth() != depth) {
+      throw new AssertionError("Evaluating changed the functions.");
+    }
+    
+    // Placeholders can't be passed to calls, and names must be free.
+    String[][] bad = { { "{level,{n}}", "n" }, { "{n,{1}}+1", "n" },
+        { "{1}", "1" }, { "{_u}", "_u" }, { "{a}+{A}", "a,A" } };
+    for (String[] test : bad) {
+      try {
+        new PreparedExpression(test[0], test[1].split(","));
+        throw new AssertionError("Accepted " + test[0]);
+      } catch (DiceCalcException ex) {
+        System.out.println(test[0] + " => " + ex.getMessage());
+      }
+    }
+    named.remove("m");
+    try {
+      prep.evaluate(named);
+      throw new AssertionError("A missing value was accepted.");
+    } catch (DiceCalcException ex) {
+      System.out.println("Without m => " + ex.getMessage());
+    }
+  }
+  
+  private void expectLimit(Evaluator eval, String line, String limit) {
+    try {
+      eval.evaluate(ExpressionSplitter.parse(line));
+    } catch (EvaluationLimitException ex) {
+      System.out.println(line.substring(0, Math.min(line.length(), 30))
+          + " => " + ex.getMessage());
+      if (!ex.getMessage().contains(limit)) {
+        throw new AssertionError("Wrong limit for " + line);
+      }
+      return;
+    }
+    throw new AssertionError("No limit for " + line);
+  }
+  
+  private String historyText() {
+    StringBuilder out = new StringBuilder();
+    for (HistoryEntry entry : FunctionHistory.getList()) {
+      out.append(entry.level).append(": ").append(entry.text).append('\n');
+    }
+    return out.toString();
+  }
+  
+  @Test
+  public void historyTest() {
+    System.out.println("-- BEGIN HISTORY TEST --");
+    Functions.setLoader(new Loader());
+    FunctionHistory.clear();
+    
+    DCEntity ent = ExpressionSplitter.parse("4!/3+{level,2}");
+    ent.getValue();
+    ArrayList<HistoryEntry> hist = FunctionHistory.getList();
+    for (HistoryEntry entry : hist) {
+      System.out.println(entry.level + ": " + entry.text);
+    }
+    
+    if (hist.size() == 0 || !hist.get(0).text.equals("(4!) => 24")) {
+      throw new AssertionError("History wasn't recorded in order.");
+    }
+    
+    // Reading the history again gives the same entries.
+    if (FunctionHistory.getList().size() != hist.size()) {
+      throw new AssertionError("History changed when read twice.");
+    }
+    
+    FunctionHistory.clear();
+    boolean old = FunctionHistory.setRecording(false);
+    try {
+      ent.getValue();
+      if (!FunctionHistory.getList().isEmpty()) {
+        throw new AssertionError("History was recorded while off.");
+      }
+    } finally {
+      FunctionHistory.setRecording(old);
+    }
+  }
+  
+  @Test
+  public void numericListTest() {
+    System.out.println("-- BEGIN NUMERIC LIST TEST --");
+    Functions.setLoader(new Loader());
+    
+    // An array-backed roll must match rolling the dice one by one.
+    Randomizer.setSeed(7);
+    DCValue value = ExpressionSplitter.parse("5d6+2-d4").getValue();
+    
+    // "-" rolls its right side first.
+    Randomizer.setSeed(7);
+    DCDie last = new DCDie(4);
+    ArrayList<DCValue> items = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      items.add(new DCDie(6));
+    }
+    items.add(new DCNumber(2));
+    items.add(new DCNumber(-last.getAmount(), last.getPotential()));
+    String expected = new DCList(items).toCode();
+    
+    System.out.println("5d6+2-d4 => " + value.toCode());
+    if (!value.toCode().equals(expected)) {
+      throw new AssertionError("Expected " + expected);
+    }
+    
+    DCList list = value.getList();
+    if (list.size() != 7 || !(list.get(0) instanceof DCDie)
+        || list.get(5) instanceof DCDie) {
+      throw new AssertionError("List items have the wrong types.");
+    }
+    
+    value = ExpressionSplitter.parse("-(3d6)").getValue();
+    if (value.getList().get(0) instanceof DCDie) {
+      throw new AssertionError("Negative dice should be numbers.");
+    }
+  }
+  
+  @Test
+  public void distributionTest() {
+    System.out.println("-- BEGIN DISTRIBUTION TEST --");
+    Functions.setLoader(new Loader());
+    
+    Distribution dist = DistributionAnalyzer
+        .analyze(ExpressionSplitter.parse("2d20"));
+    double chance = dist.probability(Comparison.NOT_LESS, 15);
+    System.out.println("P(2d20 >= 15) = " + chance);
+    checkClose(chance, 309.0 / 400, "P(2d20 >= 15)");
+    
+    dist = DistributionAnalyzer
+        .analyze(ExpressionSplitter.parse("3d6-d4"));
+    System.out.println("3d6-d4: " + dist);
+    checkClose(dist.mean(), 8, "mean of 3d6-d4");
+    checkClose(dist.getMinimum(), -1, "minimum of 3d6-d4");
+    checkClose(dist.getMaximum(), 17, "maximum of 3d6-d4");
+    checkClose(dist.percentile(50), 8, "median of 3d6-d4");
+    
+    dist = DistributionAnalyzer.analyze(ExpressionSplitter.parse("2*d6"));
+    checkClose(dist.probability(7), 0, "P(2*d6 = 7)");
+    checkClose(dist.probability(12), 1.0 / 6, "P(2*d6 = 12)");
+    
+    dist = DistributionAnalyzer
+        .analyze(ExpressionSplitter.parse("#(2d6+3)"));
+    checkClose(dist.probability(3), 1, "P(#(2d6+3) = 3)");
+    
+    dist = DistributionAnalyzer
+        .analyze(ExpressionSplitter.parse("(d2)d4"));
+    checkClose(dist.mean(), 3.75, "mean of (d2)d4");
+    
+    dist = DistributionAnalyzer
+        .analyze(ExpressionSplitter.parse("(d6)d(2d4)"));
+    checkClose(dist.mean(), 3.5 * 3, "mean of (d6)d(2d4)");
+    checkClose(dist.getMaximum(), 48, "maximum of (d6)d(2d4)");
+    
+    // Too much work to finish, so it's refused before starting.
+    long start = System.nanoTime();
+    try {
+      DistributionAnalyzer
+          .analyze(ExpressionSplitter.parse("(20d20)d(20d20)"));
+      throw new AssertionError("(20d20)d(20d20) was analyzed.");
+    } catch (DiceCalcException ex) {
+      if (!(ex.getCause() instanceof UnsupportedOperationException)) {
+        throw ex;
+      }
+    }
+    if (System.nanoTime() - start > 5_000_000_000L) {
+      throw new AssertionError("(20d20)d(20d20) took too long to refuse.");
+    }
+  }
+  
+  @Test
+  public void simulationTest() {
+    System.out.println("-- BEGIN SIMULATION TEST --");
+    Functions.setLoader(new Loader());
+    
+    DCEntity ent = ExpressionSplitter.parse("2d20");
+    SimulationResult result = Simulator.simulate(ent, 100000, 12345);
+    double chance = result.probability(Comparison.NOT_LESS, 15);
+    System.out.println("P(2d20 >= 15) ~ " + chance);
+    if (Math.abs(chance - 309.0 / 400) > 0.01) {
+      throw new AssertionError("Simulated P(2d20 >= 15) was " + chance);
+    }
+    
+    // The same seed must give the same results, however many threads
+    // there are.
+    SimulationResult one = Simulator.simulate(ent, 20000, 6789,
+        new ForkJoinPool(1));
+    SimulationResult four = Simulator.simulate(ent, 20000, 6789,
+        new ForkJoinPool(4));
+    if (!one.getCounts().equals(four.getCounts())) {
+      throw new AssertionError("Seeded simulations differ.");
+    }
+    
+    result = Simulator.simulate(ExpressionSplitter.parse("(d3-2)d6"),
+        30000, 1);
+    System.out.println("(d3-2)d6: " + result);
+    if (result.getErrors() == 0 || result.getSuccesses() == 0) {
+      throw new AssertionError("Expected both errors and successes.");
+    }
+    
+    // Any exception is an error, not just the calculator's own.
+    result = Simulator.simulate(ExpressionSplitter.parse("(d20)!"), 10000,
+        1);
+    System.out.println("(d20)!: " + result);
+    if (Math.abs(result.getErrors() / 10000.0 - 0.25) > 0.02) {
+      throw new AssertionError("Expected about 25% errors.");
+    }
+    
+    // A trial that fails in a function doesn't leave its parameters for
+    // the next ones.
+    DCEntity levelFunc = Functions.get("level");
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      Functions.save("level", ExpressionSplitter.parse("({1})!"));
+      Simulator.simulate(ExpressionSplitter.parse("{level,d20}"), 100, 2,
+          pool);
+      result = Simulator.simulate(ExpressionSplitter.parse("{1,0}"), 100,
+          3, pool);
+      if (result.mean() != 0) {
+        throw new AssertionError("Parameters were left on the stack.");
+      }
+    } finally {
+      Functions.save("level", levelFunc);
+      pool.shutdown();
+    }
+  }
+  
+  private void checkClose(double actual, double expected, String what) {
+    if (Math.abs(actual - expected) > 1e-9) {
+      throw new AssertionError(
+          what + " was " + actual + ", expected " + expected);
+    }
+  }
+  
   public void printExpList(ArrayList<ExpressionPiece> list) {
     System.out.println("Pieces: ");
     for (ExpressionPiece exp : list) {